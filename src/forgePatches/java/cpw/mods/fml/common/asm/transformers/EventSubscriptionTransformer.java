@@ -21,10 +21,17 @@ import static org.objectweb.asm.Type.BOOLEAN_TYPE;
 import static org.objectweb.asm.Type.VOID_TYPE;
 import static org.objectweb.asm.Type.getMethodDescriptor;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.minecraft.launchwrapper.IClassTransformer;
 
+import org.apache.logging.log4j.Level;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Type;
@@ -41,20 +48,110 @@ import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
+import cpw.mods.fml.common.FMLLog;
 import cpw.mods.fml.common.eventhandler.Event;
+import cpw.mods.fml.relauncher.FMLRelaunchLog;
 
 public class EventSubscriptionTransformer implements IClassTransformer {
 
+    // lwjgl3ify's TransformerMetrics, looked up reflectively as the main source set isn't visible from here
+    private static final MethodHandle metricsEnabled;
+    private static final MethodHandle metricsRecord;
+    // lwjgl3ify's ClassHierarchyIndex.isSubclassOf, to check for Event subclasses without loading the hierarchy
+    private static final MethodHandle isSubclassOf;
+
+    private static final String EVENT_CLASS = "cpw/mods/fml/common/eventhandler/Event";
+
+    // Classes confirmed to extend Event, so that subclasses of already seen events skip the hierarchy lookup
+    private static final Set<String> knownEventClasses = ConcurrentHashMap.newKeySet();
+
+    static {
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle enabled = null;
+        MethodHandle record = null;
+        try {
+            final Class<?> metricsClass = Class.forName("me.eigenraven.lwjgl3ify.core.TransformerMetrics");
+            enabled = lookup.findStaticGetter(metricsClass, "enabled", boolean.class);
+            final Object metrics = lookup
+                    .findStatic(metricsClass, "get", MethodType.methodType(metricsClass, String.class))
+                    .invoke("EventSubscriptionTransformer");
+            record = lookup.findVirtual(
+                    metricsClass,
+                    "record",
+                    MethodType.methodType(void.class, long.class, String.class, byte[].class, byte[].class))
+                    .bindTo(metrics);
+        } catch (Throwable e) {
+            FMLRelaunchLog.log(Level.WARN, e, "Could not look up lwjgl3ify's transformer metrics, none are recorded");
+            enabled = null;
+            record = null;
+        }
+        metricsEnabled = enabled;
+        metricsRecord = record;
+
+        MethodHandle subclassOf = null;
+        try {
+            final Class<?> indexClass = Class.forName("me.eigenraven.lwjgl3ify.core.ClassHierarchyIndex");
+            subclassOf = lookup
+                    .findVirtual(
+                            indexClass,
+                            "isSubclassOf",
+                            MethodType.methodType(Boolean.class, String.class, String.class))
+                    .bindTo(lookup.findStaticGetter(indexClass, "INSTANCE", indexClass).invoke());
+        } catch (Throwable e) {
+            FMLRelaunchLog.log(
+                    Level.WARN,
+                    e,
+                    "Could not look up lwjgl3ify's class hierarchy index, event superclasses will be loaded instead");
+        }
+        isSubclassOf = subclassOf;
+
+        knownEventClasses.add(EVENT_CLASS);
+    }
+
+    private static final LongAdder classesSkipped = new LongAdder();
+    private static final LongAdder classesRewritten = new LongAdder();
+    private static final LongAdder classesUnchanged = new LongAdder();
+
     public EventSubscriptionTransformer() {}
 
     @Override
     public byte[] transform(String name, String transformedName, byte[] bytes) {
+        if (!isMetricsEnabled()) {
+            return transformEvent(name, transformedName, bytes);
+        }
+        final long start = System.nanoTime();
+        final byte[] result = transformEvent(name, transformedName, bytes);
+        try {
+            metricsRecord.invokeExact(start, transformedName, bytes, result);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    private static boolean isMetricsEnabled() {
+        if (metricsEnabled == null) {
+            return false;
+        }
+        try {
+            return (boolean) metricsEnabled.invokeExact();
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private byte[] transformEvent(String name, String transformedName, byte[] bytes) {
         if (bytes == null || name.equals("cpw.mods.fml.common.eventhandler.Event")
                 || name.startsWith("net.minecraft.")
                 || name.indexOf('.') == -1) {
             return bytes;
         }
         ClassReader cr = new ClassReader(bytes);
+        // Only the header has been read so far, don't build the tree for classes that can't be events
+        if (!mayBeEvent(cr.getSuperName())) {
+            classesSkipped.increment();
+            return bytes;
+        }
         ClassNode classNode = new ClassNode();
         cr.accept(classNode, 0);
 
@@ -62,26 +159,63 @@ public class EventSubscriptionTransformer implements IClassTransformer {
             if (buildEvents(classNode)) {
                 ClassWriter cw = new ClassWriter(COMPUTE_FRAMES);
                 classNode.accept(cw);
+                classesRewritten.increment();
                 return cw.toByteArray();
             }
+            classesUnchanged.increment();
             return bytes;
         } catch (ClassNotFoundException ex) {
             // Discard silently- it's just noise
         } catch (Exception e) {
-            e.printStackTrace();
+            FMLRelaunchLog.log(Level.ERROR, e, "Could not transform event class %s", transformedName);
         }
 
         return bytes;
     }
 
+    private static boolean mayBeEvent(String superName) {
+        if (superName == null) {
+            return false;
+        }
+        if (knownEventClasses.contains(superName)) {
+            return true;
+        }
+        final Boolean isEvent = isEventSubclass(superName);
+        // If the hierarchy can't be read, let buildEvents load the superclass to find out
+        return isEvent == null || isEvent;
+    }
+
+    private static Boolean isEventSubclass(String internalName) {
+        if (isSubclassOf == null || internalName == null) {
+            return null;
+        }
+        if (internalName.startsWith("net/minecraft/")) {
+            // Vanilla classes never extend Event, and their obfuscated class files can't be looked up by this name
+            return false;
+        }
+        try {
+            return (Boolean) isSubclassOf.invokeExact(internalName, EVENT_CLASS);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
     private boolean buildEvents(ClassNode classNode) throws Exception {
-        // Yes, this recursively loads classes until we get this base class. THIS IS NOT A ISSUE. Coremods should handle
-        // re-entry just fine.
-        // If they do not this a COREMOD issue NOT a Forge/LaunchWrapper issue.
-        Class<?> parent = this.getClass().getClassLoader().loadClass(classNode.superName.replace('/', '.'));
-        if (!Event.class.isAssignableFrom(parent)) {
+        final Boolean isEvent = knownEventClasses.contains(classNode.superName) ? Boolean.TRUE
+                : isEventSubclass(classNode.superName);
+        if (isEvent == null) {
+            // The class headers couldn't be read, fall back to loading the superclass.
+            // Yes, this recursively loads classes until we get this base class. THIS IS NOT A ISSUE. Coremods should
+            // handle re-entry just fine.
+            // If they do not this a COREMOD issue NOT a Forge/LaunchWrapper issue.
+            Class<?> parent = this.getClass().getClassLoader().loadClass(classNode.superName.replace('/', '.'));
+            if (!Event.class.isAssignableFrom(parent)) {
+                return false;
+            }
+        } else if (!isEvent) {
             return false;
         }
+        knownEventClasses.add(classNode.name);
 
         // Class<?> listenerListClazz = Class.forName("cpw.mods.fml.common.eventhandler.ListenerList", false,
         // getClass().getClassLoader());
@@ -196,4 +330,12 @@ public class EventSubscriptionTransformer implements IClassTransformer {
         classNode.methods.add(method);
         return true;
     }
+
+    public static void logStatistics() {
+        FMLLog.info(
+                "EventSubscriptionTransformer: %d classes skipped by the header check, %d events rewritten, %d events left unchanged",
+                classesSkipped.sum(),
+                classesRewritten.sum(),
+                classesUnchanged.sum());
+    }
 }
@@ -1,18 +1,35 @@
 package cpw.mods.fml.common.patcher;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.ObjLongConsumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
+import net.minecraft.launchwrapper.Launch;
 import net.minecraft.launchwrapper.LaunchClassLoader;
 
 import org.apache.commons.compress.harmony.unpack200.Pack200UnpackerAdapter;
@@ -41,11 +58,30 @@ public class ClassPatchManager {
     public static final boolean dumpPatched = Boolean
             .parseBoolean(System.getProperty("fml.dumpPatchedClasses", "false"));
     public static final boolean DEBUG = Boolean.parseBoolean(System.getProperty("fml.debugClassPatchManager", "false"));
+    public static final boolean CACHE_PATCHES = Boolean
+            .parseBoolean(System.getProperty("lwjgl3ify.cacheBinaryPatches", "true"));
 
-    private GDiffPatcher patcher = new GDiffPatcher();
+    /** Upper bound for the bytes of patched classes kept around until their class is defined */
+    public static final long PATCHED_CLASS_CACHE_SIZE = Long
+            .getLong("lwjgl3ify.patchedClassCacheSize", 16L * 1024 * 1024);
+
+    /**
+     * Span recorder put into the launch blackboard by lwjgl3ify's StartupTracer while it is recording. Shared this way
+     * because this class is loaded by the parent class loader, which can't see the lwjgl3ify mod classes.
+     */
+    private static final String TRACER_KEY = "lwjgl3ify.startupTracer";
+
+    private static final int CACHE_MAGIC = 0x4C334250; // L3BP
+    private static final int CACHE_VERSION = 1;
+
+    // GDiffPatcher keeps state during a patch, one per thread so parallel class loading isn't serialized here
+    private final ThreadLocal<GDiffPatcher> patcher = ThreadLocal.withInitial(GDiffPatcher::new);
     private ListMultimap<String, ClassPatch> patches;
+    /** Offsets of the patches in {@link #patchCache} by source class name, if the patches were loaded from the cache */
+    private Map<String, int[]> patchCacheIndex;
+    private MappedByteBuffer patchCache;
 
-    private Map<String, byte[]> patchedClasses = Maps.newHashMap();
+    private final PatchedClassCache patchedClasses = new PatchedClassCache(PATCHED_CLASS_CACHE_SIZE);
     private File tempDir;
 
     private ClassPatchManager() {
@@ -55,19 +91,55 @@ public class ClassPatchManager {
         }
     }
 
+    /**
+     * Used to look at a patched class before it is loaded, the result is kept until the class gets defined.
+     */
     public byte[] getPatchedResource(String name, String mappedName, LaunchClassLoader loader) throws IOException {
+        if (patches == null) {
+            return loader.getClassBytes(name);
+        }
+        final byte[] cached = patchedClasses.get(name);
+        if (cached != null) {
+            return cached;
+        }
         byte[] rawClassBytes = loader.getClassBytes(name);
-        return applyPatch(name, mappedName, rawClassBytes);
+        final byte[] patched = patch(name, mappedName, rawClassBytes);
+        if (patched != rawClassBytes) {
+            patchedClasses.put(name, patched);
+        }
+        return patched;
     }
 
+    /**
+     * Called from the patching transformer right before the class is defined, so any cached result is released.
+     */
     public byte[] applyPatch(String name, String mappedName, byte[] inputData) {
+        @SuppressWarnings("unchecked")
+        final ObjLongConsumer<String> tracer = (ObjLongConsumer<String>) Launch.blackboard.get(TRACER_KEY);
+        if (tracer == null) {
+            return applyPatchUntraced(name, mappedName, inputData);
+        }
+        final long start = System.nanoTime();
+        try {
+            return applyPatchUntraced(name, mappedName, inputData);
+        } finally {
+            tracer.accept(mappedName, start);
+        }
+    }
+
+    private byte[] applyPatchUntraced(String name, String mappedName, byte[] inputData) {
         if (patches == null) {
             return inputData;
         }
-        if (patchedClasses.containsKey(name)) {
-            return patchedClasses.get(name);
+        final byte[] cached = patchedClasses.remove(name);
+        if (cached != null) {
+            return cached;
         }
-        List<ClassPatch> list = patches.get(name);
+        return patch(name, mappedName, inputData);
+    }
+
+    private byte[] patch(String name, String mappedName, byte[] inputData) {
+        List<ClassPatch> list = getPatches(name);
         if (list.isEmpty()) {
             return inputData;
         }
@@ -109,14 +181,12 @@ public class ClassPatchManager {
                     }
                 }
             }
-            synchronized (patcher) {
-                try {
-                    inputData = patcher.patch(inputData, patch.patch);
-                } catch (IOException e) {
-                    FMLRelaunchLog.log(Level.ERROR, e, "Encountered problem runtime patching class %s", name);
-                    e.printStackTrace();
-                    continue;
-                }
+            try {
+                inputData = patcher.get().patch(inputData, patch.patch);
+            } catch (IOException e) {
+                FMLRelaunchLog.log(Level.ERROR, e, "Encountered problem runtime patching class %s", name);
+                e.printStackTrace();
+                continue;
             }
         }
         if (!ignoredError && DEBUG) {
@@ -131,23 +201,172 @@ public class ClassPatchManager {
                 e.printStackTrace();
             }
         }
-        patchedClasses.put(name, inputData);
         return inputData;
     }
 
+    /**
+     * @return The number of bytes of patched classes currently waiting to be defined
+     */
+    public long getPatchedClassCacheBytes() {
+        return patchedClasses.getBytes();
+    }
+
+    /**
+     * Drops patched classes that were looked at but never defined, once loading completes.
+     *
+     * @return The number of bytes released
+     */
+    public long releasePatchedClasses() {
+        return patchedClasses.clear();
+    }
+
+    public void logStatistics() {
+        FMLRelaunchLog.info(
+                "Patched class cache: %d classes, %d bytes held, %d evicted",
+                patchedClasses.size(),
+                patchedClasses.getBytes(),
+                patchedClasses.getEvictions());
+    }
+
+    /**
+     * Bounded LRU of patched class bytes, by total size.
+     */
+    private static final class PatchedClassCache {
+
+        private final long maxBytes;
+        private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long bytes = 0;
+        private long evictions = 0;
+
+        PatchedClassCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get(String name) {
+            return entries.get(name);
+        }
+
+        synchronized void put(String name, byte[] data) {
+            if (data.length > maxBytes) {
+                return;
+            }
+            final byte[] old = entries.put(name, data);
+            if (old != null) {
+                bytes -= old.length;
+            }
+            bytes += data.length;
+            final Iterator<byte[]> it = entries.values().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                bytes -= it.next().length;
+                it.remove();
+                evictions++;
+            }
+        }
+
+        synchronized byte[] remove(String name) {
+            final byte[] data = entries.remove(name);
+            if (data != null) {
+                bytes -= data.length;
+            }
+            return data;
+        }
+
+        /**
+         * @return The number of bytes released
+         */
+        synchronized long clear() {
+            final long released = bytes;
+            entries.clear();
+            bytes = 0;
+            return released;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        synchronized long getEvictions() {
+            return evictions;
+        }
+    }
+
+    private List<ClassPatch> getPatches(String name) {
+        if (patchCacheIndex == null) {
+            return patches.get(name);
+        }
+        final int[] offsets = patchCacheIndex.get(name);
+        if (offsets == null) {
+            return Collections.emptyList();
+        }
+        // Patches are decoded straight from the mapped cache each time, applyPatch only asks once per class
+        final ByteBuffer buffer = patchCache.duplicate();
+        final List<ClassPatch> list = new ArrayList<>(offsets.length);
+        for (int offset : offsets) {
+            buffer.position(offset);
+            list.add(readCachedPatch(buffer));
+        }
+        return list;
+    }
+
     public void setup(Side side) {
-        Pattern binpatchMatcher = Pattern
-                .compile(String.format("binpatch/%s/.*.binpatch", side.toString().toLowerCase(Locale.ENGLISH)));
-        JarInputStream jis;
-        try {
-            InputStream binpatchesCompressed = getClass().getResourceAsStream("/binpatches.pack.lzma");
+        final String sideName = side.toString().toLowerCase(Locale.ENGLISH);
+        final byte[] compressed;
+        try (InputStream binpatchesCompressed = getClass().getResourceAsStream("/binpatches.pack.lzma")) {
             if (binpatchesCompressed == null) {
                 FMLRelaunchLog.log(
                         Level.ERROR,
                         "The binary patch set is missing. Either you are in a development environment, or things are not going to work!");
                 return;
             }
-            LzmaInputStream binpatchesDecompressedLzma = new LzmaInputStream(binpatchesCompressed);
+            compressed = ByteStreams.toByteArray(binpatchesCompressed);
+        } catch (Exception e) {
+            FMLRelaunchLog.log(Level.ERROR, e, "Error occurred reading binary patches. Expect severe problems!");
+            e.printStackTrace();
+            throw Throwables.propagate(e);
+        }
+
+        patches = ArrayListMultimap.create();
+        patchCacheIndex = null;
+        patchCache = null;
+        patchedClasses.clear();
+
+        final File cacheFile = CACHE_PATCHES ? getCacheFile(sideName, compressed) : null;
+        if (cacheFile != null && cacheFile.isFile()) {
+            try {
+                loadPatchCache(cacheFile);
+                FMLRelaunchLog.fine("Indexed %d cached binary patches", patchCacheIndex.size());
+                return;
+            } catch (IOException | RuntimeException e) {
+                FMLRelaunchLog.log(Level.WARN, e, "Could not read the binary patch cache %s, rebuilding it", cacheFile);
+                patchCacheIndex = null;
+                patchCache = null;
+            }
+        }
+
+        final List<ClassPatch> parsed = readPatches(sideName, compressed);
+        for (ClassPatch cp : parsed) {
+            patches.put(cp.sourceClassName, cp);
+        }
+        FMLRelaunchLog.fine("Read %d binary patches", patches.size());
+        if (DEBUG) FMLRelaunchLog.fine("Patch list :\n\t%s", Joiner.on("\t\n").join(patches.asMap().entrySet()));
+        if (cacheFile != null) {
+            try {
+                writePatchCache(cacheFile, parsed);
+            } catch (IOException e) {
+                FMLRelaunchLog.log(Level.WARN, e, "Could not write the binary patch cache %s", cacheFile);
+            }
+        }
+    }
+
+    private List<ClassPatch> readPatches(String sideName, byte[] compressed) {
+        Pattern binpatchMatcher = Pattern.compile(String.format("binpatch/%s/.*.binpatch", sideName));
+        JarInputStream jis;
+        try {
+            LzmaInputStream binpatchesDecompressedLzma = new LzmaInputStream(new ByteArrayInputStream(compressed));
             // The Apache pack200 stream chokes on a lzmainputstream for some reason
             byte[] decompressed = ByteStreams.toByteArray(binpatchesDecompressedLzma);
             binpatchesDecompressedLzma.close();
@@ -162,8 +381,9 @@ public class ClassPatchManager {
             throw Throwables.propagate(e);
         }
 
-        patches = ArrayListMultimap.create();
-
+        // The jar stream can only be read sequentially, so only collect the raw entries here and parse them in parallel
+        final List<String> entryNames = new ArrayList<>();
+        final List<byte[]> entryData = new ArrayList<>();
         do {
             try {
                 JarEntry entry = jis.getNextJarEntry();
@@ -171,30 +391,131 @@ public class ClassPatchManager {
                     break;
                 }
                 if (binpatchMatcher.matcher(entry.getName()).matches()) {
-                    ClassPatch cp = readPatch(entry, jis);
-                    if (cp != null) {
-                        patches.put(cp.sourceClassName, cp);
-                    }
+                    entryNames.add(entry.getName());
+                    entryData.add(ByteStreams.toByteArray(jis));
                 } else {
                     jis.closeEntry();
                 }
             } catch (IOException e) {}
         } while (true);
-        FMLRelaunchLog.fine("Read %d binary patches", patches.size());
-        if (DEBUG) FMLRelaunchLog.fine("Patch list :\n\t%s", Joiner.on("\t\n").join(patches.asMap().entrySet()));
-        patchedClasses.clear();
+
+        final ClassPatch[] parsed = new ClassPatch[entryNames.size()];
+        IntStream.range(0, parsed.length).parallel()
+                .forEach(i -> parsed[i] = readPatch(entryNames.get(i), entryData.get(i)));
+        final List<ClassPatch> result = new ArrayList<>(parsed.length);
+        for (ClassPatch cp : parsed) {
+            if (cp != null) {
+                result.add(cp);
+            }
+        }
+        return result;
     }
 
-    private ClassPatch readPatch(JarEntry patchEntry, JarInputStream jis) {
-        if (DEBUG) FMLRelaunchLog.finer("Reading patch data from %s", patchEntry.getName());
-        ByteArrayDataInput input;
-        try {
-            input = ByteStreams.newDataInput(ByteStreams.toByteArray(jis));
-        } catch (IOException e) {
-            FMLRelaunchLog.log(Level.WARN, e, "Unable to read binpatch file %s - ignoring", patchEntry.getName());
-            e.printStackTrace();
+    private static File getCacheFile(String sideName, byte[] compressed) {
+        if (Launch.minecraftHome == null) {
             return null;
         }
+        final String hash = Hashing.sha1().hashBytes(compressed).toString();
+        final File dir = new File(Launch.minecraftHome, "lwjgl3ify-cache");
+        return new File(dir, "binpatches-" + sideName + "-" + hash + ".bin");
+    }
+
+    /*
+     * Cache layout: magic, version, patch count, then the patches (source class name, name, target class name, exists
+     * at target, input checksum, patch length, patch bytes). Strings are written as a length and UTF-8 bytes.
+     */
+
+    private void writePatchCache(File cacheFile, List<ClassPatch> parsed) throws IOException {
+        final File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        // Old caches are for other patch sets, only one is ever needed per side
+        final String prefix = cacheFile.getName().substring(0, cacheFile.getName().lastIndexOf('-') + 1);
+        final File[] oldCaches = dir.listFiles((d, n) -> n.startsWith(prefix));
+        if (oldCaches != null) {
+            for (File old : oldCaches) {
+                old.delete();
+            }
+        }
+        final File tmpFile = new File(dir, cacheFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(parsed.size());
+            for (ClassPatch cp : parsed) {
+                writeString(out, cp.sourceClassName);
+                writeString(out, cp.name);
+                writeString(out, cp.targetClassName);
+                out.writeBoolean(cp.existsAtTarget);
+                out.writeInt(cp.inputChecksum);
+                out.writeInt(cp.patch.length);
+                out.write(cp.patch);
+            }
+        }
+        java.nio.file.Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void loadPatchCache(File cacheFile) throws IOException {
+        final MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r"); FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION) {
+            throw new IOException("Not a binary patch cache of the current version");
+        }
+        final int count = buffer.getInt();
+        final Map<String, int[]> index = Maps.newHashMapWithExpectedSize(count);
+        for (int i = 0; i < count; i++) {
+            final int offset = buffer.position();
+            final String sourceClassName = readString(buffer);
+            skipString(buffer); // name
+            skipString(buffer); // target class name
+            buffer.position(buffer.position() + 1 + 4); // exists at target, input checksum
+            final int patchLength = buffer.getInt();
+            buffer.position(buffer.position() + patchLength);
+            final int[] existing = index.get(sourceClassName);
+            final int[] offsets = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+            offsets[offsets.length - 1] = offset;
+            index.put(sourceClassName, offsets);
+        }
+        patchCache = buffer;
+        patchCacheIndex = index;
+    }
+
+    private static ClassPatch readCachedPatch(ByteBuffer buffer) {
+        final String sourceClassName = readString(buffer);
+        final String name = readString(buffer);
+        final String targetClassName = readString(buffer);
+        final boolean exists = buffer.get() != 0;
+        final int inputChecksum = buffer.getInt();
+        final byte[] patchBytes = new byte[buffer.getInt()];
+        buffer.get(patchBytes);
+        return new ClassPatch(name, sourceClassName, targetClassName, exists, inputChecksum, patchBytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private ClassPatch readPatch(String entryName, byte[] data) {
+        if (DEBUG) FMLRelaunchLog.finer("Reading patch data from %s", entryName);
+        ByteArrayDataInput input = ByteStreams.newDataInput(data);
         String name = input.readUTF();
         String sourceClassName = input.readUTF();
         String targetClassName = input.readUTF();
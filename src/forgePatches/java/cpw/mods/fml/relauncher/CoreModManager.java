@@ -23,6 +23,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ObjLongConsumer;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 
@@ -66,6 +67,27 @@ public class CoreModManager {
     private static List<String> reparsedCoremods = Lists.newArrayList();
     private static List<String> accessTransformers = Lists.newArrayList();
 
+    /**
+     * Span recorder put into the launch blackboard by lwjgl3ify's StartupTracer while it is recording, like in
+     * ClassPatchManager. Coremods are loaded before the lwjgl3ify coremod sets the tracer up, so until then spans are
+     * collected in a list under {@link #PENDING_SPANS_KEY}, which the tracer takes over or discards.
+     */
+    private static final String TRACER_KEY = "lwjgl3ify.startupTracer.coreMods";
+    private static final String PENDING_SPANS_KEY = "lwjgl3ify.startupTracer.pendingCoreModSpans";
+
+    @SuppressWarnings("unchecked")
+    private static void traceSpan(String name, long start) {
+        final ObjLongConsumer<String> tracer = (ObjLongConsumer<String>) Launch.blackboard.get(TRACER_KEY);
+        if (tracer != null) {
+            tracer.accept(name, start);
+            return;
+        }
+        final List<Object[]> pending = (List<Object[]>) Launch.blackboard.get(PENDING_SPANS_KEY);
+        if (pending != null) {
+            pending.add(new Object[] { name, start, System.nanoTime() });
+        }
+    }
+
     private static class FMLPluginWrapper implements ITweaker {
 
         public final String name;
@@ -96,6 +118,15 @@ public class CoreModManager {
 
         @Override
         public void injectIntoClassLoader(LaunchClassLoader classLoader) {
+            final long start = System.nanoTime();
+            try {
+                injectIntoClassLoaderUntraced(classLoader);
+            } finally {
+                traceSpan("inject " + name, start);
+            }
+        }
+
+        private void injectIntoClassLoaderUntraced(LaunchClassLoader classLoader) {
             FMLRelaunchLog
                     .info("Injecting coremod %s {%s} class transformers", name, coreModInstance.getClass().getName());
             if (coreModInstance.getASMTransformerClass() != null)
@@ -149,6 +180,7 @@ public class CoreModManager {
     }
 
     public static void handleLaunch(File mcDir, LaunchClassLoader classLoader, FMLTweaker tweaker) {
+        Launch.blackboard.put(PENDING_SPANS_KEY, new ArrayList<Object[]>());
         CoreModManager.mcDir = mcDir;
         CoreModManager.tweaker = tweaker;
         try {
@@ -198,7 +230,9 @@ public class CoreModManager {
             FMLRelaunchLog.info("Found a command line coremod : %s", coreModClassName);
             loadCoreMod(classLoader, coreModClassName, null);
         }
+        final long start = System.nanoTime();
         discoverCoreMods(mcDir, classLoader);
+        traceSpan("discoverCoreMods", start);
     }
 
     private static void discoverCoreMods(File mcDir, LaunchClassLoader classLoader) {
@@ -287,29 +321,36 @@ public class CoreModManager {
 
         coreModList = FileListHelper.sortFileList(coreModList);
 
-        for (File coreMod : coreModList) {
+        final long scanStart = System.nanoTime();
+        final CoreModManifestIndex.Entry[] manifests = CoreModManifestIndex.scan(mcDir, coreModList);
+        traceSpan("CoreModManifestIndex.scan", scanStart);
+        for (int i = 0; i < coreModList.length; i++) {
+            final File coreMod = coreModList[i];
             FMLRelaunchLog.fine("Examining for coremod candidacy %s", coreMod.getName());
-            JarFile jar = null;
-            Attributes mfAttributes;
-            try {
-                jar = new JarFile(coreMod);
-                if (jar.getManifest() == null) {
-                    // Not a coremod and no access transformer list
-                    continue;
-                }
-                ModAccessTransformer.addJar(jar);
-                mfAttributes = jar.getManifest().getMainAttributes();
-            } catch (IOException ioe) {
-                FMLRelaunchLog.log(Level.ERROR, ioe, "Unable to read the jar file %s - ignoring", coreMod.getName());
-                ioe.printStackTrace();
+            final CoreModManifestIndex.Entry manifest = manifests[i];
+            if (manifest.error != null) {
+                FMLRelaunchLog.log(
+                        Level.ERROR,
+                        manifest.error,
+                        "Unable to read the jar file %s - ignoring",
+                        coreMod.getName());
+                manifest.error.printStackTrace();
                 continue;
-            } finally {
-                if (jar != null) {
-                    try {
-                        jar.close();
-                    } catch (IOException e) {
-                        // Noise
-                    }
+            }
+            if (manifest.attributes == null) {
+                // Not a coremod and no access transformer list
+                continue;
+            }
+            final Attributes mfAttributes = manifest.attributes;
+            if (mfAttributes.getValue("FMLAT") != null) {
+                // Only jars that actually have access transformers need to be opened again
+                try (JarFile jar = new JarFile(coreMod)) {
+                    ModAccessTransformer.addJar(jar);
+                } catch (IOException ioe) {
+                    FMLRelaunchLog
+                            .log(Level.ERROR, ioe, "Unable to read the jar file %s - ignoring", coreMod.getName());
+                    ioe.printStackTrace();
+                    continue;
                 }
             }
             String cascadedTweaker = mfAttributes.getValue("TweakClass");
@@ -317,7 +358,7 @@ public class CoreModManager {
                 FMLRelaunchLog.info("Loading tweaker %s from %s", cascadedTweaker, coreMod.getName());
                 Integer sortOrder = Ints.tryParse(Strings.nullToEmpty(mfAttributes.getValue("TweakOrder")));
                 sortOrder = (sortOrder == null ? Integer.valueOf(0) : sortOrder);
-                handleCascadingTweak(coreMod, jar, cascadedTweaker, classLoader, sortOrder);
+                handleCascadingTweak(coreMod, null, cascadedTweaker, classLoader, sortOrder);
                 loadedCoremods.add(coreMod.getName());
                 continue;
             }
@@ -403,6 +444,7 @@ public class CoreModManager {
 
     private static void handleCascadingTweak(File coreMod, JarFile jar, String cascadedTweaker,
             LaunchClassLoader classLoader, Integer sortingOrder) {
+        final long start = System.nanoTime();
         try {
             // Have to manually stuff the tweaker into the parent classloader
             // PATCHED BEGIN
@@ -420,6 +462,8 @@ public class CoreModManager {
                     "There was a problem trying to load the mod dir tweaker %s",
                     coreMod.getAbsolutePath());
             e.printStackTrace();
+        } finally {
+            traceSpan("tweaker " + cascadedTweaker, start);
         }
     }
 
@@ -454,6 +498,16 @@ public class CoreModManager {
     }
 
     private static FMLPluginWrapper loadCoreMod(LaunchClassLoader classLoader, String coreModClass, File location) {
+        final long start = System.nanoTime();
+        try {
+            return loadCoreModUntraced(classLoader, coreModClass, location);
+        } finally {
+            traceSpan("load " + coreModClass, start);
+        }
+    }
+
+    private static FMLPluginWrapper loadCoreModUntraced(LaunchClassLoader classLoader, String coreModClass,
+            File location) {
         String coreModName = coreModClass.substring(coreModClass.lastIndexOf('.') + 1);
         try {
             FMLRelaunchLog.fine("Instantiating coremod class %s", coreModName);
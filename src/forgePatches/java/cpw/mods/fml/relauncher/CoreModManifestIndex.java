@@ -0,0 +1,212 @@
+package cpw.mods.fml.relauncher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Reads the manifest attributes relevant for coremod discovery from the jars in the mods folder, concurrently, and
+ * remembers them in an index keyed by path, size and modification time, so unchanged jars don't need to be opened
+ * again on the next launch.
+ */
+class CoreModManifestIndex {
+
+    public static final boolean ENABLED = Boolean
+            .parseBoolean(System.getProperty("lwjgl3ify.cacheCoremodManifests", "true"));
+
+    private static final int INDEX_MAGIC = 0x4C33434D; // L3CM
+    private static final int INDEX_VERSION = 1;
+    private static final int SCAN_THREADS = 8;
+
+    /** The attributes CoreModManager looks at, everything else is dropped */
+    private static final String[] RECORDED_ATTRIBUTES = { "TweakClass", "TweakOrder", "ModType", "ModSide",
+            "FMLCorePlugin", "FMLCorePluginContainsFMLMod", "FMLAT" };
+
+    static final class Entry {
+
+        final String path;
+        final long size;
+        final long lastModified;
+        /** Null if the jar has no manifest */
+        final Attributes attributes;
+        /** Set if the jar couldn't be read, such entries are not persisted */
+        final IOException error;
+
+        Entry(String path, long size, long lastModified, Attributes attributes, IOException error) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.attributes = attributes;
+            this.error = error;
+        }
+
+        boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * @return The manifest entries for the given jars, in the same order
+     */
+    static Entry[] scan(File mcDir, File[] jars) {
+        final File indexFile = new File(new File(mcDir, "lwjgl3ify-cache"), "coremod-manifests.bin");
+        final Map<String, Entry> index = ENABLED ? readIndex(indexFile) : new HashMap<>();
+        final Entry[] entries = new Entry[jars.length];
+        final List<Integer> toScan = new ArrayList<>();
+        final Set<String> paths = new HashSet<>();
+        for (int i = 0; i < jars.length; i++) {
+            paths.add(jars[i].getAbsolutePath());
+            final Entry cached = index.get(jars[i].getAbsolutePath());
+            if (cached != null && cached.matches(jars[i])) {
+                entries[i] = cached;
+            } else {
+                toScan.add(i);
+            }
+        }
+        if (!toScan.isEmpty()) {
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(SCAN_THREADS, toScan.size()), r -> {
+                final Thread thread = new Thread(r, "Coremod manifest scanner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                final List<Future<Entry>> futures = new ArrayList<>(toScan.size());
+                for (int i : toScan) {
+                    final File jar = jars[i];
+                    futures.add(executor.submit(() -> readEntry(jar)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    entries[toScan.get(i)] = futures.get(i).get();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Could not scan the mods folder for coremods", e);
+            } finally {
+                executor.shutdown();
+            }
+            FMLRelaunchLog.fine(
+                    "Read the manifests of %d jars, %d were cached",
+                    toScan.size(),
+                    jars.length - toScan.size());
+        }
+        // Rewrite the index if any jars were added, changed or removed
+        if (ENABLED && (!toScan.isEmpty() || !paths.equals(index.keySet()))) {
+            try {
+                writeIndex(indexFile, entries);
+            } catch (IOException e) {
+                FMLRelaunchLog.log(Level.WARN, e, "Could not write the coremod manifest index %s", indexFile);
+            }
+        }
+        return entries;
+    }
+
+    private static Entry readEntry(File jarFile) {
+        final long size = jarFile.length();
+        final long lastModified = jarFile.lastModified();
+        try (JarFile jar = new JarFile(jarFile)) {
+            final Manifest manifest = jar.getManifest();
+            Attributes recorded = null;
+            if (manifest != null) {
+                recorded = new Attributes();
+                final Attributes main = manifest.getMainAttributes();
+                for (String name : RECORDED_ATTRIBUTES) {
+                    final String value = main.getValue(name);
+                    if (value != null) {
+                        recorded.putValue(name, value);
+                    }
+                }
+            }
+            return new Entry(jarFile.getAbsolutePath(), size, lastModified, recorded, null);
+        } catch (IOException e) {
+            return new Entry(jarFile.getAbsolutePath(), size, lastModified, null, e);
+        }
+    }
+
+    private static Map<String, Entry> readIndex(File indexFile) {
+        final Map<String, Entry> index = new HashMap<>();
+        if (!indexFile.isFile()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return index;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long lastModified = in.readLong();
+                Attributes attributes = null;
+                final int attributeCount = in.readInt();
+                if (attributeCount >= 0) {
+                    attributes = new Attributes();
+                    for (int a = 0; a < attributeCount; a++) {
+                        attributes.putValue(in.readUTF(), in.readUTF());
+                    }
+                }
+                index.put(path, new Entry(path, size, lastModified, attributes, null));
+            }
+        } catch (IOException | RuntimeException e) {
+            FMLRelaunchLog.log(Level.WARN, e, "Could not read the coremod manifest index %s, rebuilding it", indexFile);
+            index.clear();
+        }
+        return index;
+    }
+
+    private static void writeIndex(File indexFile, Entry[] entries) throws IOException {
+        final File dir = indexFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.error == null) {
+                count++;
+            }
+        }
+        final File tmpFile = new File(dir, indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(count);
+            for (Entry entry : entries) {
+                if (entry.error != null) {
+                    continue;
+                }
+                out.writeUTF(entry.path);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                if (entry.attributes == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.attributes.size());
+                    for (Map.Entry<Object, Object> attribute : entry.attributes.entrySet()) {
+                        out.writeUTF(attribute.getKey().toString());
+                        out.writeUTF((String) attribute.getValue());
+                    }
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -2,7 +2,13 @@ package net.minecraftforge.common.util;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.minecraft.block.BlockPressurePlate.Sensitivity;
 import net.minecraft.block.material.Material;
@@ -129,27 +135,78 @@ public class EnumHelper {
     @SuppressWarnings("unchecked")
     public static <T extends Enum<?>> T addEnum(Class<T> enumType, String enumName, Class<?>[] paramTypes,
             Object[] paramValues) {
-        if (!extensibleEnumIface.isAssignableFrom(enumType)) {
-            throw new RuntimeException(
-                    "Enum " + enumType.getName() + " was not made extensible, add it to lwjgl3ify configs.");
-        }
-
+        final MethodHandle creator = getCreator(enumType, paramTypes);
         try {
-            paramTypes = ArrayUtils.add(paramTypes, 0, String.class);
             paramValues = ArrayUtils.add(paramValues, 0, enumName);
-
-            final Method creatorHandle = enumType.getMethod("dynamicCreate", paramTypes);
-            T newValue = (T) creatorHandle.invoke(null, paramValues);
-
-            return newValue;
-        } catch (Exception e) {
+            return (T) creator.invoke(paramValues);
+        } catch (Throwable e) {
             e.printStackTrace();
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Adds many constants to an enum at once, growing its values array and invalidating its caches only once instead of
+     * for every constant.
+     *
+     * @param enumNames   Names of the new constants
+     * @param paramValues Constructor arguments for each of the new constants, in the same order as the names
+     * @return The new constants, or already existing constants with the same names
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Enum<?>> List<T> addEnums(Class<T> enumType, Class<?>[] paramTypes, String[] enumNames,
+            Object[][] paramValues) {
+        if (enumNames.length != paramValues.length) {
+            throw new IllegalArgumentException("Got " + enumNames.length + " names but " + paramValues.length + " values");
+        }
+        final MethodHandle creator = getCreator(enumType, paramTypes);
+        final List<T> added = new ArrayList<>(enumNames.length);
+        // Hold the monitor of the generated dynamicCreate methods, so no other thread can see a partial batch
+        synchronized (enumType) {
+            try {
+                beginBatchHandle.invoke(enumType);
+                try {
+                    for (int i = 0; i < enumNames.length; i++) {
+                        added.add((T) creator.invoke(ArrayUtils.add(paramValues[i], 0, enumNames[i])));
+                    }
+                } finally {
+                    endBatchHandle.invoke(enumType);
+                }
+            } catch (Throwable e) {
+                e.printStackTrace();
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+        return added;
+    }
+
+    private static MethodHandle getCreator(Class<?> enumType, Class<?>[] paramTypes) {
+        if (!extensibleEnumIface.isAssignableFrom(enumType)) {
+            throw new RuntimeException(
+                    "Enum " + enumType.getName() + " was not made extensible, add it to lwjgl3ify configs.");
+        }
+        final Map<List<Class<?>>, MethodHandle> enumCreators = creators
+                .computeIfAbsent(enumType, k -> new ConcurrentHashMap<>());
+        return enumCreators.computeIfAbsent(Arrays.asList(paramTypes), k -> {
+            try {
+                final Class<?>[] createTypes = ArrayUtils.add(paramTypes, 0, String.class);
+                return MethodHandles.publicLookup()
+                        .findStatic(enumType, "dynamicCreate", MethodType.methodType(enumType, createTypes))
+                        .asSpreader(Object[].class, createTypes.length);
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace();
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        });
+    }
+
+    /** Spread (Object[]) creator handles by enum class and constructor parameter types */
+    private static final Map<Class<?>, Map<List<Class<?>>, MethodHandle>> creators = new ConcurrentHashMap<>();
+
     private static final Class<?> extensibleEnumIface;
     private static final MethodHandle setFieldHandle;
+    private static final MethodHandle beginBatchHandle;
+    private static final MethodHandle endBatchHandle;
 
     static {
         try {
@@ -157,6 +214,11 @@ public class EnumHelper {
             Class<?> unsafeHacks = Class.forName("me.eigenraven.lwjgl3ify.UnsafeHacks");
             Method setFieldM = unsafeHacks.getMethod("setField", Field.class, Object.class, Object.class);
             setFieldHandle = MethodHandles.publicLookup().unreflect(setFieldM);
+            Class<?> extensibleEnums = Class.forName("me.eigenraven.lwjgl3ify.ExtensibleEnums");
+            beginBatchHandle = MethodHandles.publicLookup()
+                    .unreflect(extensibleEnums.getMethod("beginBatch", Class.class));
+            endBatchHandle = MethodHandles.publicLookup()
+                    .unreflect(extensibleEnums.getMethod("endBatch", Class.class));
         } catch (ReflectiveOperationException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,117 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The classes a benchmark feeds through the transformers, either generated by {@link SyntheticClasses} or read from
+ * all jars in a directory, e.g. a mods folder.
+ */
+public final class ClassCorpus {
+
+    public static final class Entry {
+
+        /** Internal name, e.g. {@code java/lang/Object} */
+        public final String name;
+        /** Binary name, as passed to the transformers, e.g. {@code java.lang.Object} */
+        public final String transformedName;
+        public final byte[] bytes;
+
+        public Entry(String name, byte[] bytes) {
+            this.name = name;
+            this.transformedName = name.replace('/', '.');
+            this.bytes = bytes;
+        }
+    }
+
+    public final Entry[] entries;
+    public final long totalBytes;
+
+    private ClassCorpus(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            throw new IllegalStateException("The class corpus is empty");
+        }
+        this.entries = entries.toArray(new Entry[0]);
+        this.totalBytes = entries.stream().mapToLong(e -> e.bytes.length).sum();
+    }
+
+    /**
+     * @param jarDirectory Directory to read all {@code .jar} files from, or empty to generate synthetic classes
+     * @param synthetic    How many classes to generate when no directory is given
+     */
+    public static ClassCorpus load(String jarDirectory, int synthetic) {
+        if (jarDirectory == null || jarDirectory.isEmpty()) {
+            return synthetic(synthetic);
+        }
+        return fromJars(new File(jarDirectory));
+    }
+
+    public static ClassCorpus synthetic(int count) {
+        final SyntheticClasses generator = new SyntheticClasses(0x6C776A67L);
+        final List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(generator.generate(i));
+        }
+        return new ClassCorpus(entries);
+    }
+
+    public static ClassCorpus fromJars(File directory) {
+        final File[] jars = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (jars == null) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        Arrays.sort(jars);
+        final List<Entry> entries = new ArrayList<>();
+        for (File jar : jars) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                final Enumeration<JarEntry> jarEntries = jarFile.entries();
+                while (jarEntries.hasMoreElements()) {
+                    final JarEntry entry = jarEntries.nextElement();
+                    final String name = entry.getName();
+                    if (entry.isDirectory() || !name.endsWith(".class")
+                            || name.endsWith("module-info.class")
+                            || name.startsWith("META-INF/")) {
+                        continue;
+                    }
+                    final String className = name.substring(0, name.length() - ".class".length());
+                    try (InputStream is = jarFile.getInputStream(entry)) {
+                        entries.add(new Entry(className, IOUtils.toByteArray(is)));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + jar, e);
+            }
+        }
+        return new ClassCorpus(entries);
+    }
+
+    /**
+     * @return The entries matching the filter, or this corpus if there are none, so benchmarks always have input
+     */
+    public ClassCorpus filter(Predicate<Entry> filter) {
+        final List<Entry> matching = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (filter.test(entry)) {
+                matching.add(entry);
+            }
+        }
+        return matching.isEmpty() ? this : new ClassCorpus(matching);
+    }
+
+    public static boolean isEnum(Entry entry) {
+        return (new ClassReader(entry.bytes).getAccess() & Opcodes.ACC_ENUM) != 0;
+    }
+}
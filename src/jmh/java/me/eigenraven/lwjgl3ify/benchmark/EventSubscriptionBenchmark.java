@@ -0,0 +1,76 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cpw.mods.fml.common.asm.transformers.EventSubscriptionTransformer;
+
+/**
+ * Per-class cost of the patched {@link EventSubscriptionTransformer} with its header check, against the cost of the
+ * original transformer that built a ClassNode for every class before looking at the superclass. {@code treeFirst}
+ * builds that tree before running the current transformer, which adds the same work back on top of it.
+ * <p>
+ * The corpus is generated unless {@code -p jars=<directory>} points to a directory of jars, e.g. a mods folder:
+ * {@code ./gradlew runJmh -PjmhArgs="EventSubscriptionBenchmark -p jars=/path/to/mods"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventSubscriptionBenchmark {
+
+    /** Directory of jars to read the classes from, empty to generate synthetic classes */
+    @Param({ "" })
+    public String jars;
+
+    /** Number of synthetic classes, ignored when reading jars */
+    @Param({ "4096" })
+    public int classes;
+
+    private EventSubscriptionTransformer transformer;
+    private ClassCorpus corpus;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        transformer = new EventSubscriptionTransformer();
+        corpus = ClassCorpus.load(jars, classes);
+    }
+
+    private ClassCorpus.Entry next() {
+        final ClassCorpus.Entry entry = corpus.entries[cursor];
+        cursor = cursor + 1 == corpus.entries.length ? 0 : cursor + 1;
+        return entry;
+    }
+
+    @Benchmark
+    public byte[] headerFirst() {
+        final ClassCorpus.Entry entry = next();
+        return transformer.transform(entry.transformedName, entry.transformedName, entry.bytes);
+    }
+
+    @Benchmark
+    public byte[] treeFirst(Blackhole blackhole) {
+        final ClassCorpus.Entry entry = next();
+        final ClassNode node = new ClassNode();
+        new ClassReader(entry.bytes).accept(node, 0);
+        blackhole.consume(node);
+        return transformer.transform(entry.transformedName, entry.transformedName, entry.bytes);
+    }
+}
@@ -0,0 +1,171 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import me.eigenraven.lwjgl3ify.textures.NativeBackedImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the mip chain of one stb_image decoded sprite per operation, natively like the sprite mipmap generator, and
+ * the vanilla way: copying the pixels to an {@code int[]} like {@code loadSprite} and halving it with a copy of
+ * {@code TextureUtil.generateMipmapData}. Run with {@code -prof gc} (the {@code runJmh} task adds it) to compare the
+ * heap allocated per sprite, {@code ./gradlew runJmh -PjmhArgs="MipmapBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MipmapBenchmark {
+
+    /** Width and height of the sprite */
+    @Param({ "16", "64", "256" })
+    public int size;
+
+    /** Whether the first and some other pixels are fully transparent, which switches both to the cutout blend */
+    @Param({ "false", "true" })
+    public boolean transparent;
+
+    private NativeBackedImage image;
+    private int levels;
+
+    @Setup
+    public void setup() throws IOException {
+        final BufferedImage source = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        final Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final int alpha = transparent && (x + y == 0 || random.nextInt(4) == 0) ? 0 : 255;
+                source.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", png);
+        image = NativeBackedImage.make(new ByteArrayInputStream(png.toByteArray()));
+        levels = Integer.numberOfTrailingZeros(size);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        image.close();
+    }
+
+    @Benchmark
+    public int nativeChain() throws Exception {
+        final boolean cutout = image.hasTransparentPixels(levels + 1);
+        NativeBackedImage previous = image;
+        int checksum = 0;
+        for (int level = 0; level < levels; level++) {
+            final NativeBackedImage mip = previous.halfSize(cutout);
+            checksum += mip.getWidth();
+            if (previous != image) {
+                previous.close();
+            }
+            previous = mip;
+        }
+        if (previous != image) {
+            previous.close();
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public int[][] vanillaHeap() {
+        final int[][] data = new int[levels + 1][];
+        data[0] = image.getRGB(0, 0, size, size, new int[size * size], 0, size);
+        return generateMipmapData(levels, size, data);
+    }
+
+    /** TextureUtil.generateMipmapData, which would need a GL context to load the class */
+    private static int[][] generateMipmapData(int levels, int width, int[][] data) {
+        final int[][] result = new int[levels + 1][];
+        result[0] = data[0];
+        boolean cutout = false;
+        for (int k = 0; k < data.length; k++) {
+            if (data[0][k] >> 24 == 0) {
+                cutout = true;
+                break;
+            }
+        }
+        for (int level = 1; level <= levels; level++) {
+            final int[] previous = result[level - 1];
+            final int[] half = new int[previous.length >> 2];
+            final int halfWidth = width >> level;
+            final int rows = half.length / halfWidth;
+            final int stride = halfWidth << 1;
+            for (int x = 0; x < halfWidth; x++) {
+                for (int y = 0; y < rows; y++) {
+                    final int i = 2 * (x + y * stride);
+                    half[x + y * halfWidth] = blend(
+                            previous[i],
+                            previous[i + 1],
+                            previous[i + stride],
+                            previous[i + 1 + stride],
+                            cutout);
+                }
+            }
+            result[level] = half;
+        }
+        return result;
+    }
+
+    private static final int[] blendBuffer = new int[4];
+
+    private static int blend(int a, int b, int c, int d, boolean cutout) {
+        if (!cutout) {
+            return blendChannel(a, b, c, d, 24) << 24 | blendChannel(a, b, c, d, 16) << 16
+                    | blendChannel(a, b, c, d, 8) << 8
+                    | blendChannel(a, b, c, d, 0);
+        }
+        blendBuffer[0] = a;
+        blendBuffer[1] = b;
+        blendBuffer[2] = c;
+        blendBuffer[3] = d;
+        float fa = 0.0F, fr = 0.0F, fg = 0.0F, fb = 0.0F;
+        for (int color : blendBuffer) {
+            if (color >> 24 != 0) {
+                fa += (float) Math.pow((double) ((float) (color >> 24 & 255) / 255.0F), 2.2D);
+                fr += (float) Math.pow((double) ((float) (color >> 16 & 255) / 255.0F), 2.2D);
+                fg += (float) Math.pow((double) ((float) (color >> 8 & 255) / 255.0F), 2.2D);
+                fb += (float) Math.pow((double) ((float) (color & 255) / 255.0F), 2.2D);
+            }
+        }
+        int alpha = (int) (Math.pow((double) (fa / 4.0F), 0.45454545454545453D) * 255.0D);
+        final int red = (int) (Math.pow((double) (fr / 4.0F), 0.45454545454545453D) * 255.0D);
+        final int green = (int) (Math.pow((double) (fg / 4.0F), 0.45454545454545453D) * 255.0D);
+        final int blue = (int) (Math.pow((double) (fb / 4.0F), 0.45454545454545453D) * 255.0D);
+        if (alpha < 96) {
+            alpha = 0;
+        }
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    private static int blendChannel(int a, int b, int c, int d, int shift) {
+        final float fa = (float) Math.pow((double) ((float) (a >> shift & 255) / 255.0F), 2.2D);
+        final float fb = (float) Math.pow((double) ((float) (b >> shift & 255) / 255.0F), 2.2D);
+        final float fc = (float) Math.pow((double) ((float) (c >> shift & 255) / 255.0F), 2.2D);
+        final float fd = (float) Math.pow((double) ((float) (d >> shift & 255) / 255.0F), 2.2D);
+        final float average = (float) Math.pow((double) (fa + fb + fc + fd) * 0.25D, 0.45454545454545453D);
+        return (int) ((double) average * 255.0D);
+    }
+}
@@ -0,0 +1,90 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import me.eigenraven.lwjgl3ify.textures.NativeBackedImage;
+
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts a whole stb_image decoded image to an ARGB array per operation, with {@link NativeBackedImage#getRGB} and
+ * with the per-pixel loop it used to have, kept here as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PixelConversionBenchmark {
+
+    /** Width and height of the image */
+    @Param({ "16", "256", "4096" })
+    public int size;
+
+    private NativeBackedImage image;
+    private int[] pixels;
+
+    @Setup
+    public void setup() throws IOException {
+        final BufferedImage source = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        final Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                source.setRGB(x, y, random.nextInt());
+            }
+        }
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", png);
+        image = NativeBackedImage.make(new ByteArrayInputStream(png.toByteArray()));
+        pixels = new int[size * size];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        image.close();
+    }
+
+    @Benchmark
+    public int[] bulk() {
+        return image.getRGB(0, 0, size, size, pixels, 0, size);
+    }
+
+    @Benchmark
+    public int[] perPixel() {
+        final long pointer = image.address();
+        final int width = image.getWidth();
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                int color = MemoryUtil.memGetInt(pointer + ((x + z * width) * 4));
+                // ABGR -> ARGB
+                int a = (color >> 24) & 0xFF;
+                int b = (color >> 16) & 0xFF;
+                int g = (color >> 8) & 0xFF;
+                int r = (color >> 0) & 0xFF;
+
+                pixels[x + (z * width)] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,116 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+/**
+ * The sprite sizes a stitching benchmark packs, either following a typical distribution of block and item textures or
+ * read from the PNG headers of all block and item textures in the jars of a directory, e.g. a mods folder.
+ */
+public final class SpriteSizes {
+
+    private static final Pattern SPRITE_PATH = Pattern.compile("assets/[^/]+/textures/(blocks|items)/.+\\.png");
+    /** Side lengths of the synthetic sprites and how many in a thousand have them */
+    private static final int[][] DISTRIBUTION = { { 16, 700 }, { 32, 150 }, { 64, 80 }, { 128, 45 }, { 256, 20 },
+            { 512, 5 } };
+
+    public final int[] widths;
+    public final int[] heights;
+
+    private SpriteSizes(List<int[]> sizes) {
+        if (sizes.isEmpty()) {
+            throw new IllegalStateException("No sprites found");
+        }
+        this.widths = new int[sizes.size()];
+        this.heights = new int[sizes.size()];
+        for (int i = 0; i < sizes.size(); i++) {
+            widths[i] = sizes.get(i)[0];
+            heights[i] = sizes.get(i)[1];
+        }
+    }
+
+    /**
+     * @param jarDirectory Directory to read all {@code .jar} files from, or empty to generate synthetic sizes
+     * @param synthetic    How many sprites to generate when no directory is given
+     */
+    public static SpriteSizes load(String jarDirectory, int synthetic) {
+        if (jarDirectory == null || jarDirectory.isEmpty()) {
+            return synthetic(synthetic);
+        }
+        return fromJars(new File(jarDirectory));
+    }
+
+    public static SpriteSizes synthetic(int count) {
+        final Random random = new Random(0x6C776A67L);
+        final List<int[]> sizes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int roll = random.nextInt(1000);
+            for (int[] bucket : DISTRIBUTION) {
+                roll -= bucket[1];
+                if (roll < 0) {
+                    sizes.add(new int[] { bucket[0], bucket[0] });
+                    break;
+                }
+            }
+        }
+        return new SpriteSizes(sizes);
+    }
+
+    public static SpriteSizes fromJars(File directory) {
+        final File[] jars = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (jars == null) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        Arrays.sort(jars);
+        final List<int[]> sizes = new ArrayList<>();
+        for (File jar : jars) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                final Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !SPRITE_PATH.matcher(entry.getName()).matches()) {
+                        continue;
+                    }
+                    try (InputStream is = jarFile.getInputStream(entry)) {
+                        final int[] size = readPngSize(is);
+                        if (size != null) {
+                            sizes.add(size);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + jar, e);
+            }
+        }
+        return new SpriteSizes(sizes);
+    }
+
+    /**
+     * @return The size of one frame, as animated sprites stack their frames vertically, or null if it's not a PNG
+     */
+    private static int[] readPngSize(InputStream is) throws IOException {
+        final DataInputStream in = new DataInputStream(is);
+        // Signature, IHDR length and type, then the size
+        if (in.readLong() != 0x89504E470D0A1A0AL) {
+            return null;
+        }
+        in.readLong();
+        final int width = in.readInt();
+        final int height = in.readInt();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        return new int[] { width, height > width && height % width == 0 ? width : height };
+    }
+}
@@ -0,0 +1,84 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import me.eigenraven.lwjgl3ify.textures.AtlasPacker;
+
+import net.minecraft.client.renderer.texture.Stitcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stitches a whole atlas per operation with the stb_rect_pack based packer, for every heuristic and sort order. The
+ * vanilla stitcher is timed by {@link VanillaStitcherBenchmark}. The atlas size and fill ratio of each packing, and of
+ * vanilla's for the same sprites, are printed once in the setup, as JMH only reports times.
+ * <p>
+ * The sprite sizes are generated unless {@code -p jars=<directory>} points to a directory of jars, e.g. a mods folder,
+ * to take the sizes of their block and item textures:
+ * {@code ./gradlew runJmh -PjmhArgs="StitcherBenchmark -p jars=/path/to/mods"}, which matches both benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StitcherBenchmark {
+
+    /** Directory of jars to read the sprite sizes from, empty to generate synthetic sizes */
+    @Param({ "" })
+    public String jars;
+
+    /** Number of synthetic sprites, ignored when reading jars */
+    @Param({ "4096" })
+    public int sprites;
+
+    @Param({ "skylineBottomLeft", "skylineBestFit" })
+    public String heuristic;
+
+    @Param({ "height", "area", "maxSide", "perimeter" })
+    public String sortOrder;
+
+    private SpriteSizes sizes;
+
+    @Setup
+    public void setup() {
+        sizes = SpriteSizes.load(jars, sprites);
+        final Stitcher vanilla = VanillaStitcherBenchmark.stitch(VanillaStitcherBenchmark.sprites(sizes));
+        final AtlasPacker.Result stb = packStb();
+        if (stb == null) {
+            throw new IllegalStateException("The sprites don't fit into any atlas size");
+        }
+        System.out.printf(
+                "%n%d sprites: vanilla %dx%d (%.1f%% filled), stb %s/%s %dx%d (%.1f%% filled, %d sizes tried)%n",
+                sizes.widths.length,
+                vanilla.getCurrentWidth(),
+                vanilla.getCurrentHeight(),
+                100.0 * stb.usedArea / ((long) vanilla.getCurrentWidth() * vanilla.getCurrentHeight()),
+                heuristic,
+                sortOrder,
+                stb.width,
+                stb.height,
+                100.0 * stb.fillRatio(),
+                stb.attempts);
+    }
+
+    @Benchmark
+    public AtlasPacker.Result packStb() {
+        return AtlasPacker.pack(
+                sizes.widths,
+                sizes.heights,
+                AtlasPacker.Heuristic.byName(heuristic),
+                AtlasPacker.SortOrder.byName(sortOrder));
+    }
+}
@@ -0,0 +1,234 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.util.Random;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates class files resembling a typical mod jar: mostly plain classes, with a share of classes using LWJGL2
+ * APIs, object holders, events and extensible enums, so that every transformer has work to do on some of them and
+ * has to reject the rest. The output only depends on the seed.
+ */
+public final class SyntheticClasses implements Opcodes {
+
+    private static final String PACKAGE = "bench/generated/";
+    private static final String EVENT = "cpw/mods/fml/common/eventhandler/Event";
+    private static final String OBJECT_HOLDER = "Lcpw/mods/fml/common/registry/GameRegistry$ObjectHolder;";
+    private static final String ITEM = "Lnet/minecraft/item/Item;";
+    private static final String EXTENSIBLE_ENUM = "me/eigenraven/lwjgl3ify/IExtensibleEnum";
+    private static final int GL_QUADS = 7;
+
+    private final Random random;
+
+    public SyntheticClasses(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param index Selects the kind of class, out of every 8 classes 4 are plain and the others one of each kind
+     * @return The internal name and the class file bytes
+     */
+    public ClassCorpus.Entry generate(int index) {
+        switch (index % 8) {
+            case 4:
+                return lwjglUser(PACKAGE + "render/Renderer" + index);
+            case 5:
+                return objectHolder(PACKAGE + "init/Items" + index);
+            case 6:
+                return event(PACKAGE + "event/Event" + index);
+            case 7:
+                return extensibleEnum(PACKAGE + "types/Type" + index);
+            default:
+                return plain(PACKAGE + "logic/Logic" + index);
+        }
+    }
+
+    private ClassCorpus.Entry plain(String name) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        defaultConstructor(cw, "java/lang/Object");
+        final int fields = 1 + random.nextInt(6);
+        for (int f = 0; f < fields; f++) {
+            cw.visitField(ACC_PRIVATE, "field" + f, "I", null, null).visitEnd();
+        }
+        final int methods = 2 + random.nextInt(12);
+        for (int m = 0; m < methods; m++) {
+            final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "compute" + m, "(ILjava/lang/String;)I", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitLdcInsn(random.nextInt());
+            mv.visitInsn(IADD);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "max", "(II)I", false);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, name, "field" + random.nextInt(fields), "I");
+            mv.visitInsn(IMUL);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return new ClassCorpus.Entry(name, cw.toByteArray());
+    }
+
+    private ClassCorpus.Entry lwjglUser(String name) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        defaultConstructor(cw, "java/lang/Object");
+        cw.visitField(ACC_PRIVATE | ACC_STATIC, "buffer", "Ljava/nio/FloatBuffer;", null, null).visitEnd();
+        final int methods = 2 + random.nextInt(8);
+        for (int m = 0; m < methods; m++) {
+            final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "render" + m, "()V", null, null);
+            mv.visitCode();
+            mv.visitLdcInsn(GL_QUADS);
+            mv.visitMethodInsn(INVOKESTATIC, "org/lwjgl/opengl/GL11", "glBegin", "(I)V", false);
+            mv.visitFieldInsn(GETSTATIC, name, "buffer", "Ljava/nio/FloatBuffer;");
+            mv.visitMethodInsn(
+                    INVOKESTATIC,
+                    "org/lwjgl/opengl/GL11",
+                    "glMultMatrix",
+                    "(Ljava/nio/FloatBuffer;)V",
+                    false);
+            mv.visitMethodInsn(INVOKESTATIC, "org/lwjgl/opengl/GL11", "glEnd", "()V", false);
+            mv.visitMethodInsn(INVOKESTATIC, "org/lwjgl/opengl/Display", "isActive", "()Z", false);
+            mv.visitInsn(POP);
+            mv.visitLdcInsn(random.nextInt(256));
+            mv.visitMethodInsn(INVOKESTATIC, "org/lwjgl/input/Keyboard", "isKeyDown", "(I)Z", false);
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return new ClassCorpus.Entry(name, cw.toByteArray());
+    }
+
+    private ClassCorpus.Entry objectHolder(String name) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        final AnnotationVisitor holder = cw.visitAnnotation(OBJECT_HOLDER, true);
+        holder.visit("value", "benchmod");
+        holder.visitEnd();
+        final int fields = 4 + random.nextInt(32);
+        for (int f = 0; f < fields; f++) {
+            final FieldVisitor fv = cw.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, "item" + f, ITEM, null, null);
+            fv.visitEnd();
+        }
+        final MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        for (int f = 0; f < fields; f++) {
+            mv.visitInsn(ACONST_NULL);
+            mv.visitFieldInsn(PUTSTATIC, name, "item" + f, ITEM);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return new ClassCorpus.Entry(name, cw.toByteArray());
+    }
+
+    private ClassCorpus.Entry event(String name) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, EVENT, null);
+        if (random.nextBoolean()) {
+            cw.visitAnnotation("Lcpw/mods/fml/common/eventhandler/Cancelable;", true).visitEnd();
+        }
+        cw.visitField(ACC_PUBLIC | ACC_FINAL, "payload", "Ljava/lang/Object;", null, null).visitEnd();
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, EVENT, "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, name, "payload", "Ljava/lang/Object;");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return new ClassCorpus.Entry(name, cw.toByteArray());
+    }
+
+    private ClassCorpus.Entry extensibleEnum(String name) {
+        final String desc = Type.getObjectType(name).getDescriptor();
+        final String arrayDesc = "[" + desc;
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(
+                V1_8,
+                ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_ENUM,
+                name,
+                "Ljava/lang/Enum<" + desc + ">;L" + EXTENSIBLE_ENUM + ";",
+                "java/lang/Enum",
+                new String[] { EXTENSIBLE_ENUM });
+        final int constants = 2 + random.nextInt(16);
+        for (int c = 0; c < constants; c++) {
+            cw.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_ENUM, "VALUE" + c, desc, null, null).visitEnd();
+        }
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, "weight", "I", null, null).visitEnd();
+        cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC, "$VALUES", arrayDesc, null, null)
+                .visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "<init>", "(Ljava/lang/String;II)V", "(I)V", null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Enum", "<init>", "(Ljava/lang/String;I)V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 3);
+        mv.visitFieldInsn(PUTFIELD, name, "weight", "I");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "values", "()" + arrayDesc, null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(GETSTATIC, name, "$VALUES", arrayDesc);
+        mv.visitMethodInsn(INVOKEVIRTUAL, arrayDesc, "clone", "()Ljava/lang/Object;", false);
+        mv.visitTypeInsn(CHECKCAST, arrayDesc);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        for (int c = 0; c < constants; c++) {
+            mv.visitTypeInsn(NEW, name);
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn("VALUE" + c);
+            mv.visitLdcInsn(c);
+            mv.visitLdcInsn(random.nextInt(100));
+            mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", "(Ljava/lang/String;II)V", false);
+            mv.visitFieldInsn(PUTSTATIC, name, "VALUE" + c, desc);
+        }
+        mv.visitLdcInsn(constants);
+        mv.visitTypeInsn(ANEWARRAY, name);
+        for (int c = 0; c < constants; c++) {
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn(c);
+            mv.visitFieldInsn(GETSTATIC, name, "VALUE" + c, desc);
+            mv.visitInsn(AASTORE);
+        }
+        mv.visitFieldInsn(PUTSTATIC, name, "$VALUES", arrayDesc);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return new ClassCorpus.Entry(name, cw.toByteArray());
+    }
+
+    private static void defaultConstructor(ClassWriter cw, String superName) {
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
@@ -0,0 +1,107 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import me.eigenraven.lwjgl3ify.core.ExtensibleEnumTransformerHelper;
+import me.eigenraven.lwjgl3ify.core.LwjglRedirectTransformer;
+import me.eigenraven.lwjgl3ify.core.UnfinalizeObjectHoldersTransformer;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cpw.mods.fml.common.asm.transformers.EventSubscriptionTransformer;
+
+/**
+ * Feeds the class corpus through lwjgl3ify's transformers one class per operation, cycling through the corpus, so the
+ * throughput mode reports classes per millisecond and the sample mode reports the per-class latency percentiles
+ * including p0.99. Run with {@code -prof gc} for the allocation rate, the {@code runJmh} task does so by default.
+ * <p>
+ * The corpus is generated unless {@code -p jars=<directory>} points to a directory of jars, e.g. a mods folder. The
+ * transformers run without their caches and without a Minecraft launch, so every operation does the full work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+
+    /** Directory of jars to read the classes from, empty to generate synthetic classes */
+    @Param({ "" })
+    public String jars;
+
+    /** Number of synthetic classes, ignored when reading jars */
+    @Param({ "4096" })
+    public int classes;
+
+    private ClassCorpus corpus;
+    private ClassCorpus enums;
+    private int cursor;
+    private int enumCursor;
+
+    private LwjglRedirectTransformer redirectTransformer;
+    private UnfinalizeObjectHoldersTransformer unfinalizeTransformer;
+    private ExtensibleEnumTransformerHelper enumTransformer;
+    private EventSubscriptionTransformer eventTransformer;
+
+    @Setup
+    public void setup() {
+        corpus = ClassCorpus.load(jars, classes);
+        enums = corpus.filter(ClassCorpus::isEnum);
+        redirectTransformer = new LwjglRedirectTransformer();
+        unfinalizeTransformer = new UnfinalizeObjectHoldersTransformer();
+        enumTransformer = new ExtensibleEnumTransformerHelper();
+        eventTransformer = new EventSubscriptionTransformer();
+    }
+
+    private ClassCorpus.Entry next() {
+        final ClassCorpus.Entry entry = corpus.entries[cursor];
+        cursor = cursor + 1 == corpus.entries.length ? 0 : cursor + 1;
+        return entry;
+    }
+
+    @Benchmark
+    public byte[] lwjglRedirect() {
+        final ClassCorpus.Entry entry = next();
+        return redirectTransformer.transform(entry.transformedName, entry.transformedName, entry.bytes);
+    }
+
+    @Benchmark
+    public byte[] unfinalizeObjectHolders() {
+        final ClassCorpus.Entry entry = next();
+        return unfinalizeTransformer.transform(entry.transformedName, entry.transformedName, entry.bytes);
+    }
+
+    @Benchmark
+    public byte[] eventSubscription() {
+        final ClassCorpus.Entry entry = next();
+        return eventTransformer.transform(entry.transformedName, entry.transformedName, entry.bytes);
+    }
+
+    /**
+     * Includes reading the class into a tree, as the helper modifies the node it is given. Runs over the enum classes
+     * of the corpus only, as the helper is only called for those.
+     */
+    @Benchmark
+    public ClassNode extensibleEnum() {
+        final ClassCorpus.Entry entry = enums.entries[enumCursor];
+        enumCursor = enumCursor + 1 == enums.entries.length ? 0 : enumCursor + 1;
+        final ClassNode node = new ClassNode();
+        new ClassReader(entry.bytes).accept(node, 0);
+        enumTransformer.processClassWithFlags(node, Type.getObjectType(entry.name));
+        return node;
+    }
+}
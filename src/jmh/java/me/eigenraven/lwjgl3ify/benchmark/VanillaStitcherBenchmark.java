@@ -0,0 +1,83 @@
+package me.eigenraven.lwjgl3ify.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.client.renderer.texture.Stitcher;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stitches a whole atlas per operation with the vanilla stitcher, the baseline for {@link StitcherBenchmark}. The
+ * atlas size is printed once in the setup.
+ * <p>
+ * The sprite sizes are generated unless {@code -p jars=<directory>} points to a directory of jars, e.g. a mods folder,
+ * to take the sizes of their block and item textures:
+ * {@code ./gradlew runJmh -PjmhArgs="StitcherBenchmark -p jars=/path/to/mods"} runs both benchmarks on them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VanillaStitcherBenchmark {
+
+    /** Largest atlas side the vanilla stitcher may use */
+    private static final int MAX_ATLAS_SIZE = 1 << 15;
+
+    /** Directory of jars to read the sprite sizes from, empty to generate synthetic sizes */
+    @Param({ "" })
+    public String jars;
+
+    /** Number of synthetic sprites, ignored when reading jars */
+    @Param({ "4096" })
+    public int sprites;
+
+    private TextureAtlasSprite[] atlasSprites;
+
+    @Setup
+    public void setup() {
+        atlasSprites = sprites(SpriteSizes.load(jars, sprites));
+        final Stitcher stitcher = stitch();
+        System.out.printf(
+                "%n%d sprites: vanilla %dx%d%n",
+                atlasSprites.length,
+                stitcher.getCurrentWidth(),
+                stitcher.getCurrentHeight());
+    }
+
+    @Benchmark
+    public Stitcher stitch() {
+        return stitch(atlasSprites);
+    }
+
+    static TextureAtlasSprite[] sprites(SpriteSizes sizes) {
+        final TextureAtlasSprite[] atlasSprites = new TextureAtlasSprite[sizes.widths.length];
+        for (int i = 0; i < atlasSprites.length; i++) {
+            atlasSprites[i] = new TextureAtlasSprite("sprite" + i) {};
+            atlasSprites[i].setIconWidth(sizes.widths[i]);
+            atlasSprites[i].setIconHeight(sizes.heights[i]);
+        }
+        return atlasSprites;
+    }
+
+    static Stitcher stitch(TextureAtlasSprite[] atlasSprites) {
+        final Stitcher stitcher = new Stitcher(MAX_ATLAS_SIZE, MAX_ATLAS_SIZE, true, 0, 0);
+        for (TextureAtlasSprite sprite : atlasSprites) {
+            stitcher.addSprite(sprite);
+        }
+        stitcher.doStitch();
+        return stitcher;
+    }
+}
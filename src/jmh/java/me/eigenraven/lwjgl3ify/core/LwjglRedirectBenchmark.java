@@ -0,0 +1,72 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.util.concurrent.TimeUnit;
+
+import me.eigenraven.lwjgl3ify.benchmark.ClassCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-class cost of {@link LwjglRedirectTransformer} remapping with the {@link ConstantPoolRemapper} against the
+ * {@code ClassRemapper} path it replaced. Only classes that pass the constant pool prefilter and that the constant pool
+ * remapper accepts are measured, everything else takes the same path either way.
+ * <p>
+ * The corpus is generated unless {@code -p jars=<directory>} points to a directory of jars, e.g. a mods folder:
+ * {@code ./gradlew runJmh -PjmhArgs="LwjglRedirectBenchmark -p jars=/path/to/mods"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LwjglRedirectBenchmark {
+
+    /** Directory of jars to read the classes from, empty to generate synthetic classes */
+    @Param({ "" })
+    public String jars;
+
+    /** Number of synthetic classes, ignored when reading jars */
+    @Param({ "4096" })
+    public int classes;
+
+    private LwjglRedirectTransformer transformer;
+    private ClassCorpus corpus;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        transformer = new LwjglRedirectTransformer(false);
+        corpus = ClassCorpus.load(jars, classes)
+                .filter(
+                        entry -> transformer.cstPoolParser.find(entry.bytes)
+                                && transformer.cstPoolRemapper.remap(entry.bytes) != null);
+        System.out.printf("%n%d classes are remapped through the constant pool%n", corpus.entries.length);
+    }
+
+    private ClassCorpus.Entry next() {
+        final ClassCorpus.Entry entry = corpus.entries[cursor];
+        cursor = cursor + 1 == corpus.entries.length ? 0 : cursor + 1;
+        return entry;
+    }
+
+    @Benchmark
+    public byte[] constantPool() {
+        return transformer.cstPoolRemapper.remap(next().bytes);
+    }
+
+    @Benchmark
+    public byte[] classRemapper() {
+        return transformer.remapWithAsm(next().bytes);
+    }
+}
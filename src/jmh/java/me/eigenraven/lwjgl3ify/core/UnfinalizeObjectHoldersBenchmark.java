@@ -0,0 +1,78 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.util.concurrent.TimeUnit;
+
+import me.eigenraven.lwjgl3ify.benchmark.ClassCorpus;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-class cost of {@link UnfinalizeObjectHoldersTransformer} before and after it got the streaming visitor chain:
+ * {@code streaming} is the current path, {@code tree} the {@code EXPAND_FRAMES} ClassNode path with frame recomputation
+ * that every class used to take. Only classes that pass the constant pool prefilter and aren't enums are measured, the
+ * others are treated the same by both.
+ * <p>
+ * The corpus is generated unless {@code -p jars=<directory>} points to a directory of jars, e.g. a mods folder:
+ * {@code ./gradlew runJmh -PjmhArgs="UnfinalizeObjectHoldersBenchmark -p jars=/path/to/mods"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnfinalizeObjectHoldersBenchmark {
+
+    /** Directory of jars to read the classes from, empty to generate synthetic classes */
+    @Param({ "" })
+    public String jars;
+
+    /** Number of synthetic classes, ignored when reading jars */
+    @Param({ "4096" })
+    public int classes;
+
+    private UnfinalizeObjectHoldersTransformer transformer;
+    private ClassCorpus corpus;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        transformer = new UnfinalizeObjectHoldersTransformer();
+        corpus = ClassCorpus.load(jars, classes)
+                .filter(entry -> transformer.cstPoolParser.find(entry.bytes) && !ClassCorpus.isEnum(entry));
+        System.out.printf("%n%d classes pass the prefilter%n", corpus.entries.length);
+    }
+
+    private ClassCorpus.Entry next() {
+        final ClassCorpus.Entry entry = corpus.entries[cursor];
+        cursor = cursor + 1 == corpus.entries.length ? 0 : cursor + 1;
+        return entry;
+    }
+
+    @Benchmark
+    public byte[] streaming() {
+        final ClassCorpus.Entry entry = next();
+        return transformer.transformClass(entry.transformedName, entry.transformedName, entry.bytes);
+    }
+
+    @Benchmark
+    public byte[] tree() {
+        final ClassCorpus.Entry entry = next();
+        return transformer.transformClassTree(
+                new ClassReader(entry.bytes),
+                entry.transformedName,
+                entry.transformedName,
+                entry.bytes);
+    }
+}
@@ -7,6 +7,7 @@ import me.eigenraven.lwjgl3ify.client.GLInfoCrashCallable;
 import me.eigenraven.lwjgl3ify.core.Config;
 
 import net.minecraft.client.Minecraft;
+import net.minecraftforge.client.event.GuiOpenEvent;
 import net.minecraftforge.client.event.RenderGameOverlayEvent;
 import net.minecraftforge.common.MinecraftForge;
 
@@ -27,6 +28,9 @@ public class ClientProxy extends CommonProxy {
         javaVersion = javaVersionRaw;
     }
 
+    /** Set between FML's load complete event and the first screen opened after the resource reload that follows it */
+    private boolean awaitingMainMenu = false;
+
     @Override
     public void runCompatHooks() {
         super.runCompatHooks();
@@ -38,6 +42,11 @@ public class ClientProxy extends CommonProxy {
         MinecraftForge.EVENT_BUS.register(this);
     }
 
+    @Override
+    public void onLoadComplete() {
+        awaitingMainMenu = true;
+    }
+
     @SuppressWarnings("unchecked")
     private void replaceOpenGLCrashHandler() {
         // Use a crash handler that's safe against being called from another thread
@@ -70,4 +79,14 @@ public class ClientProxy extends CommonProxy {
             }
         }
     }
+
+    @SubscribeEvent
+    @SuppressWarnings("unused") // event handler
+    public void onGuiOpen(GuiOpenEvent event) {
+        // Usually the main menu, but not checked by type as some mods replace it
+        if (awaitingMainMenu && event.gui != null) {
+            awaitingMainMenu = false;
+            finishStartup();
+        }
+    }
 }
@@ -3,10 +3,27 @@ package me.eigenraven.lwjgl3ify;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 
+import me.eigenraven.lwjgl3ify.core.StartupTracer;
+import me.eigenraven.lwjgl3ify.textures.DecodedTextureCache;
+
 public class CommonProxy {
 
     public void registerF3Handler() {}
 
+    /**
+     * Called once FML finished loading mods. Clients still reload their resources after this, so they wait for the main
+     * menu before calling {@link #finishStartup()}.
+     */
+    public void onLoadComplete() {
+        finishStartup();
+    }
+
+    /** Reports the statistics and startup trace that cover texture loading */
+    protected void finishStartup() {
+        DecodedTextureCache.logStatistics();
+        StartupTracer.flush();
+    }
+
     @SuppressWarnings("unchecked")
     public void runCompatHooks() {
         // Fix crash with OpenComputers/COFHCore due to a class extending OpenALException
@@ -0,0 +1,159 @@
+package me.eigenraven.lwjgl3ify;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runtime support for the {@code dynamicCreate} methods generated into extensible enums. Keeps a case-insensitive
+ * name index of the constants of each enum, so that adding a constant doesn't need a linear scan of
+ * {@code $VALUES}, and supports batches, where new constants are collected and {@code $VALUES} is grown and the enum
+ * caches are invalidated only once at the end.
+ * <p>
+ * All methods synchronize on the enum class, the same monitor the generated {@code dynamicCreate} methods hold.
+ */
+public class ExtensibleEnums {
+
+    private static final class State {
+
+        final Map<String, Object> byName = new HashMap<>();
+        /** Length of the $VALUES array the index was last synced with */
+        int indexedLength = -1;
+        int batchDepth = 0;
+        /** Constants created during the current batch, not yet in $VALUES */
+        final ArrayList<Object> pending = new ArrayList<>();
+    }
+
+    private static final ClassValue<State> STATES = new ClassValue<State>() {
+
+        @Override
+        protected State computeValue(Class<?> type) {
+            return new State();
+        }
+    };
+
+    private static String key(String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Called by generated code.
+     *
+     * @return The existing constant with the given name (ignoring case), or null
+     */
+    public static Object find(Class<?> enumClass, Object[] values, String name) {
+        synchronized (enumClass) {
+            final State state = STATES.get(enumClass);
+            if (state.indexedLength != values.length) {
+                // First use, or $VALUES was changed by something else
+                state.byName.clear();
+                for (Object value : values) {
+                    state.byName.putIfAbsent(key(((Enum<?>) value).name()), value);
+                }
+                for (Object value : state.pending) {
+                    state.byName.putIfAbsent(key(((Enum<?>) value).name()), value);
+                }
+                state.indexedLength = values.length;
+            }
+            return state.byName.get(key(name));
+        }
+    }
+
+    /**
+     * Called by generated code.
+     *
+     * @return The ordinal for the next new constant
+     */
+    public static int nextOrdinal(Class<?> enumClass, Object[] values) {
+        synchronized (enumClass) {
+            return values.length + STATES.get(enumClass).pending.size();
+        }
+    }
+
+    /**
+     * Called by generated code after constructing a new constant.
+     *
+     * @return The new value for $VALUES, which is the same array if a batch is in progress
+     */
+    public static Object[] add(Class<?> enumClass, Object[] values, Object value) {
+        synchronized (enumClass) {
+            final State state = STATES.get(enumClass);
+            state.byName.putIfAbsent(key(((Enum<?>) value).name()), value);
+            if (state.batchDepth > 0) {
+                state.pending.add(value);
+                return values;
+            }
+            final Object[] newValues = (Object[]) Array.newInstance(enumClass, values.length + 1);
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            newValues[values.length] = value;
+            state.indexedLength = newValues.length;
+            return newValues;
+        }
+    }
+
+    /**
+     * Called by generated code after $VALUES was updated, invalidates the enum caches unless a batch is in progress.
+     */
+    public static void cleanCache(Class<? extends Enum<?>> enumClass) throws Exception {
+        synchronized (enumClass) {
+            if (STATES.get(enumClass).batchDepth == 0) {
+                UnsafeHacks.cleanEnumCache(enumClass);
+            }
+        }
+    }
+
+    /**
+     * Starts collecting new constants of the enum instead of growing $VALUES for each one. Batches can be nested, and
+     * must be ended with {@link #endBatch(Class)} on the same thread, while holding the enum class monitor for the
+     * whole batch.
+     */
+    public static void beginBatch(Class<? extends Enum<?>> enumClass) {
+        synchronized (enumClass) {
+            STATES.get(enumClass).batchDepth++;
+        }
+    }
+
+    /**
+     * Adds all constants created since the outermost {@link #beginBatch(Class)} to $VALUES at once.
+     */
+    public static void endBatch(Class<? extends Enum<?>> enumClass) throws Exception {
+        synchronized (enumClass) {
+            final State state = STATES.get(enumClass);
+            if (state.batchDepth <= 0) {
+                throw new IllegalStateException("No batch in progress for " + enumClass.getName());
+            }
+            if (--state.batchDepth > 0 || state.pending.isEmpty()) {
+                return;
+            }
+            final Field valuesField = findValuesField(enumClass);
+            final Object[] values = UnsafeHacks.getField(valuesField, null);
+            final Object[] newValues = (Object[]) Array.newInstance(enumClass, values.length + state.pending.size());
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            for (int i = 0; i < state.pending.size(); i++) {
+                newValues[values.length + i] = state.pending.get(i);
+            }
+            UnsafeHacks.setField(valuesField, null, newValues);
+            state.pending.clear();
+            state.indexedLength = newValues.length;
+            UnsafeHacks.cleanEnumCache(enumClass);
+        }
+    }
+
+    private static Field findValuesField(Class<?> enumClass) {
+        final Class<?> arrayType = Array.newInstance(enumClass, 0).getClass();
+        // Same criteria as the transformer, a private static synthetic field with the enum array type
+        for (Field field : enumClass.getDeclaredFields()) {
+            final int mods = field.getModifiers();
+            if (field.getType() == arrayType && field.isSynthetic()
+                    && Modifier.isStatic(mods)
+                    && Modifier.isPrivate(mods)) {
+                return field;
+            }
+        }
+        throw new IllegalStateException("Could not find $VALUES in " + enumClass.getName());
+    }
+}
@@ -1,15 +1,25 @@
 package me.eigenraven.lwjgl3ify;
 
 import me.eigenraven.lwjgl3ify.api.ConfigUtils;
+import me.eigenraven.lwjgl3ify.core.ClassHierarchyIndex;
+import me.eigenraven.lwjgl3ify.core.ClassLoaderCacheTrimmer;
 import me.eigenraven.lwjgl3ify.core.Config;
+import me.eigenraven.lwjgl3ify.core.LwjglRedirectTransformer;
+import me.eigenraven.lwjgl3ify.core.ModDiscoveryCache;
+import me.eigenraven.lwjgl3ify.core.TransformedClassCache;
+import me.eigenraven.lwjgl3ify.core.TransformerMetrics;
+import me.eigenraven.lwjgl3ify.core.UnfinalizeObjectHoldersTransformer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import cpw.mods.fml.common.Mod;
 import cpw.mods.fml.common.SidedProxy;
+import cpw.mods.fml.common.asm.transformers.EventSubscriptionTransformer;
+import cpw.mods.fml.common.event.FMLLoadCompleteEvent;
 import cpw.mods.fml.common.event.FMLPostInitializationEvent;
 import cpw.mods.fml.common.event.FMLPreInitializationEvent;
+import cpw.mods.fml.common.patcher.ClassPatchManager;
 
 @Mod(
         modid = "lwjgl3ify",
@@ -50,4 +60,22 @@ public class Lwjgl3ify {
     public void postInit(FMLPostInitializationEvent event) {
         PROXY.registerF3Handler();
     }
+
+    @Mod.EventHandler
+    public void loadComplete(FMLLoadCompleteEvent event) {
+        ModDiscoveryCache.pruneUnused();
+        LwjglRedirectTransformer.logStatistics();
+        UnfinalizeObjectHoldersTransformer.logStatistics();
+        TransformedClassCache.logStatistics();
+        TransformerMetrics.logSummary();
+        try {
+            EventSubscriptionTransformer.logStatistics();
+            ClassPatchManager.INSTANCE.logStatistics();
+        } catch (LinkageError e) {
+            // Running with the stock FML classes, without the lwjgl3ify forge patches
+        }
+        ClassLoaderCacheTrimmer.trim();
+        LOG.debug("Released {} class hierarchy index entries", ClassHierarchyIndex.INSTANCE.release());
+        PROXY.onLoadComplete();
+    }
 }
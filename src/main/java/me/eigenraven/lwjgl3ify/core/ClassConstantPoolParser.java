@@ -0,0 +1,153 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scans the raw constant pool of a class file for UTF8 entries containing any of a given set of strings, without
+ * building any ASM structures. Transformers use this to hand back the original bytes of classes they could not change,
+ * which is the vast majority of classes in a modpack.
+ */
+public class ClassConstantPoolParser {
+
+    static final int UTF8 = 1;
+    static final int INT = 3;
+    static final int FLOAT = 4;
+    static final int LONG = 5;
+    static final int DOUBLE = 6;
+    static final int CLASS = 7;
+    static final int STRING = 8;
+    static final int FIELD = 9;
+    static final int METH = 10;
+    static final int IMETH = 11;
+    static final int NAME_TYPE = 12;
+    static final int HANDLE = 15;
+    static final int METHOD_TYPE = 16;
+    static final int CONSTANT_DYNAMIC = 17;
+    static final int INVOKE_DYNAMIC = 18;
+    static final int MODULE = 19;
+    static final int PACKAGE = 20;
+
+    private final byte[][] needles;
+    private final boolean matchInvokeDynamic;
+    private byte[][] ignoredContexts = new byte[0][];
+
+    /**
+     * @param needles Strings to look for, they will be matched as a substring of any UTF8 constant (class names,
+     *                descriptors, signatures, string literals, ...). Only ASCII strings are supported.
+     */
+    public ClassConstantPoolParser(String... needles) {
+        this(false, needles);
+    }
+
+    /**
+     * @param matchInvokeDynamic Whether the presence of any CONSTANT_InvokeDynamic entry should count as a match.
+     * @param needles            Strings to look for, see {@link #ClassConstantPoolParser(String...)}
+     */
+    public ClassConstantPoolParser(boolean matchInvokeDynamic, String... needles) {
+        this.matchInvokeDynamic = matchInvokeDynamic;
+        this.needles = new byte[needles.length][];
+        for (int i = 0; i < needles.length; i++) {
+            this.needles[i] = needles[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Makes needle matches that directly follow one of the given strings not count, for needles that also appear
+     * inside the names they get redirected to. Only ASCII strings are supported.
+     */
+    public void ignoreAfter(String... contexts) {
+        ignoredContexts = new byte[contexts.length][];
+        for (int i = 0; i < contexts.length; i++) {
+            ignoredContexts[i] = contexts[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * @param basicClass Raw class file bytes
+     * @return true if the class might be relevant (a needle was found or the class could not be parsed), false if it
+     *         can be safely skipped.
+     */
+    public boolean find(byte[] basicClass) {
+        if (basicClass == null || basicClass.length < 10) {
+            return false;
+        }
+        try {
+            final int cpCount = readUnsignedShort(basicClass, 8);
+            int offset = 10;
+            for (int i = 1; i < cpCount; i++) {
+                final int tag = basicClass[offset] & 0xFF;
+                switch (tag) {
+                    case UTF8 -> {
+                        final int strLen = readUnsignedShort(basicClass, offset + 1);
+                        if (matchUtf8(basicClass, offset + 3, strLen)) {
+                            return true;
+                        }
+                        offset += 3 + strLen;
+                    }
+                    case INVOKE_DYNAMIC -> {
+                        if (matchInvokeDynamic) {
+                            return true;
+                        }
+                        offset += 5;
+                    }
+                    case INT, FLOAT, FIELD, METH, IMETH, NAME_TYPE, CONSTANT_DYNAMIC -> offset += 5;
+                    case LONG, DOUBLE -> {
+                        offset += 9;
+                        i++; // 8-byte constants take up two slots
+                    }
+                    case CLASS, STRING, METHOD_TYPE, MODULE, PACKAGE -> offset += 3;
+                    case HANDLE -> offset += 4;
+                    default -> {
+                        // Unknown constant pool entry, let the full transformer handle it
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Truncated class file, let the full transformer deal with it
+            return true;
+        }
+    }
+
+    private boolean matchUtf8(byte[] data, int start, int length) {
+        for (final byte[] needle : needles) {
+            final int last = start + length - needle.length;
+            final byte first = needle[0];
+            outer: for (int pos = start; pos <= last; pos++) {
+                if (data[pos] != first) {
+                    continue;
+                }
+                for (int j = 1; j < needle.length; j++) {
+                    if (data[pos + j] != needle[j]) {
+                        continue outer;
+                    }
+                }
+                if (!followsIgnoredContext(data, start, pos)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean followsIgnoredContext(byte[] data, int start, int pos) {
+        outer: for (final byte[] context : ignoredContexts) {
+            final int from = pos - context.length;
+            if (from < start) {
+                continue;
+            }
+            for (int j = 0; j < context.length; j++) {
+                if (data[from + j] != context[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+}
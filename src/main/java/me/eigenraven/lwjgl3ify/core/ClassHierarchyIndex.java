@@ -0,0 +1,260 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import static me.eigenraven.lwjgl3ify.core.ClassConstantPoolParser.readUnsignedShort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.launchwrapper.Launch;
+import net.minecraft.launchwrapper.LaunchClassLoader;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Answers class hierarchy questions for transformers from the raw class file headers (access flags, superclass and
+ * interfaces), read through {@link LaunchClassLoader#getClassBytes(String)} or the system class loader's resources.
+ * Unlike {@link Class#forName(String)} or {@link ClassLoader#loadClass(String)}, this never defines, transforms or
+ * initializes any class, so it is safe to use from inside a transformer. Results are cached until loading completes,
+ * see {@link #release()}.
+ * <p>
+ * The headers are read from the untransformed class files, looked up by the name they are asked for. Changes that
+ * transformers or binary patches make to a class's superclass or interfaces are not seen, and classes whose file is
+ * stored under a different name than the one in use, like obfuscated vanilla classes looked up by their deobfuscated
+ * name, are not found at all. Callers treat such a class as unknown (null) and fall back to loading it, like
+ * {@link HierarchyClassWriter} does through ASM's {@link ClassWriter#getCommonSuperClass(String, String)}.
+ */
+public class ClassHierarchyIndex {
+
+    public static final ClassHierarchyIndex INSTANCE = new ClassHierarchyIndex();
+
+    /** Guards against malformed hierarchies with cycles */
+    private static final int MAX_HIERARCHY_DEPTH = 256;
+
+    public static final class ClassInfo {
+
+        public final String name;
+        public final int access;
+        /** Internal name of the superclass, null for java/lang/Object and module-info */
+        public final String superName;
+        public final String[] interfaces;
+
+        ClassInfo(String name, int access, String superName, String[] interfaces) {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+
+        public boolean isInterface() {
+            return (access & Opcodes.ACC_INTERFACE) != 0;
+        }
+    }
+
+    private static final ClassInfo MISSING = new ClassInfo(null, 0, null, new String[0]);
+
+    private final ConcurrentHashMap<String, ClassInfo> classes = new ConcurrentHashMap<>();
+
+    /**
+     * @param internalName Internal name of the class, e.g. {@code java/lang/Runnable}
+     * @return The header information, or null if the class file could not be found or parsed
+     */
+    public ClassInfo get(String internalName) {
+        ClassInfo info = classes.get(internalName);
+        if (info == null) {
+            // Not computeIfAbsent, reading the bytes can re-enter the index through other transformers
+            info = readClassInfo(internalName);
+            final ClassInfo raced = classes.putIfAbsent(internalName, info);
+            if (raced != null) {
+                info = raced;
+            }
+        }
+        return info == MISSING ? null : info;
+    }
+
+    /**
+     * Drops all cached headers once loading is complete and most classes are defined, later lookups read the class
+     * files again.
+     *
+     * @return The number of dropped entries
+     */
+    public int release() {
+        final int size = classes.size();
+        classes.clear();
+        return size;
+    }
+
+    /**
+     * @return Whether the class is an interface, or null if unknown
+     */
+    public Boolean isInterface(String internalName) {
+        final ClassInfo info = get(internalName);
+        return info == null ? null : info.isInterface();
+    }
+
+    /**
+     * Walks the superclass chain only, so {@code superName} must be a class.
+     *
+     * @return Whether {@code internalName} is {@code superName} or extends it, or null if part of the superclass chain
+     *         couldn't be read
+     */
+    public Boolean isSubclassOf(String internalName, String superName) {
+        String current = internalName;
+        for (int depth = 0; current != null && depth < MAX_HIERARCHY_DEPTH; depth++) {
+            if (current.equals(superName)) {
+                return true;
+            }
+            final ClassInfo info = get(current);
+            if (info == null) {
+                return null;
+            }
+            current = info.superName;
+        }
+        return current == null ? false : null;
+    }
+
+    /**
+     * Same contract as {@link ClassWriter#getCommonSuperClass(String, String)}, except that interfaces are always
+     * merged to {@code java/lang/Object}, which is what the verifier treats them as anyway.
+     *
+     * @return The closest common superclass, or null if part of either superclass chain couldn't be read
+     */
+    public String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+        final ClassInfo info1 = get(type1);
+        final ClassInfo info2 = get(type2);
+        if (info1 == null || info2 == null) {
+            return null;
+        }
+        if (info1.isInterface() || info2.isInterface()) {
+            return "java/lang/Object";
+        }
+        final Set<String> superclasses = new HashSet<>();
+        String current = type1;
+        for (int depth = 0; current != null && depth < MAX_HIERARCHY_DEPTH; depth++) {
+            superclasses.add(current);
+            final ClassInfo info = get(current);
+            if (info == null) {
+                return null;
+            }
+            current = info.superName;
+        }
+        current = type2;
+        for (int depth = 0; current != null && depth < MAX_HIERARCHY_DEPTH; depth++) {
+            if (superclasses.contains(current)) {
+                return current;
+            }
+            final ClassInfo info = get(current);
+            if (info == null) {
+                return null;
+            }
+            current = info.superName;
+        }
+        return null;
+    }
+
+    /**
+     * A {@link ClassWriter} that computes frames with the index instead of loading the merged classes, falling back to
+     * ASM's class loading only for classes whose hierarchy can't be read.
+     */
+    public static class HierarchyClassWriter extends ClassWriter {
+
+        private final ClassHierarchyIndex index;
+
+        public HierarchyClassWriter(int flags) {
+            this(INSTANCE, flags);
+        }
+
+        HierarchyClassWriter(ClassHierarchyIndex index, int flags) {
+            super(flags);
+            this.index = index;
+        }
+
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            final String common = index.getCommonSuperClass(type1, type2);
+            return common != null ? common : super.getCommonSuperClass(type1, type2);
+        }
+    }
+
+    private ClassInfo readClassInfo(String internalName) {
+        try {
+            final byte[] bytes = readClassBytes(internalName);
+            if (bytes == null) {
+                return MISSING;
+            }
+            final ClassInfo info = parseHeader(bytes);
+            return info != null && internalName.equals(info.name) ? info : MISSING;
+        } catch (IOException | RuntimeException e) {
+            return MISSING;
+        }
+    }
+
+    private static byte[] readClassBytes(String internalName) throws IOException {
+        final LaunchClassLoader loader = Launch.classLoader;
+        if (loader != null && !internalName.startsWith("java/")) {
+            final byte[] bytes = loader.getClassBytes(internalName.replace('/', '.'));
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        try (InputStream stream = ClassLoader.getSystemResourceAsStream(internalName + ".class")) {
+            return stream == null ? null : IOUtils.toByteArray(stream);
+        }
+    }
+
+    /**
+     * @return The class header, or null if the class file is malformed
+     */
+    static ClassInfo parseHeader(byte[] b) {
+        final int cpCount = readUnsignedShort(b, 8);
+        final int[] cpOffsets = new int[cpCount];
+        int offset = 10;
+        for (int i = 1; i < cpCount; i++) {
+            cpOffsets[i] = offset;
+            switch (b[offset] & 0xFF) {
+                case ClassConstantPoolParser.UTF8 -> offset += 3 + readUnsignedShort(b, offset + 1);
+                case ClassConstantPoolParser.INT, ClassConstantPoolParser.FLOAT, ClassConstantPoolParser.FIELD,
+                        ClassConstantPoolParser.METH, ClassConstantPoolParser.IMETH, ClassConstantPoolParser.NAME_TYPE,
+                        ClassConstantPoolParser.CONSTANT_DYNAMIC, ClassConstantPoolParser.INVOKE_DYNAMIC -> offset += 5;
+                case ClassConstantPoolParser.LONG, ClassConstantPoolParser.DOUBLE -> {
+                    offset += 9;
+                    i++; // 8-byte constants take up two slots
+                }
+                case ClassConstantPoolParser.CLASS, ClassConstantPoolParser.STRING,
+                        ClassConstantPoolParser.METHOD_TYPE, ClassConstantPoolParser.MODULE,
+                        ClassConstantPoolParser.PACKAGE -> offset += 3;
+                case ClassConstantPoolParser.HANDLE -> offset += 4;
+                default -> {
+                    return null;
+                }
+            }
+        }
+        final int access = readUnsignedShort(b, offset);
+        final String name = readClassName(b, cpOffsets, readUnsignedShort(b, offset + 2));
+        final String superName = readClassName(b, cpOffsets, readUnsignedShort(b, offset + 4));
+        final String[] interfaces = new String[readUnsignedShort(b, offset + 6)];
+        offset += 8;
+        for (int i = 0; i < interfaces.length; i++, offset += 2) {
+            interfaces[i] = readClassName(b, cpOffsets, readUnsignedShort(b, offset));
+        }
+        return new ClassInfo(name, access, superName, interfaces);
+    }
+
+    private static String readClassName(byte[] b, int[] cpOffsets, int classIndex) {
+        if (classIndex == 0) {
+            return null;
+        }
+        final int utf8 = cpOffsets[readUnsignedShort(b, cpOffsets[classIndex] + 1)];
+        final int length = readUnsignedShort(b, utf8 + 1);
+        // Class names are ASCII in practice, and anything else would just not match any lookups
+        return new String(b, utf8 + 3, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+
+import net.minecraft.launchwrapper.Launch;
+import net.minecraft.launchwrapper.LaunchClassLoader;
+
+import cpw.mods.fml.common.patcher.ClassPatchManager;
+
+/**
+ * Releases what LaunchClassLoader and the binary patcher keep around from the bulk class loading during startup, once
+ * loading completes, enabled with the {@code core.trimClassLoaderCaches} option. The loader caches the raw bytes of
+ * every class and resource it has read and every name it failed to find, for the lifetime of the game, even though
+ * the bytes can be read again from the jars and the misses recomputed. The defined classes themselves stay cached, as
+ * the loader relies on them to never define a class twice.
+ */
+public class ClassLoaderCacheTrimmer {
+
+    /** Rough heap cost of a negative lookup entry besides its characters: the string, its array and the map node */
+    private static final int NEGATIVE_ENTRY_OVERHEAD = 72;
+
+    public static void trim() {
+        if (!Config.TRIM_CLASS_LOADER_CACHES) {
+            return;
+        }
+        final LaunchClassLoader loader = Launch.classLoader;
+        if (loader == null) {
+            return;
+        }
+        long resourceBytes = 0;
+        int resources = 0;
+        long negativeBytes = 0;
+        int negatives = 0;
+        long bufferBytes = 0;
+        try {
+            final Map<String, byte[]> resourceCache = getField(loader, "resourceCache");
+            if (resourceCache != null) {
+                for (byte[] data : resourceCache.values()) {
+                    if (data != null) {
+                        resourceBytes += data.length;
+                    }
+                }
+                resources = resourceCache.size();
+                resourceCache.clear();
+            }
+            final Set<String> negativeResourceCache = getField(loader, "negativeResourceCache");
+            if (negativeResourceCache != null) {
+                for (String name : negativeResourceCache) {
+                    negativeBytes += NEGATIVE_ENTRY_OVERHEAD + name.length();
+                }
+                negatives = negativeResourceCache.size();
+                negativeResourceCache.clear();
+            }
+            // Grown to fit the largest class read on each thread, the client thread did most of the loading
+            final ThreadLocal<byte[]> loadBuffer = getField(loader, "loadBuffer");
+            if (loadBuffer != null) {
+                final byte[] buffer = loadBuffer.get();
+                if (buffer != null) {
+                    bufferBytes = buffer.length;
+                }
+                loadBuffer.remove();
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not trim the LaunchClassLoader caches", e);
+        }
+        long patchedBytes = 0;
+        try {
+            patchedBytes = ClassPatchManager.INSTANCE.releasePatchedClasses();
+        } catch (LinkageError e) {
+            // Running with the stock FML classes, without the lwjgl3ify forge patches
+        }
+        Lwjgl3ifyCoremod.LOGGER.info(
+                "Trimmed class loader caches, reclaimed {} KiB: {} cached resources ({} KiB), {} negative lookups (about {} KiB), {} KiB load buffer, {} KiB unused patched classes",
+                (resourceBytes + negativeBytes + bufferBytes + patchedBytes) / 1024,
+                resources,
+                resourceBytes / 1024,
+                negatives,
+                negativeBytes / 1024,
+                bufferBytes / 1024,
+                patchedBytes / 1024);
+    }
+
+    /**
+     * @return The field value, or null if this LaunchWrapper version doesn't have it
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T getField(LaunchClassLoader loader, String name) throws ReflectiveOperationException {
+        for (Field field : LaunchClassLoader.class.getDeclaredFields()) {
+            if (field.getName().equals(name)) {
+                field.setAccessible(true);
+                return (T) field.get(loader);
+            }
+        }
+        return null;
+    }
+}
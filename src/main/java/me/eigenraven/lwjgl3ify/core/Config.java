@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import me.eigenraven.lwjgl3ify.Tags;
 
@@ -41,13 +42,31 @@ public class Config {
 
     private static final Set<String> EXTENSIBLE_ENUMS = new HashSet<>(Arrays.asList(DEFAULT_EXTENSIBLE_ENUMS));
     private static boolean configLoaded = false;
+    private static int extensibleEnumsFingerprintKey = 0;
+    private static long extensibleEnumsFingerprint = 0;
 
     public static boolean MIXIN_STBI_TEXTURE_LOADING = true;
+    public static int TEXTURE_DECODE_THREADS = -1;
+    public static boolean NATIVE_SPRITE_UPLOAD = true;
+    public static boolean DECODED_TEXTURE_CACHE = true;
+    public static int DECODED_TEXTURE_CACHE_MAX_SIZE_MB = 512;
     public static boolean MIXIN_STBI_TEXTURE_STICHING = true;
+    public static String STITCHER_HEURISTIC = "skylineBottomLeft";
+    public static String STITCHER_SORT_ORDER = "height";
     public static boolean MIXIN_STBI_IGNORE_FASTCRAFT = false;
 
+    public static boolean TRANSFORMER_CACHE = true;
+    public static int TRANSFORMER_CACHE_MAX_SIZE_MB = 512;
+    public static String[] EXTRA_REDIRECTS = new String[0];
+    public static boolean DISCOVERY_CACHE = true;
+    public static boolean MIXIN_REDIRECT_EXTENSION = false;
+    public static boolean TRIM_CLASS_LOADER_CACHES = true;
+
     public static boolean DEBUG_PRINT_KEY_EVENTS = false;
     public static boolean DEBUG_PRINT_MOUSE_EVENTS = false;
+    public static boolean DEBUG_VERIFY_CONSTANT_POOL_REMAPPER = false;
+    public static boolean DEBUG_TRANSFORMER_METRICS = false;
+    public static boolean DEBUG_STARTUP_TRACE = false;
 
     public static boolean SHOW_JAVA_VERSION = true;
     public static boolean SHOW_LWJGL_VERSION = true;
@@ -110,17 +129,86 @@ public class Config {
                 CATEGORY_MIXIN,
                 MIXIN_STBI_TEXTURE_LOADING,
                 "Use the faster stb_image-based texture loader");
+        TEXTURE_DECODE_THREADS = config.getInt(
+                "textureDecodeThreads",
+                CATEGORY_MIXIN,
+                TEXTURE_DECODE_THREADS,
+                -1,
+                64,
+                "Number of threads decoding the sprites of a texture atlas ahead of the atlas loading loop and generating their mip levels when the stb_image-based texture loader is enabled, 0 to do both one by one on the main thread, -1 for one less than the number of processors, up to 8");
+        NATIVE_SPRITE_UPLOAD = config.getBoolean(
+                "nativeSpriteUpload",
+                CATEGORY_MIXIN,
+                NATIVE_SPRITE_UPLOAD,
+                "Upload static sprites into the texture atlas straight from the memory stb_image decoded them into, instead of copying them to the Java heap twice first. Applies when the stb_image-based texture loader is enabled, anisotropic filtering is off and anaglyph 3D is off");
+        DECODED_TEXTURE_CACHE = config.getBoolean(
+                "decodedTextureCache",
+                CATEGORY_MIXIN,
+                DECODED_TEXTURE_CACHE,
+                "Cache the pixels of textures decoded by the stb_image-based texture loader on disk, to skip decoding them on later launches and resource reloads");
+        DECODED_TEXTURE_CACHE_MAX_SIZE_MB = config.getInt(
+                "decodedTextureCacheMaxSizeMB",
+                CATEGORY_MIXIN,
+                DECODED_TEXTURE_CACHE_MAX_SIZE_MB,
+                16,
+                2047,
+                "Maximum size of the decoded texture cache in megabytes, least recently used entries are evicted on launch above this size");
         MIXIN_STBI_TEXTURE_STICHING = config.getBoolean(
                 "stbiTextureStiching",
                 CATEGORY_MIXIN,
                 MIXIN_STBI_TEXTURE_STICHING,
                 "Use the much faster stb_rectpack-based texture stitcher");
+        STITCHER_HEURISTIC = config.getString(
+                "stitcherHeuristic",
+                CATEGORY_MIXIN,
+                STITCHER_HEURISTIC,
+                "Placement heuristic of the stb_rectpack-based texture stitcher, the best fit heuristic can pack tighter but is slower",
+                new String[] { "skylineBottomLeft", "skylineBestFit" });
+        STITCHER_SORT_ORDER = config.getString(
+                "stitcherSortOrder",
+                CATEGORY_MIXIN,
+                STITCHER_SORT_ORDER,
+                "Order the stb_rectpack-based texture stitcher places the sprites in, largest first: by height as stb_rectpack does, by area, by their longer side or by perimeter",
+                new String[] { "height", "area", "maxSide", "perimeter" });
         MIXIN_STBI_IGNORE_FASTCRAFT = config.getBoolean(
                 "stbiIgnoreFastcraft",
                 CATEGORY_MIXIN,
                 MIXIN_STBI_IGNORE_FASTCRAFT,
                 "Force-enable the STB mixins even if FastCraft is present, may lead to a rapidly flashing screen and other visual artifacts");
 
+        TRANSFORMER_CACHE = config.getBoolean(
+                "transformerCache",
+                CATEGORY_CORE,
+                TRANSFORMER_CACHE,
+                "Cache the output of the class transformers on disk to speed up later launches");
+        TRANSFORMER_CACHE_MAX_SIZE_MB = config.getInt(
+                "transformerCacheMaxSizeMB",
+                CATEGORY_CORE,
+                TRANSFORMER_CACHE_MAX_SIZE_MB,
+                16,
+                2047,
+                "Maximum size of the transformer cache in megabytes, least recently used entries are evicted on launch above this size");
+        EXTRA_REDIRECTS = config.getStringList(
+                "extraRedirects",
+                CATEGORY_CORE,
+                EXTRA_REDIRECTS,
+                "Additional package redirects applied to all classes, as from/package/=to/package/ using internal names, e.g. javax/annotation/=jakarta/annotation/. The longest matching prefix wins.");
+        DISCOVERY_CACHE = config.getBoolean(
+                "discoveryCache",
+                CATEGORY_CORE,
+                DISCOVERY_CACHE,
+                "Remember which classes of each mod jar have annotations, so mod discovery only has to parse those on later launches, and parse mod jars in parallel");
+        MIXIN_REDIRECT_EXTENSION = config.getBoolean(
+                "mixinRedirectExtension",
+                CATEGORY_CORE,
+                MIXIN_REDIRECT_EXTENSION,
+                "Apply the package redirects to mixin target classes inside the Mixin transformer, before it writes them out, instead of in a separate pass afterwards");
+        TRIM_CLASS_LOADER_CACHES = config.getBoolean(
+                "trimClassLoaderCaches",
+                CATEGORY_CORE,
+                TRIM_CLASS_LOADER_CACHES,
+                "Once loading completes, release the class and resource bytes and failed lookups LaunchClassLoader caches for the rest of the game, they are read again from the jars if needed");
+
         DEBUG_PRINT_KEY_EVENTS = config.getBoolean(
                 "printKeyEvents",
                 CATEGORY_DEBUG,
@@ -131,6 +219,21 @@ public class Config {
                 CATEGORY_DEBUG,
                 DEBUG_PRINT_MOUSE_EVENTS,
                 "Print mouse-related events to the log");
+        DEBUG_VERIFY_CONSTANT_POOL_REMAPPER = config.getBoolean(
+                "verifyConstantPoolRemapper",
+                CATEGORY_DEBUG,
+                DEBUG_VERIFY_CONSTANT_POOL_REMAPPER,
+                "Also run the slower ASM-based remapper on every class redirected by the constant pool remapper, and log an error if the results differ");
+        DEBUG_TRANSFORMER_METRICS = config.getBoolean(
+                "transformerMetrics",
+                CATEGORY_DEBUG,
+                DEBUG_TRANSFORMER_METRICS,
+                "Measure the time spent in lwjgl3ify's class transformers, exposed over JMX and logged once loading completes");
+        DEBUG_STARTUP_TRACE = config.getBoolean(
+                "startupTrace",
+                CATEGORY_DEBUG,
+                DEBUG_STARTUP_TRACE,
+                "Record a timeline of class transformation, binary patching and texture loading during startup, written to trace.json in the game directory once loading completes, viewable in chrome://tracing or Perfetto");
 
         SHOW_JAVA_VERSION = config
                 .getBoolean("showJavaVersion", CATEGORY_CORE, SHOW_JAVA_VERSION, "Show java version in the debug hud");
@@ -197,6 +300,25 @@ public class Config {
         return EXTENSIBLE_ENUMS;
     }
 
+    /**
+     * @return A hash of the current set of extensible enums, for caching transformer outputs that depend on it
+     */
+    public static synchronized long getExtensibleEnumsFingerprint() {
+        final int key = EXTENSIBLE_ENUMS.hashCode() * 31 + EXTENSIBLE_ENUMS.size();
+        if (key != extensibleEnumsFingerprintKey || extensibleEnumsFingerprint == 0) {
+            long hash = 1125899906842597L;
+            for (String name : new TreeSet<>(EXTENSIBLE_ENUMS)) {
+                for (int i = 0; i < name.length(); i++) {
+                    hash = 31 * hash + name.charAt(i);
+                }
+                hash = 31 * hash + ';';
+            }
+            extensibleEnumsFingerprintKey = key;
+            extensibleEnumsFingerprint = hash;
+        }
+        return extensibleEnumsFingerprint;
+    }
+
     public static void addExtensibleEnum(String className) {
         EXTENSIBLE_ENUMS.add(className);
     }
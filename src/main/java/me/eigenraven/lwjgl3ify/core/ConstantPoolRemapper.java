@@ -0,0 +1,408 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.spongepowered.asm.lib.commons.Remapper;
+
+/**
+ * Applies a type-renaming {@link Remapper} to a class by rewriting the UTF8 entries of its constant pool in place,
+ * copying everything after the constant pool (fields, methods, code, stack map frames and attributes) verbatim. This
+ * avoids parsing and re-emitting every method body like {@link org.spongepowered.asm.lib.commons.ClassRemapper} does.
+ * <p>
+ * Every UTF8 entry is classified by how the class uses it (class name, descriptor, signature or plain string). If an
+ * entry is shared between uses that would be remapped differently, or the class uses a feature not handled here
+ * (modules), the class is rejected and the caller should fall back to the ASM remapper. Only suitable for remappers
+ * that rename packages, member names and inner class simple names are kept as they are.
+ */
+public class ConstantPoolRemapper {
+
+    private static final int ROLE_OTHER = 1;
+    private static final int ROLE_TYPE = 2;
+    private static final int ROLE_DESC = 4;
+    private static final int ROLE_SIGNATURE = 8;
+    private static final int ROLE_TYPE_SIGNATURE = 16;
+
+    private static final int OWNER_CLASS = 0;
+    private static final int OWNER_FIELD = 1;
+    private static final int OWNER_METHOD = 2;
+    private static final int OWNER_CODE = 3;
+    private static final int OWNER_RECORD_COMPONENT = 4;
+
+    private final Remapper remapper;
+    private final String[] rejectedConstants;
+
+    /**
+     * @param remapper          The remapper to apply, must only rename types
+     * @param rejectedConstants UTF8 constants that make a class unsupported, for example marker annotations that need
+     *                          the full remapper's handling
+     */
+    public ConstantPoolRemapper(Remapper remapper, String... rejectedConstants) {
+        this.remapper = remapper;
+        this.rejectedConstants = rejectedConstants;
+    }
+
+    /**
+     * @param basicClass Raw class file bytes
+     * @return The remapped class, the same array if nothing had to be changed, or null if the class can't be handled
+     *         by this remapper
+     */
+    public byte[] remap(byte[] basicClass) {
+        try {
+            return new Pass(basicClass).run();
+        } catch (RuntimeException e) {
+            // Unsupported or malformed class, the ASM remapper will deal with it (or report the error)
+            return null;
+        }
+    }
+
+    private static final class UnsupportedClassException extends RuntimeException {
+
+        UnsupportedClassException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final class Pass {
+
+        final byte[] b;
+        int[] cpOffsets;
+        int[] roles;
+        int cpEnd;
+
+        Pass(byte[] b) {
+            this.b = b;
+        }
+
+        byte[] run() {
+            if (readInt(0) != 0xCAFEBABE) {
+                throw new UnsupportedClassException();
+            }
+            parseConstantPool();
+            parseClassBody();
+
+            String[] replacements = null;
+            for (int i = 1; i < roles.length; i++) {
+                if (roles[i] == 0) {
+                    continue;
+                }
+                final String original = readUtf8(i);
+                for (String rejected : rejectedConstants) {
+                    if (original.equals(rejected)) {
+                        throw new UnsupportedClassException();
+                    }
+                }
+                final String mapped = mapUtf8(original, roles[i]);
+                if (mapped != original && !mapped.equals(original)) {
+                    if (replacements == null) {
+                        replacements = new String[roles.length];
+                    }
+                    replacements[i] = mapped;
+                }
+            }
+            if (replacements == null) {
+                return b;
+            }
+            return write(replacements);
+        }
+
+        private String mapUtf8(String value, int roles) {
+            String result = null;
+            for (int role = ROLE_OTHER; role <= ROLE_TYPE_SIGNATURE; role <<= 1) {
+                if ((roles & role) == 0) {
+                    continue;
+                }
+                final String mapped = switch (role) {
+                    case ROLE_TYPE -> remapper.mapType(value);
+                    case ROLE_DESC -> value.charAt(0) == '(' ? remapper.mapMethodDesc(value) : remapper.mapDesc(value);
+                    case ROLE_SIGNATURE -> remapper.mapSignature(value, false);
+                    case ROLE_TYPE_SIGNATURE -> remapper.mapSignature(value, true);
+                    default -> value;
+                };
+                if (result == null) {
+                    result = mapped;
+                } else if (!result.equals(mapped)) {
+                    // The same constant is used in two ways that remap differently, it would have to be split
+                    throw new UnsupportedClassException();
+                }
+            }
+            return result;
+        }
+
+        private byte[] write(String[] replacements) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(b.length + 256);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                int copied = 0;
+                for (int i = 1; i < replacements.length; i++) {
+                    if (replacements[i] == null) {
+                        continue;
+                    }
+                    final int start = cpOffsets[i];
+                    out.write(b, copied, start - copied);
+                    out.writeByte(ClassConstantPoolParser.UTF8);
+                    // Throws an UTFDataFormatException if the remapped string doesn't fit in a constant anymore
+                    out.writeUTF(replacements[i]);
+                    copied = start + 3 + readUnsignedShort(start + 1);
+                }
+                out.write(b, copied, b.length - copied);
+            } catch (IOException e) {
+                throw new UnsupportedClassException();
+            }
+            return bytes.toByteArray();
+        }
+
+        private void parseConstantPool() {
+            final int cpCount = readUnsignedShort(8);
+            cpOffsets = new int[cpCount];
+            roles = new int[cpCount];
+            int offset = 10;
+            for (int i = 1; i < cpCount; i++) {
+                cpOffsets[i] = offset;
+                offset += switch (b[offset] & 0xFF) {
+                    case ClassConstantPoolParser.UTF8 -> 3 + readUnsignedShort(offset + 1);
+                    case ClassConstantPoolParser.INT, ClassConstantPoolParser.FLOAT, ClassConstantPoolParser.FIELD,
+                            ClassConstantPoolParser.METH, ClassConstantPoolParser.IMETH,
+                            ClassConstantPoolParser.NAME_TYPE, ClassConstantPoolParser.CONSTANT_DYNAMIC,
+                            ClassConstantPoolParser.INVOKE_DYNAMIC -> 5;
+                    case ClassConstantPoolParser.LONG, ClassConstantPoolParser.DOUBLE -> {
+                        i++; // 8-byte constants take up two slots
+                        yield 9;
+                    }
+                    case ClassConstantPoolParser.CLASS, ClassConstantPoolParser.STRING,
+                            ClassConstantPoolParser.METHOD_TYPE -> 3;
+                    case ClassConstantPoolParser.HANDLE -> 4;
+                    // Modules, packages and unknown future constants
+                    default -> throw new UnsupportedClassException();
+                };
+            }
+            cpEnd = offset;
+            for (int i = 1; i < cpCount; i++) {
+                final int entry = cpOffsets[i];
+                if (entry == 0) {
+                    continue;
+                }
+                switch (b[entry] & 0xFF) {
+                    case ClassConstantPoolParser.CLASS -> use(readUnsignedShort(entry + 1), ROLE_TYPE);
+                    case ClassConstantPoolParser.STRING -> use(readUnsignedShort(entry + 1), ROLE_OTHER);
+                    case ClassConstantPoolParser.METHOD_TYPE -> use(readUnsignedShort(entry + 1), ROLE_DESC);
+                    case ClassConstantPoolParser.NAME_TYPE -> {
+                        use(readUnsignedShort(entry + 1), ROLE_OTHER);
+                        use(readUnsignedShort(entry + 3), ROLE_DESC);
+                    }
+                    default -> {}
+                }
+            }
+        }
+
+        private void parseClassBody() {
+            // access, this_class, super_class
+            int offset = cpEnd + 6;
+            offset += 2 + 2 * readUnsignedShort(offset);
+            for (int member = 0; member < 2; member++) {
+                final int count = readUnsignedShort(offset);
+                offset += 2;
+                for (int i = 0; i < count; i++) {
+                    use(readUnsignedShort(offset + 2), ROLE_OTHER);
+                    use(readUnsignedShort(offset + 4), ROLE_DESC);
+                    offset = parseAttributes(offset + 6, member == 0 ? OWNER_FIELD : OWNER_METHOD);
+                }
+            }
+            offset = parseAttributes(offset, OWNER_CLASS);
+            if (offset != b.length) {
+                throw new UnsupportedClassException();
+            }
+        }
+
+        private int parseAttributes(int offset, int owner) {
+            final int count = readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                final int nameIndex = readUnsignedShort(offset);
+                use(nameIndex, ROLE_OTHER);
+                final int start = offset + 6;
+                final int end = start + readInt(offset + 2);
+                parseAttribute(readUtf8(nameIndex), start, owner);
+                offset = end;
+            }
+            return offset;
+        }
+
+        private void parseAttribute(String name, int offset, int owner) {
+            switch (name) {
+                case "Code" -> {
+                    final int codeLength = readInt(offset + 4);
+                    offset += 8 + codeLength;
+                    offset += 2 + 8 * readUnsignedShort(offset);
+                    parseAttributes(offset, OWNER_CODE);
+                }
+                case "Signature" -> use(
+                        readUnsignedShort(offset),
+                        (owner == OWNER_FIELD || owner == OWNER_RECORD_COMPONENT) ? ROLE_TYPE_SIGNATURE
+                                : ROLE_SIGNATURE);
+                case "LocalVariableTable", "LocalVariableTypeTable" -> {
+                    final int role = name.equals("LocalVariableTable") ? ROLE_DESC : ROLE_TYPE_SIGNATURE;
+                    final int count = readUnsignedShort(offset);
+                    offset += 2;
+                    for (int i = 0; i < count; i++, offset += 10) {
+                        use(readUnsignedShort(offset + 4), ROLE_OTHER);
+                        use(readUnsignedShort(offset + 6), role);
+                    }
+                }
+                case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> parseAnnotations(offset);
+                case "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" -> {
+                    final int parameters = b[offset] & 0xFF;
+                    offset++;
+                    for (int i = 0; i < parameters; i++) {
+                        offset = parseAnnotations(offset);
+                    }
+                }
+                case "RuntimeVisibleTypeAnnotations", "RuntimeInvisibleTypeAnnotations" -> {
+                    final int count = readUnsignedShort(offset);
+                    offset += 2;
+                    for (int i = 0; i < count; i++) {
+                        offset = parseTypeAnnotationTarget(offset);
+                        offset = parseAnnotation(offset);
+                    }
+                }
+                case "AnnotationDefault" -> parseElementValue(offset);
+                case "Record" -> {
+                    final int count = readUnsignedShort(offset);
+                    offset += 2;
+                    for (int i = 0; i < count; i++) {
+                        use(readUnsignedShort(offset), ROLE_OTHER);
+                        use(readUnsignedShort(offset + 2), ROLE_DESC);
+                        offset = parseAttributes(offset + 4, OWNER_RECORD_COMPONENT);
+                    }
+                }
+                case "Module", "ModulePackages", "ModuleMainClass" -> throw new UnsupportedClassException();
+                case "InnerClasses" -> {
+                    final int count = readUnsignedShort(offset);
+                    offset += 2;
+                    for (int i = 0; i < count; i++, offset += 8) {
+                        use(readUnsignedShort(offset + 4), ROLE_OTHER);
+                    }
+                }
+                case "SourceFile" -> use(readUnsignedShort(offset), ROLE_OTHER);
+                case "MethodParameters" -> {
+                    final int count = b[offset] & 0xFF;
+                    offset++;
+                    for (int i = 0; i < count; i++, offset += 4) {
+                        use(readUnsignedShort(offset), ROLE_OTHER);
+                    }
+                }
+                // Everything else only references Class/NameAndType/other non-UTF8 constants, or isn't remapped
+                default -> {}
+            }
+        }
+
+        private int parseAnnotations(int offset) {
+            final int count = readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                offset = parseAnnotation(offset);
+            }
+            return offset;
+        }
+
+        private int parseAnnotation(int offset) {
+            use(readUnsignedShort(offset), ROLE_DESC);
+            final int pairs = readUnsignedShort(offset + 2);
+            offset += 4;
+            for (int i = 0; i < pairs; i++) {
+                use(readUnsignedShort(offset), ROLE_OTHER);
+                offset = parseElementValue(offset + 2);
+            }
+            return offset;
+        }
+
+        private int parseElementValue(int offset) {
+            final int tag = b[offset] & 0xFF;
+            offset++;
+            switch (tag) {
+                case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z' -> offset += 2;
+                case 's' -> {
+                    use(readUnsignedShort(offset), ROLE_OTHER);
+                    offset += 2;
+                }
+                case 'e' -> {
+                    use(readUnsignedShort(offset), ROLE_DESC);
+                    use(readUnsignedShort(offset + 2), ROLE_OTHER);
+                    offset += 4;
+                }
+                case 'c' -> {
+                    use(readUnsignedShort(offset), ROLE_DESC);
+                    offset += 2;
+                }
+                case '@' -> offset = parseAnnotation(offset);
+                case '[' -> {
+                    final int count = readUnsignedShort(offset);
+                    offset += 2;
+                    for (int i = 0; i < count; i++) {
+                        offset = parseElementValue(offset);
+                    }
+                }
+                default -> throw new UnsupportedClassException();
+            }
+            return offset;
+        }
+
+        private int parseTypeAnnotationTarget(int offset) {
+            final int targetType = b[offset] & 0xFF;
+            offset++;
+            switch (targetType) {
+                case 0x00, 0x01, 0x16 -> offset += 1;
+                case 0x10, 0x17, 0x42, 0x43, 0x44, 0x45, 0x46 -> offset += 2;
+                case 0x11, 0x12 -> offset += 2;
+                case 0x13, 0x14, 0x15 -> {}
+                case 0x40, 0x41 -> offset += 2 + 6 * readUnsignedShort(offset);
+                case 0x47, 0x48, 0x49, 0x4A, 0x4B -> offset += 3;
+                default -> throw new UnsupportedClassException();
+            }
+            // type_path
+            return offset + 1 + 2 * (b[offset] & 0xFF);
+        }
+
+        private void use(int utf8Index, int role) {
+            if (utf8Index == 0) {
+                return;
+            }
+            if ((b[cpOffsets[utf8Index]] & 0xFF) != ClassConstantPoolParser.UTF8) {
+                throw new UnsupportedClassException();
+            }
+            roles[utf8Index] |= role;
+        }
+
+        private String readUtf8(int utf8Index) {
+            final int entry = cpOffsets[utf8Index];
+            if ((b[entry] & 0xFF) != ClassConstantPoolParser.UTF8) {
+                throw new UnsupportedClassException();
+            }
+            int offset = entry + 3;
+            final int end = offset + readUnsignedShort(entry + 1);
+            final char[] chars = new char[end - offset];
+            int length = 0;
+            while (offset < end) {
+                final int c = b[offset++] & 0xFF;
+                if ((c & 0x80) == 0) {
+                    chars[length++] = (char) c;
+                } else if ((c & 0xE0) == 0xC0) {
+                    chars[length++] = (char) (((c & 0x1F) << 6) | (b[offset++] & 0x3F));
+                } else {
+                    chars[length++] = (char) (((c & 0xF) << 12) | ((b[offset++] & 0x3F) << 6)
+                            | (b[offset++] & 0x3F));
+                }
+            }
+            return new String(chars, 0, length);
+        }
+
+        private int readUnsignedShort(int offset) {
+            return ClassConstantPoolParser.readUnsignedShort(b, offset);
+        }
+
+        private int readInt(int offset) {
+            return (readUnsignedShort(offset) << 16) | readUnsignedShort(offset + 2);
+        }
+    }
+}
@@ -24,22 +24,25 @@ public class ExtensibleEnumTransformerHelper {
 
     private final Logger LOGGER = Lwjgl3ifyCoremod.LOGGER;
     private final Type STRING = Type.getType(String.class);
-    private final Type ENUM = Type.getType(Enum.class);
     public final Type MARKER_IFACE = Type.getType(IExtensibleEnum.class);
     public final Type MARKER_ANNOTATION = Type.getType(MakeEnumExtensible.class);
-    private final Type ARRAY_UTILS = Type.getType("Lorg/apache/commons/lang3/ArrayUtils;"); // Don't directly reference
-                                                                                            // this to prevent class
-                                                                                            // loading.
+    private final Type EXTENSIBLE_ENUMS = Type.getType("Lme/eigenraven/lwjgl3ify/ExtensibleEnums;"); // Don't directly
+                                                                                                   // reference this to
+                                                                                                   // prevent class
+                                                                                                   // loading.
+    private final String FIND_DESC = Type.getMethodDescriptor(
+            Type.getType(Object.class),
+            Type.getType(Class.class),
+            Type.getType(Object[].class),
+            STRING);
+    private final String NEXT_ORDINAL_DESC = Type
+            .getMethodDescriptor(Type.INT_TYPE, Type.getType(Class.class), Type.getType(Object[].class));
     private final String ADD_DESC = Type.getMethodDescriptor(
             Type.getType(Object[].class),
+            Type.getType(Class.class),
             Type.getType(Object[].class),
             Type.getType(Object.class));
-    private final Type UNSAFE_HACKS = Type.getType("Lme/eigenraven/lwjgl3ify/UnsafeHacks;"); // Again, not direct
-                                                                                             // reference to prevent
-                                                                                             // class loading.
     private final String CLEAN_DESC = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Class.class));
-    private final String NAME_DESC = Type.getMethodDescriptor(STRING);
-    private final String EQUALS_DESC = Type.getMethodDescriptor(Type.BOOLEAN_TYPE, STRING);
     public static final String CREATE_METHOD_NAME = "dynamicCreate";
 
     /**
@@ -185,47 +188,31 @@ public class ExtensibleEnumTransformerHelper {
             for (Type arg : args) vars += arg.getSize();
 
             {
-                vars += 1; // int x
-                Label for_start = new Label();
-                Label for_condition = new Label();
-                Label for_inc = new Label();
-
-                ins.iconst(0);
-                ins.store(vars, Type.INT_TYPE);
-                ins.goTo(for_condition);
-                // if (!VALUES[x].name().equalsIgnoreCase(name)) goto for_inc
-                ins.mark(for_start);
+                Label create = new Label();
+                // Object existing = ExtensibleEnums.find(ThisType.class, VALUES, name)
+                ins.visitLdcInsn(classType);
                 ins.getstatic(classType.getInternalName(), values.name, values.desc);
-                ins.load(vars, Type.INT_TYPE);
-                ins.aload(array);
-                ins.invokevirtual(ENUM.getInternalName(), "name", NAME_DESC, false);
                 ins.load(0, STRING);
-                ins.invokevirtual(STRING.getInternalName(), "equalsIgnoreCase", EQUALS_DESC, false);
-                ins.ifeq(for_inc);
-                // return VALUES[x];
-                ins.getstatic(classType.getInternalName(), values.name, values.desc);
-                ins.load(vars, Type.INT_TYPE);
-                ins.aload(array);
+                ins.invokestatic(EXTENSIBLE_ENUMS.getInternalName(), "find", FIND_DESC, false);
+                // if (existing == null) goto create
+                ins.dup();
+                ins.ifnull(create);
+                // return (ThisType) existing
+                ins.checkcast(classType);
                 ins.areturn(classType);
-                // x++
-                ins.mark(for_inc);
-                ins.iinc(vars, 1);
-                // if (x < VALUES.length) goto for_start
-                ins.mark(for_condition);
-                ins.load(vars, Type.INT_TYPE);
-                ins.getstatic(classType.getInternalName(), values.name, values.desc);
-                ins.arraylength();
-                ins.ificmplt(for_start);
+                ins.mark(create);
+                ins.pop();
             }
 
             {
-                vars += 1; // enum ret;
-                // ret = new ThisType(name, VALUES.length, args..)
+                // enum ret;
+                // ret = new ThisType(name, ExtensibleEnums.nextOrdinal(ThisType.class, VALUES), args..)
                 ins.anew(classType);
                 ins.dup();
                 ins.load(0, STRING);
+                ins.visitLdcInsn(classType);
                 ins.getstatic(classType.getInternalName(), values.name, values.desc);
-                ins.arraylength();
+                ins.invokestatic(EXTENSIBLE_ENUMS.getInternalName(), "nextOrdinal", NEXT_ORDINAL_DESC, false);
                 int idx = 1;
                 for (int x = 1; x < args.length; x++) {
                     ins.load(idx, args[x]);
@@ -233,15 +220,16 @@ public class ExtensibleEnumTransformerHelper {
                 }
                 ins.invokespecial(classType.getInternalName(), "<init>", desc, false);
                 ins.store(vars, classType);
-                // VALUES = ArrayUtils.add(VALUES, ret)
+                // VALUES = ExtensibleEnums.add(ThisType.class, VALUES, ret)
+                ins.visitLdcInsn(classType);
                 ins.getstatic(classType.getInternalName(), values.name, values.desc);
                 ins.load(vars, classType);
-                ins.invokestatic(ARRAY_UTILS.getInternalName(), "add", ADD_DESC, false);
+                ins.invokestatic(EXTENSIBLE_ENUMS.getInternalName(), "add", ADD_DESC, false);
                 ins.checkcast(array);
                 ins.putstatic(classType.getInternalName(), values.name, values.desc);
-                // EnumHelper.cleanEnumCache(ThisType.class)
+                // ExtensibleEnums.cleanCache(ThisType.class)
                 ins.visitLdcInsn(classType);
-                ins.invokestatic(UNSAFE_HACKS.getInternalName(), "cleanEnumCache", CLEAN_DESC, false);
+                ins.invokestatic(EXTENSIBLE_ENUMS.getInternalName(), "cleanCache", CLEAN_DESC, false);
                 // init ret
                 ins.load(vars, classType);
                 ins.invokeinterface(MARKER_IFACE.getInternalName(), "init", "()V");
@@ -4,7 +4,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import me.eigenraven.lwjgl3ify.Lwjgl3ify;
 
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -22,8 +24,17 @@ import org.objectweb.asm.tree.MethodNode;
  */
 public class FixConstantPoolInterfaceMethodRefHelper {
 
+    private final boolean needed = !System.getProperty("java.specification.version", "1.8").trim().startsWith("1.8");
+
+    /**
+     * @return If the running JVM is strict enough to reject the miscompiled classes, so that the fix has to be applied
+     */
+    public boolean isNeeded() {
+        return needed;
+    }
+
     public boolean transform(ClassNode node) {
-        if (System.getProperty("java.specification.version", "1.8").trim().startsWith("1.8")) {
+        if (!needed) {
             return false;
         }
         final boolean iAmAnInterface = ((node.access & Opcodes.ACC_INTERFACE) != 0);
@@ -41,6 +52,61 @@ public class FixConstantPoolInterfaceMethodRefHelper {
         return changesMade;
     }
 
+    /**
+     * Streaming variant of {@link #transform(ClassNode)}, fixes the handles while the class passes through the visitor
+     * chain without building a tree.
+     */
+    public HandleFixingClassVisitor createClassVisitor(ClassVisitor cv) {
+        return new HandleFixingClassVisitor(cv);
+    }
+
+    public final class HandleFixingClassVisitor extends ClassVisitor {
+
+        private final AtomicBoolean changed = new AtomicBoolean(false);
+        private String internalClassName;
+        private boolean iAmAnInterface;
+
+        HandleFixingClassVisitor(ClassVisitor cv) {
+            super(Opcodes.ASM9, cv);
+        }
+
+        public boolean isChanged() {
+            return changed.get();
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                String[] interfaces) {
+            this.internalClassName = name;
+            this.iAmAnInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                String[] exceptions) {
+            final MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (mv == null || !needed) {
+                return mv;
+            }
+            return new MethodVisitor(api, mv) {
+
+                @Override
+                public void visitInvokeDynamicInsn(String name, String descriptor, Handle bsm, Object... bsmArgs) {
+                    bsm = fixHandle(internalClassName, iAmAnInterface, bsm, changed);
+                    if (bsmArgs != null) {
+                        for (int i = 0; i < bsmArgs.length; i++) {
+                            if (bsmArgs[i] instanceof Handle handle) {
+                                bsmArgs[i] = fixHandle(internalClassName, iAmAnInterface, handle, changed);
+                            }
+                        }
+                    }
+                    super.visitInvokeDynamicInsn(name, descriptor, bsm, bsmArgs);
+                }
+            };
+        }
+    }
+
     private boolean validateInstruction(String internalClassName, boolean iAmAnInterface, AbstractInsnNode rawInsn) {
         AtomicBoolean changed = new AtomicBoolean(false);
         switch (rawInsn.getType()) {
@@ -67,15 +133,12 @@ public class FixConstantPoolInterfaceMethodRefHelper {
             final boolean fixSelfReference = handle.getOwner().equals(internalClassName) && iAmAnInterface;
             boolean fixJavaReference = false;
             if (!fixSelfReference && handle.getOwner().startsWith("java/")) {
-                final String regularName = handle.getOwner().replace('/', '.');
-                try {
-                    final Class<?> javaClass = Class.forName(regularName);
-                    if (javaClass.isInterface()) {
-                        fixJavaReference = true;
-                    }
-                } catch (ClassNotFoundException cnfe) {
-                    // no-op
-                    Lwjgl3ify.LOG.warn("Reference to non-existing java class {} found.", regularName, cnfe);
+                // Read the class header instead of loading the class, which would also initialize it
+                final Boolean isInterface = ClassHierarchyIndex.INSTANCE.isInterface(handle.getOwner());
+                if (isInterface == null) {
+                    Lwjgl3ify.LOG.warn("Reference to non-existing java class {} found.", handle.getOwner());
+                } else {
+                    fixJavaReference = isInterface;
                 }
             }
             if (fixSelfReference || fixJavaReference) {
@@ -32,6 +32,9 @@ public class Lwjgl3ifyCoremod implements IFMLLoadingPlugin, IEarlyMixinLoader {
 
     public Lwjgl3ifyCoremod() {
         Config.loadConfig();
+        TransformedClassCache.init();
+        TransformerMetrics.init();
+        StartupTracer.init();
         try {
             LaunchClassLoader launchLoader = (LaunchClassLoader) getClass().getClassLoader();
             // Packages that used to be in rt.jar
@@ -78,6 +81,10 @@ public class Lwjgl3ifyCoremod implements IFMLLoadingPlugin, IEarlyMixinLoader {
             tweakClasses.add(PostMixinTransformInjector.class.getName());
         }
 
+        final long start = System.nanoTime();
+        PrebakedJars.init();
+        StartupTracer.span("Lwjgl3ifyCoremod", "PrebakedJars.init", start);
+
         return new String[] { LwjglRedirectTransformer.class.getName(),
                 UnfinalizeObjectHoldersTransformer.class.getName() };
     }
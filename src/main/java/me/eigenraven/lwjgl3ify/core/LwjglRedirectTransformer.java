@@ -1,5 +1,10 @@
 package me.eigenraven.lwjgl3ify.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
 import me.eigenraven.lwjgl3ify.api.Lwjgl3Aware;
 
 import net.minecraft.launchwrapper.IClassTransformer;
@@ -14,13 +19,58 @@ import org.spongepowered.asm.lib.commons.Remapper;
 
 public class LwjglRedirectTransformer extends Remapper implements IClassTransformer {
 
-    int remaps = 0, calls = 0;
+    static final String CACHE_ID = "redirect";
+    /** Bump whenever the output of this transformer changes, to invalidate cached classes */
+    static final int CACHE_VERSION = 2;
 
     public static LwjglRedirectTransformer activeInstance = null;
 
+    static final TransformerMetrics metrics = TransformerMetrics.get("LwjglRedirectTransformer");
+
+    static final LongAdder classesSkipped = new LongAdder();
+    static final LongAdder classesRewritten = new LongAdder();
+    static final LongAdder classesUnchanged = new LongAdder();
+    static final LongAdder classesAsmFallback = new LongAdder();
+
     public LwjglRedirectTransformer() {
-        // Only use the last constructed transformer
-        activeInstance = this;
+        this(true);
+    }
+
+    /**
+     * @param activate Whether this instance should become the active transformer, false for private instances only
+     *                 used for their remapper
+     */
+    LwjglRedirectTransformer(boolean activate) {
+        if (activate) {
+            // Only use the last constructed transformer
+            activeInstance = this;
+        }
+        for (int pfx = 0; pfx < fromPrefixes.length; pfx++) {
+            redirects.add(fromPrefixes[pfx], toPrefixes[pfx]);
+        }
+        for (String extra : Config.EXTRA_REDIRECTS) {
+            final int separator = extra.indexOf('=');
+            final String from = separator < 0 ? "" : extra.substring(0, separator).trim();
+            final String to = separator < 0 ? "" : extra.substring(separator + 1).trim();
+            if (from.isEmpty() || to.isEmpty()) {
+                Lwjgl3ifyCoremod.LOGGER
+                        .warn("Ignoring malformed redirect '{}', expected from/package/=to/package/", extra);
+                continue;
+            }
+            redirects.add(from, to);
+        }
+        redirectsFingerprint = redirects.getFingerprint();
+        cstPoolParser = new ClassConstantPoolParser(redirects.getFromPrefixes());
+        // Relocated targets like me/eigenraven/lwjgl3ify/paulscode/sound/libraries/ contain the package they were
+        // moved from, references to them (e.g. from prebaked classes) don't need the remapper
+        final List<String> relocationContexts = new ArrayList<>();
+        for (int pfx = 0; pfx < fromPrefixes.length; pfx++) {
+            if (toPrefixes[pfx].length() > fromPrefixes[pfx].length() && toPrefixes[pfx].endsWith(fromPrefixes[pfx])) {
+                relocationContexts
+                        .add(toPrefixes[pfx].substring(0, toPrefixes[pfx].length() - fromPrefixes[pfx].length()));
+            }
+        }
+        cstPoolParser.ignoreAfter(relocationContexts.toArray(new String[0]));
     }
 
     @Override
@@ -28,48 +78,150 @@ public class LwjglRedirectTransformer extends Remapper implements IClassTransfor
         if (this != activeInstance) {
             return basicClass;
         }
+        if (!TransformerMetrics.enabled && !StartupTracer.enabled) {
+            return remapClass(name, transformedName, basicClass);
+        }
+        final long start = System.nanoTime();
+        final byte[] result = remapClass(name, transformedName, basicClass);
+        if (TransformerMetrics.enabled) {
+            metrics.record(start, transformedName, basicClass, result);
+        }
+        StartupTracer.span("LwjglRedirectTransformer", transformedName, start);
+        return result;
+    }
+
+    byte[] remapClass(String name, String transformedName, byte[] basicClass) {
         if (basicClass == null) {
             return null;
         }
         if (name.contains("lwjgl3ify")) {
             return basicClass;
         }
-        ClassReader reader = new ClassReader(basicClass);
-        ClassWriter writer = new ClassWriter(0);
-        ClassVisitor visitor = new EscapingClassRemapper(writer);
+        if (!cstPoolParser.find(basicClass)) {
+            classesSkipped.increment();
+            return basicClass;
+        }
+        final TransformedClassCache cache = TransformedClassCache.INSTANCE;
+        TransformedClassCache.Key cacheKey = null;
+        if (cache != null) {
+            cacheKey = cache.key(CACHE_ID, CACHE_VERSION, redirectsFingerprint, name, transformedName, basicClass);
+            final byte[] cached = cache.get(cacheKey, basicClass);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Fast path: only the constant pool needs to change, everything else can be copied as-is
+        final byte[] fastResult = cstPoolRemapper.remap(basicClass);
+        if (fastResult != null) {
+            if (Config.DEBUG_VERIFY_CONSTANT_POOL_REMAPPER) {
+                verifyConstantPoolRemap(transformedName, basicClass, fastResult);
+            }
+            if (fastResult == basicClass) {
+                classesUnchanged.increment();
+            } else {
+                classesRewritten.increment();
+            }
+            if (cacheKey != null) {
+                cache.put(cacheKey, basicClass, fastResult);
+            }
+            return fastResult;
+        }
+        classesAsmFallback.increment();
 
+        final byte[] result;
         try {
-            reader.accept(visitor, ClassReader.EXPAND_FRAMES);
+            result = remapWithAsm(basicClass);
         } catch (Lwjgl3AwareException e) {
+            classesUnchanged.increment();
+            if (cacheKey != null) {
+                cache.put(cacheKey, basicClass, basicClass);
+            }
             return basicClass;
         } catch (Exception e) {
             Lwjgl3ifyCoremod.LOGGER.warn("Couldn't remap class {}", transformedName, e);
+            classesUnchanged.increment();
             return basicClass;
         }
 
+        classesRewritten.increment();
+        if (cacheKey != null) {
+            cache.put(cacheKey, basicClass, result);
+        }
+        return result;
+    }
+
+    byte[] remapWithAsm(byte[] basicClass) {
+        ClassReader reader = new ClassReader(basicClass);
+        ClassWriter writer = new ClassWriter(0);
+        ClassVisitor visitor = new EscapingClassRemapper(writer);
+        reader.accept(visitor, ClassReader.EXPAND_FRAMES);
         return writer.toByteArray();
     }
 
+    /**
+     * Debug check comparing the constant pool remapper against the ASM remapper. Both outputs are normalized by a
+     * plain ASM read/write, which makes the constant pool order and frame encoding deterministic.
+     */
+    private void verifyConstantPoolRemap(String transformedName, byte[] basicClass, byte[] fastResult) {
+        try {
+            final byte[] asmResult = remapWithAsm(basicClass);
+            if (!Arrays.equals(normalizeClass(asmResult), normalizeClass(fastResult))) {
+                Lwjgl3ifyCoremod.LOGGER.error(
+                        "Constant pool remapper output for {} differs from the ASM remapper output",
+                        transformedName);
+            }
+        } catch (Exception e) {
+            Lwjgl3ifyCoremod.LOGGER
+                    .error("Couldn't verify the constant pool remapper output for {}", transformedName, e);
+        }
+    }
+
+    private static byte[] normalizeClass(byte[] classBytes) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classBytes).accept(writer, ClassReader.EXPAND_FRAMES);
+        return writer.toByteArray();
+    }
+
+    public static void logStatistics() {
+        final LwjglRedirectTransformer instance = activeInstance;
+        if (instance != null) {
+            Lwjgl3ifyCoremod.LOGGER.info(
+                    "LwjglRedirectTransformer: {} redirects, {} of {} type name lookups remapped",
+                    instance.redirects.size(),
+                    instance.redirects.remaps.sum(),
+                    instance.redirects.lookups.sum());
+        }
+        Lwjgl3ifyCoremod.LOGGER.info(
+                "LwjglRedirectTransformer: {} classes skipped by the constant pool prefilter, {} rewritten, {} left unchanged, {} needed the ASM remapper",
+                classesSkipped.sum(),
+                classesRewritten.sum(),
+                classesUnchanged.sum(),
+                classesAsmFallback.sum());
+        if (Config.MIXIN_REDIRECT_EXTENSION) {
+            Lwjgl3ifyCoremod.LOGGER.info(
+                    "LwjglRedirectTransformer: {} mixin target classes remapped by the Mixin extension",
+                    MixinRedirectExtension.classesRemapped.sum());
+        }
+    }
+
     final String[] fromPrefixes = new String[] { "org/lwjgl/", "paulscode/sound/libraries/", "javax/xml/bind/",
             "javax/servlet/" };
 
     final String[] toPrefixes = new String[] { "org/lwjglx/", "me/eigenraven/lwjgl3ify/paulscode/sound/libraries/",
             "jakarta/xml/bind/", "jakarta/servlet/" };
 
+    final PackageRedirectTable redirects = new PackageRedirectTable(65536);
+    final long redirectsFingerprint;
+    final ClassConstantPoolParser cstPoolParser;
+    // Lwjgl3Aware classes must not be remapped, let the ASM path detect the annotation
+    final ConstantPoolRemapper cstPoolRemapper = new ConstantPoolRemapper(this, Type.getDescriptor(Lwjgl3Aware.class));
+
     @Override
     public String map(String typeName) {
         if (typeName == null) {
             return null;
         }
-        calls++;
-        for (int pfx = 0; pfx < fromPrefixes.length; pfx++) {
-            if (typeName.startsWith(fromPrefixes[pfx])) {
-                remaps++;
-                return toPrefixes[pfx] + typeName.substring(fromPrefixes[pfx].length());
-            }
-        }
-
-        return typeName;
+        return redirects.map(typeName);
     }
 
     public static class Lwjgl3AwareException extends RuntimeException {
@@ -77,7 +229,7 @@ public class LwjglRedirectTransformer extends Remapper implements IClassTransfor
 
     public class EscapingClassRemapper extends ClassRemapper {
 
-        public EscapingClassRemapper(ClassWriter writer) {
+        public EscapingClassRemapper(ClassVisitor writer) {
             super(writer, LwjglRedirectTransformer.this);
         }
 
@@ -0,0 +1,121 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.eigenraven.lwjgl3ify.api.Lwjgl3Aware;
+
+import org.spongepowered.asm.lib.Type;
+import org.spongepowered.asm.lib.tree.AnnotationNode;
+import org.spongepowered.asm.lib.tree.ClassNode;
+import org.spongepowered.asm.mixin.MixinEnvironment;
+import org.spongepowered.asm.mixin.transformer.ext.IExtension;
+import org.spongepowered.asm.mixin.transformer.ext.ITargetClassContext;
+
+/**
+ * Applies the package redirects to mixin target classes while Mixin still has them as a tree, right after all mixins
+ * were applied, instead of reading the bytes Mixin wrote back in {@link LwjglRedirectTransformer}. The redirected
+ * class then no longer references any of the redirected packages, so the prefilter of the separate transformer pass
+ * lets it through unchanged. All other classes still go through the separate pass.
+ */
+public class MixinRedirectExtension implements IExtension {
+
+    private static final String LWJGL3_AWARE_DESC = Type.getDescriptor(Lwjgl3Aware.class);
+
+    static final LongAdder classesRemapped = new LongAdder();
+
+    private final LwjglRedirectTransformer transformer;
+
+    private MixinRedirectExtension(LwjglRedirectTransformer transformer) {
+        this.transformer = transformer;
+    }
+
+    /**
+     * Registers the extension with the active Mixin transformer if enabled in the config. Must be called after the
+     * Mixin transformer was created.
+     */
+    public static void register() {
+        if (!Config.MIXIN_REDIRECT_EXTENSION) {
+            return;
+        }
+        try {
+            final Object mixinTransformer = MixinEnvironment.getCurrentEnvironment().getActiveTransformer();
+            if (mixinTransformer == null) {
+                Lwjgl3ifyCoremod.LOGGER.warn("No active Mixin transformer, redirecting mixin targets separately");
+                return;
+            }
+            // Not part of the public Mixin API, so look it up reflectively
+            final Object extensions = mixinTransformer.getClass().getMethod("getExtensions").invoke(mixinTransformer);
+            extensions.getClass().getMethod("add", IExtension.class)
+                    .invoke(extensions, new MixinRedirectExtension(new LwjglRedirectTransformer(false)));
+            Lwjgl3ifyCoremod.LOGGER.info("Redirecting mixin target classes in a Mixin extension");
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            Lwjgl3ifyCoremod.LOGGER
+                    .warn("Could not register the Mixin redirect extension, redirecting mixin targets separately", e);
+        }
+    }
+
+    @Override
+    public boolean checkActive(MixinEnvironment environment) {
+        return true;
+    }
+
+    @Override
+    public void preApply(ITargetClassContext context) {}
+
+    @Override
+    public void postApply(ITargetClassContext context) {
+        final ClassNode classNode = context.getClassNode();
+        if (classNode.name.contains("lwjgl3ify") || isLwjgl3Aware(classNode.visibleAnnotations)
+                || isLwjgl3Aware(classNode.invisibleAnnotations)) {
+            return;
+        }
+        final ClassNode remapped = new ClassNode();
+        try {
+            classNode.accept(transformer.new EscapingClassRemapper(remapped));
+        } catch (LwjglRedirectTransformer.Lwjgl3AwareException e) {
+            return;
+        }
+        copyClass(remapped, classNode);
+        classesRemapped.increment();
+    }
+
+    @Override
+    public void export(MixinEnvironment env, String name, boolean force, byte[] bytes) {}
+
+    private static boolean isLwjgl3Aware(List<AnnotationNode> annotations) {
+        if (annotations != null) {
+            for (AnnotationNode annotation : annotations) {
+                if (LWJGL3_AWARE_DESC.equals(annotation.desc)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mixin keeps its reference to the target node, so the remapped contents have to be moved into it
+     */
+    private static void copyClass(ClassNode from, ClassNode to) {
+        to.version = from.version;
+        to.access = from.access;
+        to.name = from.name;
+        to.signature = from.signature;
+        to.superName = from.superName;
+        to.interfaces = from.interfaces;
+        to.sourceFile = from.sourceFile;
+        to.sourceDebug = from.sourceDebug;
+        to.outerClass = from.outerClass;
+        to.outerMethod = from.outerMethod;
+        to.outerMethodDesc = from.outerMethodDesc;
+        to.visibleAnnotations = from.visibleAnnotations;
+        to.invisibleAnnotations = from.invisibleAnnotations;
+        to.visibleTypeAnnotations = from.visibleTypeAnnotations;
+        to.invisibleTypeAnnotations = from.invisibleTypeAnnotations;
+        to.attrs = from.attrs;
+        to.innerClasses = from.innerClasses;
+        to.fields = from.fields;
+        to.methods = from.methods;
+    }
+}
@@ -0,0 +1,222 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+
+import net.minecraft.launchwrapper.Launch;
+
+import com.google.common.hash.Hashing;
+
+import cpw.mods.fml.common.LoaderException;
+import cpw.mods.fml.common.MetadataCollection;
+import cpw.mods.fml.common.ModContainer;
+import cpw.mods.fml.common.ModContainerFactory;
+import cpw.mods.fml.common.discovery.ASMDataTable;
+import cpw.mods.fml.common.discovery.ModCandidate;
+import cpw.mods.fml.common.discovery.asm.ASMModParser;
+
+/**
+ * Replacement for FML's {@code JarDiscoverer.discover} that avoids parsing every class of a mod jar on each launch.
+ * Only classes with annotations can contribute to the ASM data table or be mod containers, so for each jar (keyed by
+ * the SHA-1 of its contents) the names of those classes are remembered, and on later launches all other classes are
+ * only registered as class entries without being parsed. On a cache miss, the classes are parsed in parallel. The
+ * data table entries and containers are still added sequentially in jar order, as FML does.
+ */
+public class ModDiscoveryCache {
+
+    private static final int VERSION = 1;
+    /** Same as FML's JarDiscoverer */
+    private static final Pattern CLASS_FILE = Pattern.compile("[^\\s\\$]+(\\$[^\\s]+)?\\.class$");
+
+    private static final Set<String> usedCacheFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return If the entry should be skipped during mod discovery, for classes FML can't or shouldn't parse
+     */
+    public static boolean isIgnoredEntry(String name) {
+        return name.contains("module-info.class") || name.startsWith("META-INF/versions/")
+                || name.contains("org/openjdk/nashorn")
+                || name.contains("jakarta/servlet/");
+    }
+
+    private static File getCacheDir() {
+        return new File(new File(Launch.minecraftHome, "lwjgl3ify-cache"), "discovery");
+    }
+
+    public static List<ModContainer> discover(ModCandidate candidate, ASMDataTable table) {
+        final List<ModContainer> foundMods = new ArrayList<>();
+        final File modFile = candidate.getModContainer();
+        final long start = System.nanoTime();
+        Lwjgl3ifyCoremod.LOGGER.debug("Examining file {} for potential mods", modFile.getName());
+        try (JarFile jar = new JarFile(modFile)) {
+            // FML's JarDiscoverer means to skip coremod and tweaker jars here, but it looks the attributes up by
+            // String key so the check never matches, and jars with FMLCorePluginContainsFMLMod rely on that
+            final ZipEntry modInfo = jar.getEntry("mcmod.info");
+            final MetadataCollection mc;
+            if (modInfo != null) {
+                mc = MetadataCollection.from(jar.getInputStream(modInfo), modFile.getName());
+            } else {
+                Lwjgl3ifyCoremod.LOGGER
+                        .debug("The mod container {} appears to be missing an mcmod.info file", modFile.getName());
+                mc = MetadataCollection.from(null, "");
+            }
+
+            final List<ZipEntry> classEntries = new ArrayList<>();
+            for (ZipEntry ze : Collections.list(jar.entries())) {
+                final String name = ze.getName();
+                if (name == null || name.startsWith("__MACOSX") || isIgnoredEntry(name)) {
+                    continue;
+                }
+                if (CLASS_FILE.matcher(name).matches()) {
+                    classEntries.add(ze);
+                }
+            }
+
+            final String hash = com.google.common.io.Files.asByteSource(modFile).hash(Hashing.sha1()).toString();
+            final File cacheFile = new File(getCacheDir(), hash + ".txt");
+            final CachedJar cached = CachedJar.read(cacheFile);
+            usedCacheFiles.add(cacheFile.getName());
+
+            // Parse the classes that matter in parallel, then replay FML's sequential loop in entry order
+            final ASMModParser[] parsers = new ASMModParser[classEntries.size()];
+            IntStream.range(0, parsers.length).parallel().forEach(i -> {
+                final ZipEntry ze = classEntries.get(i);
+                if (cached != null && !cached.annotatedClasses.contains(ze.getName())) {
+                    return;
+                }
+                try (InputStream is = jar.getInputStream(ze)) {
+                    parsers[i] = new ASMModParser(is);
+                } catch (IOException | LoaderException e) {
+                    Lwjgl3ifyCoremod.LOGGER.error(
+                            "There was a problem reading the entry {} in the jar {} - probably a corrupt zip",
+                            ze.getName(),
+                            modFile.getPath(),
+                            e);
+                    throw e instanceof LoaderException ? (LoaderException) e : new LoaderException(e);
+                }
+            });
+            final List<String> annotatedClasses = new ArrayList<>();
+            for (int i = 0; i < parsers.length; i++) {
+                final ASMModParser modParser = parsers[i];
+                candidate.addClassEntry(classEntries.get(i).getName());
+                if (modParser == null) {
+                    continue;
+                }
+                if (!modParser.getAnnotations().isEmpty()) {
+                    annotatedClasses.add(classEntries.get(i).getName());
+                }
+                modParser.validate();
+                modParser.sendToTable(table, candidate);
+                ModContainer container = ModContainerFactory.instance().build(modParser, modFile, candidate);
+                if (container != null) {
+                    table.addContainer(container);
+                    foundMods.add(container);
+                    container.bindMetadata(mc);
+                }
+            }
+
+            final long elapsed = System.nanoTime() - start;
+            if (cached == null) {
+                Lwjgl3ifyCoremod.LOGGER.debug(
+                        "Parsed all {} classes of {} in {} ms, {} have annotations",
+                        parsers.length,
+                        modFile.getName(),
+                        TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        annotatedClasses.size());
+                CachedJar.write(cacheFile, elapsed, annotatedClasses);
+            } else {
+                Lwjgl3ifyCoremod.LOGGER.debug(
+                        "Parsed {} of {} classes of {} thanks to the discovery cache in {} ms, saved {} ms",
+                        cached.annotatedClasses.size(),
+                        parsers.length,
+                        modFile.getName(),
+                        TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        TimeUnit.NANOSECONDS.toMillis(cached.fullParseNanos - elapsed));
+            }
+        } catch (Exception e) {
+            Lwjgl3ifyCoremod.LOGGER
+                    .warn("Zip file {} failed to read properly, it will be ignored", modFile.getName(), e);
+        }
+        StartupTracer.span("ModDiscoveryCache", modFile.getName(), start);
+        return foundMods;
+    }
+
+    /**
+     * Deletes the cache files of jars that were not seen during this launch.
+     */
+    public static void pruneUnused() {
+        if (usedCacheFiles.isEmpty()) {
+            return;
+        }
+        final File[] files = getCacheDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!usedCacheFiles.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /*
+     * Cache file layout: a header line with the format version and the time the full parse took in nanoseconds,
+     * followed by one line per class entry that had annotations.
+     */
+    private static final class CachedJar {
+
+        final long fullParseNanos;
+        final Set<String> annotatedClasses;
+
+        CachedJar(long fullParseNanos, Set<String> annotatedClasses) {
+            this.fullParseNanos = fullParseNanos;
+            this.annotatedClasses = annotatedClasses;
+        }
+
+        static CachedJar read(File file) {
+            if (!file.isFile()) {
+                return null;
+            }
+            try {
+                final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                final String[] header = lines.isEmpty() ? new String[0] : lines.get(0).split(" ");
+                if (header.length != 2 || Integer.parseInt(header[0]) != VERSION) {
+                    return null;
+                }
+                return new CachedJar(Long.parseLong(header[1]), new HashSet<>(lines.subList(1, lines.size())));
+            } catch (IOException | RuntimeException e) {
+                Lwjgl3ifyCoremod.LOGGER.debug("Could not read the discovery cache file {}", file, e);
+                return null;
+            }
+        }
+
+        static void write(File file, long fullParseNanos, List<String> annotatedClasses) {
+            final List<String> lines = new ArrayList<>(annotatedClasses.size() + 1);
+            lines.add(VERSION + " " + fullParseNanos);
+            lines.addAll(annotatedClasses);
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                final File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+                Files.write(tmpFile.toPath(), lines, StandardCharsets.UTF_8);
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Lwjgl3ifyCoremod.LOGGER.warn("Could not write the discovery cache file {}", file, e);
+            }
+        }
+    }
+}
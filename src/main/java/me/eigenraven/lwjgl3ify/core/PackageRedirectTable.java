@@ -0,0 +1,145 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Maps internal class names by replacing a package prefix, looked up in a character trie so the cost doesn't grow with
+ * the number of redirects. When several prefixes match, the longest one wins. Mapped names are memoized in a bounded
+ * concurrent cache, as the same few hundred LWJGL class names are looked up over and over while loading a modpack.
+ */
+public class PackageRedirectTable {
+
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        /** Non-null if a redirected prefix ends at this node */
+        String from;
+        String to;
+
+        Node child(char c) {
+            final char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+    private final Map<String, String> redirects = new TreeMap<>();
+    private final ConcurrentHashMap<String, String> mappedNames = new ConcurrentHashMap<>();
+    private final int maxCachedNames;
+
+    final LongAdder lookups = new LongAdder();
+    final LongAdder remaps = new LongAdder();
+
+    /**
+     * @param maxCachedNames How many mapped names to memoize at most, further names are mapped without caching
+     */
+    public PackageRedirectTable(int maxCachedNames) {
+        this.maxCachedNames = maxCachedNames;
+    }
+
+    /**
+     * Adds or replaces a redirect. Must not be called while the table is in use.
+     *
+     * @param fromPrefix Internal name prefix to replace, e.g. {@code javax/xml/bind/}
+     * @param toPrefix   Replacement prefix, e.g. {@code jakarta/xml/bind/}
+     */
+    public void add(String fromPrefix, String toPrefix) {
+        if (fromPrefix.isEmpty()) {
+            throw new IllegalArgumentException("Empty redirect prefix");
+        }
+        Node node = root;
+        for (int i = 0; i < fromPrefix.length(); i++) {
+            node = node.getOrAddChild(fromPrefix.charAt(i));
+        }
+        node.from = fromPrefix;
+        node.to = toPrefix;
+        redirects.put(fromPrefix, toPrefix);
+        mappedNames.clear();
+    }
+
+    /**
+     * @return The mapped name, or the same string if no redirect applies
+     */
+    public String map(String internalName) {
+        lookups.increment();
+        Node node = root;
+        Node match = null;
+        for (int i = 0; i < internalName.length(); i++) {
+            node = node.child(internalName.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.to != null) {
+                match = node;
+            }
+        }
+        if (match == null) {
+            return internalName;
+        }
+        remaps.increment();
+        final String cached = mappedNames.get(internalName);
+        if (cached != null) {
+            return cached;
+        }
+        final String mapped = match.to + internalName.substring(match.from.length());
+        if (mappedNames.size() < maxCachedNames) {
+            mappedNames.put(internalName, mapped);
+        }
+        return mapped;
+    }
+
+    /**
+     * @return All redirected prefixes, for use in a {@link ClassConstantPoolParser}
+     */
+    public String[] getFromPrefixes() {
+        return redirects.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @return A hash of all redirects, stable across launches
+     */
+    public long getFingerprint() {
+        long hash = 1125899906842597L;
+        for (Map.Entry<String, String> redirect : redirects.entrySet()) {
+            hash = hashString(hash, redirect.getKey());
+            hash = hashString(hash, redirect.getValue());
+        }
+        return hash;
+    }
+
+    private static long hashString(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return 31 * hash + ';';
+    }
+
+    public int size() {
+        return redirects.size();
+    }
+}
@@ -36,6 +36,8 @@ public class PostMixinTransformInjector implements ITweaker {
     public String[] getLaunchArguments() {
         // Here we can inject ourselves
         Launch.classLoader.registerTransformer(LwjglRedirectTransformer.class.getName());
+        // The Mixin transformer exists by now, classes it touches can be redirected before it writes them
+        MixinRedirectExtension.register();
         return new String[0];
     }
 }
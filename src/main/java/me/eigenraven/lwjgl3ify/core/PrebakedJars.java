@@ -0,0 +1,331 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import me.eigenraven.lwjgl3ify.Tags;
+
+import net.minecraft.launchwrapper.Launch;
+
+/**
+ * Support for mod jars that were already run through lwjgl3ify's transformers offline by the prebake tool in the util
+ * source set. Such jars carry a {@value #MANIFEST_ATTRIBUTE} manifest attribute with a fingerprint of the lwjgl3ify
+ * version and the transformer configuration they were baked with, classes from jars with a matching fingerprint are
+ * skipped by the holder/enum transformer and only go through the redirect prefilter (which still catches LWJGL
+ * references injected by mixins). A class only counts as prebaked if the class loader actually loads it from the
+ * prebaked jar, so shaded copies of the same class in other jars (common for mod APIs) are still transformed.
+ * <p>
+ * What each jar was baked with is remembered in an index keyed by path, size and modification time, so only jars that
+ * were added, replaced or touched since the last launch have to be opened.
+ */
+public class PrebakedJars {
+
+    public static final String MANIFEST_ATTRIBUTE = "Lwjgl3ify-Prebaked";
+
+    private static final int INDEX_MAGIC = 0x4C33504A; // L3PJ
+    private static final int INDEX_VERSION = 1;
+
+    /** Class name to the canonical path of the prebaked jar it comes from */
+    private static Map<String, String> prebakedClasses = Collections.emptyMap();
+
+    static final class Entry {
+
+        final String path;
+        final long size;
+        final long lastModified;
+        /** The fingerprint from the manifest, null if the jar wasn't prebaked */
+        final String bakedWith;
+        /** Names of the classes in the jar, only recorded for prebaked jars */
+        final String[] classes;
+
+        Entry(String path, long size, long lastModified, String bakedWith, String[] classes) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.bakedWith = bakedWith;
+            this.classes = classes;
+        }
+
+        boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Finds the prebaked jars with a matching fingerprint in the mods directory.
+     */
+    public static void init() {
+        final File modsDir = new File(Launch.minecraftHome, "mods");
+        final List<File> jarFiles = new ArrayList<>();
+        for (File dir : new File[] { modsDir, new File(modsDir, "1.7.10") }) {
+            final File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(".jar")) {
+                    jarFiles.add(file);
+                }
+            }
+        }
+        final Entry[] entries = scan(
+                new File(new File(Launch.minecraftHome, "lwjgl3ify-cache"), "prebaked-jars.bin"),
+                jarFiles.toArray(new File[0]));
+
+        final String fingerprint = getFingerprint();
+        final Map<String, String> classes = new HashMap<>();
+        int jars = 0;
+        for (Entry entry : entries) {
+            if (entry == null || entry.bakedWith == null) {
+                continue;
+            }
+            if (!entry.bakedWith.equals(fingerprint)) {
+                Lwjgl3ifyCoremod.LOGGER.warn(
+                        "{} was prebaked with a different lwjgl3ify version or configuration, it will be transformed at runtime",
+                        new File(entry.path).getName());
+                continue;
+            }
+            final String jarPath;
+            try {
+                jarPath = new File(entry.path).getCanonicalPath();
+            } catch (IOException e) {
+                Lwjgl3ifyCoremod.LOGGER.warn("Could not resolve {}, it will be transformed at runtime", entry.path, e);
+                continue;
+            }
+            for (String className : entry.classes) {
+                classes.put(className, jarPath);
+            }
+            jars++;
+        }
+        if (jars > 0) {
+            Lwjgl3ifyCoremod.LOGGER.info("Found {} prebaked mod jars with {} classes", jars, classes.size());
+            prebakedClasses = classes;
+        }
+    }
+
+    /**
+     * @return The entries for the given jars in the same order, null for jars that couldn't be read
+     */
+    static Entry[] scan(File indexFile, File[] jars) {
+        final Map<String, Entry> index = readIndex(indexFile);
+        final Entry[] entries = new Entry[jars.length];
+        final Set<String> paths = new HashSet<>();
+        int scanned = 0;
+        for (int i = 0; i < jars.length; i++) {
+            final String path = jars[i].getAbsolutePath();
+            paths.add(path);
+            final Entry cached = index.get(path);
+            if (cached != null && cached.matches(jars[i])) {
+                entries[i] = cached;
+            } else {
+                entries[i] = readEntry(jars[i]);
+                scanned++;
+            }
+        }
+        // Rewrite the index if any jars were added, changed or removed
+        if (scanned > 0 || !paths.equals(index.keySet())) {
+            try {
+                writeIndex(indexFile, entries);
+            } catch (IOException e) {
+                Lwjgl3ifyCoremod.LOGGER.warn("Could not write the prebaked jar index {}", indexFile, e);
+            }
+        }
+        return entries;
+    }
+
+    private static Entry readEntry(File file) {
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        try (JarFile jar = new JarFile(file, false)) {
+            final Manifest manifest = jar.getManifest();
+            final String bakedWith = manifest == null ? null
+                    : manifest.getMainAttributes().getValue(MANIFEST_ATTRIBUTE);
+            if (bakedWith == null) {
+                return new Entry(file.getAbsolutePath(), size, lastModified, null, new String[0]);
+            }
+            final List<String> classes = new ArrayList<>();
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final String path = entries.nextElement().getName();
+                if (path.endsWith(".class") && !path.startsWith("META-INF/")) {
+                    classes.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+                }
+            }
+            return new Entry(file.getAbsolutePath(), size, lastModified, bakedWith, classes.toArray(new String[0]));
+        } catch (IOException e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not check {} for prebaked classes", file, e);
+            return null;
+        }
+    }
+
+    private static Map<String, Entry> readIndex(File indexFile) {
+        final Map<String, Entry> index = new HashMap<>();
+        if (!indexFile.isFile()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return index;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long lastModified = in.readLong();
+                final String bakedWith = in.readBoolean() ? in.readUTF() : null;
+                final String[] classes = new String[in.readInt()];
+                for (int c = 0; c < classes.length; c++) {
+                    classes[c] = in.readUTF();
+                }
+                index.put(path, new Entry(path, size, lastModified, bakedWith, classes));
+            }
+        } catch (IOException | RuntimeException e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not read the prebaked jar index {}, rebuilding it", indexFile, e);
+            index.clear();
+        }
+        return index;
+    }
+
+    private static void writeIndex(File indexFile, Entry[] entries) throws IOException {
+        final File dir = indexFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry != null) {
+                count++;
+            }
+        }
+        final File tmpFile = new File(dir, indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(count);
+            for (Entry entry : entries) {
+                if (entry == null) {
+                    continue;
+                }
+                out.writeUTF(entry.path);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeBoolean(entry.bakedWith != null);
+                if (entry.bakedWith != null) {
+                    out.writeUTF(entry.bakedWith);
+                }
+                out.writeInt(entry.classes.length);
+                for (String className : entry.classes) {
+                    out.writeUTF(className);
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return Whether the class is loaded from a prebaked jar. Only classes with a name from a prebaked jar are looked
+     *         up on the class path, the first match there is the copy that gets defined.
+     */
+    public static boolean isPrebaked(String transformedName) {
+        final String jarPath = prebakedClasses.get(transformedName);
+        if (jarPath == null || Launch.classLoader == null) {
+            return false;
+        }
+        final URL source = Launch.classLoader.findResource(transformedName.replace('.', '/') + ".class");
+        return source != null && jarPath.equals(getJarPath(source));
+    }
+
+    /**
+     * @return The canonical path of the jar a {@code jar:} URL points into, null for other URLs
+     */
+    static String getJarPath(URL resource) {
+        if (!"jar".equals(resource.getProtocol())) {
+            return null;
+        }
+        final String spec = resource.getFile();
+        final int separator = spec.indexOf("!/");
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new File(new URL(spec.substring(0, separator)).toURI()).getCanonicalPath();
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Identifies everything the output of the transformers depends on: the lwjgl3ify version, the redirect
+     *         table and the extensible enum list
+     */
+    public static String getFingerprint() {
+        final LwjglRedirectTransformer redirects = new LwjglRedirectTransformer(false);
+        return Tags.VERSION + ";" + Long.toHexString(redirects.redirectsFingerprint)
+                + ";"
+                + Long.toHexString(Config.getExtensibleEnumsFingerprint());
+    }
+
+    /**
+     * Applies the lwjgl3ify transformers to classes outside of the game, in the same order as at runtime. Used by the
+     * prebake tool.
+     */
+    public static final class Baker {
+
+        private final UnfinalizeObjectHoldersTransformer unfinalizer;
+        private final LwjglRedirectTransformer redirect;
+
+        /**
+         * @param instanceDir The game directory, the lwjgl3ify config is read from there
+         */
+        public Baker(File instanceDir) {
+            Launch.minecraftHome = instanceDir;
+            Config.loadConfig();
+            unfinalizer = new UnfinalizeObjectHoldersTransformer();
+            redirect = new LwjglRedirectTransformer(false);
+        }
+
+        /**
+         * @return The class as it would look after lwjgl3ify's transformers, or the same array if unchanged
+         */
+        public byte[] transform(String className, byte[] basicClass) {
+            final byte[] unfinalized = unfinalizer.transform(className, className, basicClass);
+            return redirect.remapClass(className, className, unfinalized);
+        }
+
+        /**
+         * Same as {@link #transform(String, byte[])}, but always using the ASM-based remapper for the redirects, to
+         * check the output of the faster default path.
+         */
+        public byte[] transformReference(String className, byte[] basicClass) {
+            final byte[] unfinalized = unfinalizer.transform(className, className, basicClass);
+            try {
+                return redirect.remapWithAsm(unfinalized);
+            } catch (LwjglRedirectTransformer.Lwjgl3AwareException e) {
+                return unfinalized;
+            }
+        }
+    }
+}
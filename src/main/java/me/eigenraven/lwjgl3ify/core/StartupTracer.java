@@ -0,0 +1,212 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.ObjLongConsumer;
+
+import net.minecraft.launchwrapper.Launch;
+
+/**
+ * Records a timeline of coremod loading, class transformations, binary patching, texture loading and stitching during
+ * startup, enabled with the {@code debug.startupTrace} option. Spans are appended to buffers owned by the recording
+ * thread without any locking, and written to {@code trace.json} in the game directory once startup is done (when the
+ * main menu first opens on clients, after the initial resource reload), in the Chrome trace event format that
+ * {@code chrome://tracing} and Perfetto can open. Spans on the same thread nest by their time ranges.
+ * <p>
+ * Instrumented code checks {@link #enabled} before taking any timestamps, like {@link TransformerMetrics}.
+ */
+public class StartupTracer {
+
+    /** Read directly by instrumented code, set once before any transformer runs and cleared when flushed */
+    public static boolean enabled = false;
+
+    private static final int CHUNK_SIZE = 4096;
+    private static long baseNanos = 0;
+
+    private static final class Chunk {
+
+        final long[] starts = new long[CHUNK_SIZE];
+        final long[] durations = new long[CHUNK_SIZE];
+        final String[] categories = new String[CHUNK_SIZE];
+        final String[] names = new String[CHUNK_SIZE];
+        /** Written only by the owning thread after the event fields, so readers see complete events */
+        volatile int size = 0;
+    }
+
+    private static final class ThreadBuffer {
+
+        final long threadId;
+        final String threadName;
+        final ConcurrentLinkedQueue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+        Chunk current = new Chunk();
+
+        ThreadBuffer(Thread thread) {
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            chunks.add(current);
+        }
+    }
+
+    private static final ConcurrentLinkedQueue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ThreadBuffer> threadBuffer = ThreadLocal.withInitial(() -> {
+        final ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    });
+
+    /** Read by the patched ClassPatchManager, which can't reference this class directly */
+    private static final String BLACKBOARD_KEY = "lwjgl3ify.startupTracer";
+    /** Read by the patched CoreModManager, like {@link #BLACKBOARD_KEY} */
+    private static final String CORE_MODS_KEY = "lwjgl3ify.startupTracer.coreMods";
+    /**
+     * Spans the patched CoreModManager recorded before this coremod was constructed, as {@code [name, start, end]}
+     * arrays
+     */
+    private static final String PENDING_CORE_MOD_SPANS_KEY = "lwjgl3ify.startupTracer.pendingCoreModSpans";
+
+    @SuppressWarnings("unchecked")
+    public static void init() {
+        baseNanos = System.nanoTime();
+        enabled = Config.DEBUG_STARTUP_TRACE;
+        final List<Object[]> pending = (List<Object[]>) Launch.blackboard.remove(PENDING_CORE_MOD_SPANS_KEY);
+        if (enabled) {
+            Launch.blackboard.put(
+                    BLACKBOARD_KEY,
+                    (ObjLongConsumer<String>) (name, start) -> span("ClassPatchManager", name, start));
+            Launch.blackboard
+                    .put(CORE_MODS_KEY, (ObjLongConsumer<String>) (name, start) -> span("CoreModManager", name, start));
+            if (pending != null) {
+                for (Object[] span : pending) {
+                    final long start = (Long) span[1];
+                    baseNanos = Math.min(baseNanos, start);
+                    span("CoreModManager", (String) span[0], start, (Long) span[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a span on the current thread from {@code startNanos} until now.
+     *
+     * @param category Shown as the event category, e.g. the instrumented component
+     * @param name     Shown as the event name, e.g. the class being transformed
+     */
+    public static void span(String category, String name, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        span(category, name, startNanos, System.nanoTime());
+    }
+
+    /**
+     * Records a span on the current thread from {@code startNanos} to {@code endNanos}, for work that was timed before
+     * the tracer was set up.
+     */
+    public static void span(String category, String name, long startNanos, long endNanos) {
+        if (!enabled) {
+            return;
+        }
+        final ThreadBuffer buffer = threadBuffer.get();
+        Chunk chunk = buffer.current;
+        int index = chunk.size;
+        if (index == CHUNK_SIZE) {
+            chunk = new Chunk();
+            buffer.chunks.add(chunk);
+            buffer.current = chunk;
+            index = 0;
+        }
+        chunk.starts[index] = startNanos;
+        chunk.durations[index] = endNanos - startNanos;
+        chunk.categories[index] = category;
+        chunk.names[index] = name == null ? "" : name;
+        chunk.size = index + 1;
+    }
+
+    /**
+     * Stops recording and writes all recorded spans to {@code trace.json}.
+     */
+    public static void flush() {
+        if (!enabled) {
+            return;
+        }
+        enabled = false;
+        Launch.blackboard.remove(BLACKBOARD_KEY);
+        Launch.blackboard.remove(CORE_MODS_KEY);
+        final File traceFile = new File(Launch.minecraftHome, "trace.json");
+        long events = 0;
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(traceFile.toPath()), StandardCharsets.UTF_8),
+                1 << 16)) {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            boolean first = true;
+            for (ThreadBuffer buffer : buffers) {
+                if (!first) {
+                    out.write(",\n");
+                }
+                first = false;
+                out.write("{\"ph\":\"M\",\"pid\":1,\"tid\":");
+                out.write(Long.toString(buffer.threadId));
+                out.write(",\"name\":\"thread_name\",\"args\":{\"name\":");
+                writeString(out, buffer.threadName);
+                out.write("}}");
+                for (Chunk chunk : buffer.chunks) {
+                    final int size = chunk.size;
+                    for (int i = 0; i < size; i++) {
+                        out.write(",\n{\"ph\":\"X\",\"pid\":1,\"tid\":");
+                        out.write(Long.toString(buffer.threadId));
+                        out.write(",\"ts\":");
+                        writeMicros(out, chunk.starts[i] - baseNanos);
+                        out.write(",\"dur\":");
+                        writeMicros(out, chunk.durations[i]);
+                        out.write(",\"cat\":");
+                        writeString(out, chunk.categories[i]);
+                        out.write(",\"name\":");
+                        writeString(out, chunk.names[i]);
+                        out.write('}');
+                        events++;
+                    }
+                }
+            }
+            out.write("\n]}\n");
+        } catch (IOException e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not write the startup trace to {}", traceFile, e);
+            return;
+        } finally {
+            buffers.clear();
+        }
+        Lwjgl3ifyCoremod.LOGGER.info("Wrote {} startup trace events to {}", events, traceFile.getAbsolutePath());
+    }
+
+    private static void writeMicros(Writer out, long nanos) throws IOException {
+        out.write(Long.toString(nanos / 1000));
+        out.write('.');
+        final long fraction = nanos % 1000;
+        if (fraction < 100) {
+            out.write(fraction < 10 ? "00" : "0");
+        }
+        out.write(Long.toString(fraction));
+    }
+
+    private static void writeString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
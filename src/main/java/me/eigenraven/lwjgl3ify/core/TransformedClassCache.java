@@ -0,0 +1,368 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import me.eigenraven.lwjgl3ify.Tags;
+
+import net.minecraft.launchwrapper.Launch;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Content-addressed on-disk cache of transformer outputs, so that a warm start can skip all ASM work for classes that
+ * were already transformed in a previous launch.
+ * <p>
+ * The cache is a single append-only pack file, memory-mapped for reading. Each record is keyed by a 128-bit hash of
+ * the transformer id and version, the class names, a transformer-specific configuration salt and the input class
+ * bytes. Every record also stores the last launch it was used in, which is used for LRU eviction when the pack grows
+ * beyond the configured size cap, and a CRC32 of the stored class, a record that doesn't match it counts as a miss.
+ * Eviction happens when the cache is opened, before the file gets mapped.
+ */
+public class TransformedClassCache {
+
+    private static final int MAGIC = 0x4C33_4358; // "L3CX"
+    private static final int FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 28;
+    private static final int SESSION_OFFSET = 8;
+    private static final int VERSION_HASH_OFFSET = 12;
+    /** Evict down to this fraction of the size cap, so we don't have to compact on every launch */
+    private static final double EVICTION_TARGET = 0.75;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    public static TransformedClassCache INSTANCE = null;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final int mappedSize;
+    private final int session;
+    private final Map<Key, Entry> index = new ConcurrentHashMap<>();
+    private long fileEnd;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder stores = new LongAdder();
+    final LongAdder bytesStored = new LongAdder();
+    private int evictedOnOpen = 0;
+
+    public static void init() {
+        if (!Config.TRANSFORMER_CACHE) {
+            return;
+        }
+        final File dir = new File(Launch.minecraftHome, "lwjgl3ify-cache");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not create transformer cache directory {}", dir);
+            return;
+        }
+        final File file = new File(dir, "transformed-classes.pack");
+        if (Boolean.getBoolean("lwjgl3ify.clearTransformerCache") && file.exists()) {
+            Lwjgl3ifyCoremod.LOGGER.info("Clearing the transformer cache at {}", file);
+            if (!file.delete()) {
+                Lwjgl3ifyCoremod.LOGGER.warn("Could not delete the transformer cache at {}", file);
+            }
+        }
+        try {
+            INSTANCE = new TransformedClassCache(file, Config.TRANSFORMER_CACHE_MAX_SIZE_MB * 1024L * 1024L);
+        } catch (IOException | RuntimeException e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not open the transformer cache at {}, it will be disabled", file, e);
+            INSTANCE = null;
+        }
+    }
+
+    private TransformedClassCache(File file, long maxSize) throws IOException {
+        this.file = file;
+        maxSize = Math.min(maxSize, Integer.MAX_VALUE);
+        if (file.exists() && !isValidPack(file)) {
+            Lwjgl3ifyCoremod.LOGGER.info("Transformer cache {} is from a different lwjgl3ify version, recreating", file);
+            if (!file.delete()) {
+                throw new IOException("Could not delete stale transformer cache " + file);
+            }
+        }
+        if (file.exists() && file.length() > maxSize) {
+            compact(file, (long) (maxSize * EVICTION_TARGET));
+        }
+
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        if (channel.size() < FILE_HEADER_SIZE) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(0).putLong(versionHash());
+            header.rewind();
+            channel.truncate(0);
+            channel.write(header, 0);
+        }
+        final ByteBuffer sessionBuf = ByteBuffer.allocate(4);
+        channel.read(sessionBuf, SESSION_OFFSET);
+        this.session = sessionBuf.getInt(0) + 1;
+        sessionBuf.putInt(0, session);
+        sessionBuf.rewind();
+        channel.write(sessionBuf, SESSION_OFFSET);
+
+        final long size = channel.size();
+        this.mappedSize = (int) Math.min(size, Integer.MAX_VALUE);
+        this.mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        this.fileEnd = scanRecords();
+        if (fileEnd < size) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Truncating corrupted tail of the transformer cache {}", file);
+            channel.truncate(fileEnd);
+        }
+    }
+
+    private static long versionHash() {
+        return HASH.hashString(Tags.VERSION, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static boolean isValidPack(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < FILE_HEADER_SIZE) {
+                return false;
+            }
+            final int magic = in.readInt();
+            final int format = in.readInt();
+            in.seek(VERSION_HASH_OFFSET);
+            final long version = in.readLong();
+            return magic == MAGIC && format == FORMAT_VERSION && version == versionHash();
+        }
+    }
+
+    /** Builds the in-memory index from the mapped pack, returns the end of the last valid record. */
+    private long scanRecords() {
+        long pos = FILE_HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= mappedSize) {
+            final int p = (int) pos;
+            final long hi = mapped.getLong(p);
+            final long lo = mapped.getLong(p + 8);
+            final int length = mapped.getInt(p + 20);
+            final int crc = mapped.getInt(p + 24);
+            if (length < 0 || pos + RECORD_HEADER_SIZE + length > mappedSize) {
+                break;
+            }
+            index.put(new Key(hi, lo), new Entry(pos, length, crc));
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        return pos;
+    }
+
+    /** Rewrites the pack keeping only the most recently used records that fit in targetSize bytes. */
+    private void compact(File file, long targetSize) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final List<long[]> records = new ArrayList<>(); // position, lastUsed, length
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+                RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            final long size = in.length();
+            long pos = FILE_HEADER_SIZE;
+            while (pos + RECORD_HEADER_SIZE <= size) {
+                in.seek(pos + 16);
+                final int lastUsed = in.readInt();
+                final int length = in.readInt();
+                if (length < 0 || pos + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                records.add(new long[] { pos, lastUsed, length });
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            records.sort((a, b) -> Long.compare(b[1], a[1]));
+
+            final byte[] header = new byte[FILE_HEADER_SIZE];
+            in.seek(0);
+            in.readFully(header);
+            out.setLength(0);
+            out.write(header);
+            long written = FILE_HEADER_SIZE;
+            byte[] buf = new byte[4096];
+            for (long[] record : records) {
+                final int total = RECORD_HEADER_SIZE + (int) record[2];
+                if (written + total > targetSize) {
+                    evictedOnOpen++;
+                    continue;
+                }
+                if (buf.length < total) {
+                    buf = new byte[total];
+                }
+                in.seek(record[0]);
+                in.readFully(buf, 0, total);
+                out.write(buf, 0, total);
+                written += total;
+            }
+        }
+        if (!file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with the compacted transformer cache");
+        }
+        Lwjgl3ifyCoremod.LOGGER
+                .info("Evicted {} least recently used entries from the transformer cache {}", evictedOnOpen, file);
+    }
+
+    /**
+     * @param transformerId Unique name of the transformer
+     * @param version       Version of the transformer's output format, bump whenever the transformer changes behaviour
+     * @param salt          Hash of any configuration the transformer output depends on
+     * @return The cache key for the given transformer input
+     */
+    public Key key(String transformerId, int version, long salt, String name, String transformedName,
+            byte[] basicClass) {
+        final Hasher hasher = HASH.newHasher(basicClass.length + 128);
+        hasher.putString(transformerId, StandardCharsets.UTF_8);
+        hasher.putInt(version);
+        hasher.putLong(salt);
+        hasher.putString(name, StandardCharsets.UTF_8);
+        hasher.putString(transformedName, StandardCharsets.UTF_8);
+        hasher.putBytes(basicClass);
+        final ByteBuffer hash = ByteBuffer.wrap(hasher.hash().asBytes());
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    /**
+     * @return The cached transformer output, the input array itself if the transformer made no changes, or null if the
+     *         class is not in the cache.
+     */
+    public byte[] get(Key key, byte[] basicClass) {
+        final Entry entry = index.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        try {
+            final byte[] result;
+            if (entry.length == 0) {
+                result = basicClass;
+            } else {
+                result = new byte[entry.length];
+                if (entry.position + RECORD_HEADER_SIZE + entry.length <= mappedSize) {
+                    final ByteBuffer view = mapped.duplicate();
+                    view.position((int) entry.position + RECORD_HEADER_SIZE);
+                    view.get(result);
+                } else {
+                    // Stored during this launch, past the end of the mapping
+                    channel.read(ByteBuffer.wrap(result), entry.position + RECORD_HEADER_SIZE);
+                }
+                if (crc32(result) != entry.crc) {
+                    Lwjgl3ifyCoremod.LOGGER
+                            .warn("Corrupted transformer cache entry at {}, ignoring it", entry.position);
+                    index.remove(key);
+                    misses.increment();
+                    return null;
+                }
+            }
+            if (entry.position + RECORD_HEADER_SIZE <= mappedSize) {
+                mapped.putInt((int) entry.position + 16, session);
+            }
+            hits.increment();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not read from the transformer cache", e);
+            index.remove(key);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a transformer output, result may be the same array as basicClass to record that nothing changed.
+     */
+    public void put(Key key, byte[] basicClass, byte[] result) {
+        if (result == null) {
+            return;
+        }
+        final int length = (result == basicClass) ? 0 : result.length;
+        final int crc = length > 0 ? crc32(result) : 0;
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putLong(key.hi).putLong(key.lo).putInt(session).putInt(length).putInt(crc);
+        if (length > 0) {
+            record.put(result);
+        }
+        record.rewind();
+        synchronized (this) {
+            if (index.containsKey(key)) {
+                return;
+            }
+            try {
+                final long position = fileEnd;
+                while (record.hasRemaining()) {
+                    channel.write(record, position + record.position());
+                }
+                fileEnd += record.capacity();
+                index.put(key, new Entry(position, length, crc));
+                stores.increment();
+                bytesStored.add(record.capacity());
+            } catch (IOException e) {
+                Lwjgl3ifyCoremod.LOGGER.warn("Could not write to the transformer cache", e);
+            }
+        }
+    }
+
+    private static int crc32(byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    public static void logStatistics() {
+        final TransformedClassCache cache = INSTANCE;
+        if (cache == null) {
+            return;
+        }
+        Lwjgl3ifyCoremod.LOGGER.info(
+                "Transformer cache {}: {} hits, {} misses, {} new entries ({} KiB), {} entries total, {} KiB on disk",
+                cache.file,
+                cache.hits.sum(),
+                cache.misses.sum(),
+                cache.stores.sum(),
+                cache.bytesStored.sum() / 1024,
+                cache.index.size(),
+                cache.fileEnd / 1024);
+    }
+
+    public static final class Key {
+
+        final long hi;
+        final long lo;
+
+        Key(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return hi == key.hi && lo == key.lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hi ^ (hi >>> 32));
+        }
+    }
+
+    private static final class Entry {
+
+        final long position;
+        final int length;
+        final int crc;
+
+        Entry(long position, int length, int crc) {
+            this.position = position;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+}
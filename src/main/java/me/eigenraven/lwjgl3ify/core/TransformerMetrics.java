@@ -0,0 +1,213 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ * Per-transformer invocation, timing and size counters, enabled with the {@code debug.transformerMetrics} option.
+ * Instrumented transformers check {@link #enabled} before taking any timestamps, so the metrics cost a single static
+ * field read when turned off.
+ * <p>
+ * When enabled, every instance is also registered as an MBean named
+ * {@code me.eigenraven.lwjgl3ify:type=TransformerMetrics,name=<transformer>}, and a summary table is logged once FML
+ * finishes loading.
+ */
+public class TransformerMetrics implements TransformerMetricsMBean {
+
+    public static final int SLOWEST_CLASSES = 20;
+    private static final int SLOWEST_CLASSES_IN_SUMMARY = 5;
+
+    /** Read directly by transformers on every call, set once before any transformer runs */
+    public static boolean enabled = false;
+
+    private static final Map<String, TransformerMetrics> ALL = new LinkedHashMap<>();
+
+    private final String name;
+    final LongAdder invocations = new LongAdder();
+    final LongAdder classesModified = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+
+    private static final class SlowClass {
+
+        final String className;
+        final long nanos;
+
+        SlowClass(String className, long nanos) {
+            this.className = className;
+            this.nanos = nanos;
+        }
+    }
+
+    /** Min-heap of the slowest classes so far, guarded by itself */
+    private final PriorityQueue<SlowClass> slowest = new PriorityQueue<>(
+            SLOWEST_CLASSES + 1,
+            Comparator.comparingLong(c -> c.nanos));
+    /** Fastest time still in {@link #slowest} once it is full, to skip the lock for most classes */
+    private volatile long slowestThreshold = 0;
+
+    private TransformerMetrics(String name) {
+        this.name = name;
+    }
+
+    public static void init() {
+        enabled = Config.DEBUG_TRANSFORMER_METRICS;
+    }
+
+    /**
+     * @param transformerName Display name of the transformer, instances are shared between callers using the same name
+     */
+    public static TransformerMetrics get(String transformerName) {
+        synchronized (ALL) {
+            TransformerMetrics metrics = ALL.get(transformerName);
+            if (metrics == null) {
+                metrics = new TransformerMetrics(transformerName);
+                ALL.put(transformerName, metrics);
+                if (enabled) {
+                    metrics.registerMBean();
+                }
+            }
+            return metrics;
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    this,
+                    new ObjectName("me.eigenraven.lwjgl3ify:type=TransformerMetrics,name=" + ObjectName.quote(name)));
+        } catch (Exception e) {
+            Lwjgl3ifyCoremod.LOGGER.warn("Could not register the transformer metrics MBean for {}", name, e);
+        }
+    }
+
+    /**
+     * Records one transformer call, only call this if {@link #enabled} is set.
+     *
+     * @param startNanos      {@link System#nanoTime()} before the transformer started working
+     * @param transformedName Name of the transformed class
+     * @param in              Class bytes passed to the transformer
+     * @param out             Class bytes returned, a different array means the class was modified
+     */
+    public void record(long startNanos, String transformedName, byte[] in, byte[] out) {
+        final long elapsed = System.nanoTime() - startNanos;
+        invocations.increment();
+        nanos.add(elapsed);
+        if (in != null) {
+            bytesIn.add(in.length);
+        }
+        if (out != null) {
+            bytesOut.add(out.length);
+        }
+        if (out != in) {
+            classesModified.increment();
+        }
+        if (elapsed > slowestThreshold) {
+            synchronized (slowest) {
+                slowest.add(new SlowClass(transformedName, elapsed));
+                if (slowest.size() > SLOWEST_CLASSES) {
+                    slowest.poll();
+                }
+                if (slowest.size() == SLOWEST_CLASSES) {
+                    slowestThreshold = slowest.peek().nanos;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getTransformerName() {
+        return name;
+    }
+
+    @Override
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    @Override
+    public long getClassesModified() {
+        return classesModified.sum();
+    }
+
+    @Override
+    public double getTotalTimeMillis() {
+        return nanos.sum() / 1_000_000.0;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public String[] getSlowestClasses() {
+        final List<SlowClass> sorted;
+        synchronized (slowest) {
+            sorted = new ArrayList<>(slowest);
+        }
+        sorted.sort(Comparator.comparingLong((SlowClass c) -> c.nanos).reversed());
+        final String[] result = new String[sorted.size()];
+        for (int i = 0; i < result.length; i++) {
+            final SlowClass c = sorted.get(i);
+            result[i] = String.format("%s: %.3f ms", c.className, c.nanos / 1_000_000.0);
+        }
+        return result;
+    }
+
+    public static void logSummary() {
+        if (!enabled) {
+            return;
+        }
+        final List<TransformerMetrics> all;
+        synchronized (ALL) {
+            all = new ArrayList<>(ALL.values());
+        }
+        final StringBuilder table = new StringBuilder("Transformer metrics:\n");
+        table.append(
+                String.format(
+                        "%-40s %10s %10s %12s %12s %12s%n",
+                        "Transformer",
+                        "Calls",
+                        "Modified",
+                        "Time (ms)",
+                        "In (KiB)",
+                        "Out (KiB)"));
+        for (TransformerMetrics metrics : all) {
+            table.append(
+                    String.format(
+                            "%-40s %10d %10d %12.1f %12d %12d%n",
+                            metrics.name,
+                            metrics.getInvocations(),
+                            metrics.getClassesModified(),
+                            metrics.getTotalTimeMillis(),
+                            metrics.getBytesIn() / 1024,
+                            metrics.getBytesOut() / 1024));
+        }
+        for (TransformerMetrics metrics : all) {
+            final String[] slowestClasses = metrics.getSlowestClasses();
+            if (slowestClasses.length == 0) {
+                continue;
+            }
+            table.append("Slowest classes in ").append(metrics.name).append(":\n");
+            for (int i = 0; i < Math.min(slowestClasses.length, SLOWEST_CLASSES_IN_SUMMARY); i++) {
+                table.append("  ").append(slowestClasses[i]).append('\n');
+            }
+        }
+        Lwjgl3ifyCoremod.LOGGER.info(table.toString());
+    }
+}
@@ -0,0 +1,24 @@
+package me.eigenraven.lwjgl3ify.core;
+
+/**
+ * JMX view of {@link TransformerMetrics}.
+ */
+public interface TransformerMetricsMBean {
+
+    String getTransformerName();
+
+    long getInvocations();
+
+    long getClassesModified();
+
+    double getTotalTimeMillis();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    /**
+     * @return The slowest transformed classes, slowest first, as "class.Name: 1.234 ms"
+     */
+    String[] getSlowestClasses();
+}
@@ -2,13 +2,17 @@ package me.eigenraven.lwjgl3ify.core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import me.eigenraven.lwjgl3ify.WasFinalObjectHolder;
 
 import net.minecraft.launchwrapper.IClassTransformer;
 
+import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AnnotationNode;
@@ -17,106 +21,302 @@ import org.objectweb.asm.tree.FieldNode;
 
 public class UnfinalizeObjectHoldersTransformer implements IClassTransformer {
 
-    // Keep ClassNode-operating transformers together for efficiency (don't read/write the class multiple times)
+    static final String CACHE_ID = "unfinalize";
+    /** Bump whenever the output of this transformer or its helpers changes, to invalidate cached classes */
+    static final int CACHE_VERSION = 4;
+
+    // Keep the transformers together for efficiency (don't read/write the class multiple times). Only extensible enums
+    // need a ClassNode, everything else goes through a single streaming visitor chain.
     final ExtensibleEnumTransformerHelper enumTransformer = new ExtensibleEnumTransformerHelper();
     final FixConstantPoolInterfaceMethodRefHelper cpiMethodRefTransformer = new FixConstantPoolInterfaceMethodRefHelper();
 
+    // Anything that could make one of the helpers above do work, checked before parsing the whole class
+    final ClassConstantPoolParser cstPoolParser = new ClassConstantPoolParser(
+            cpiMethodRefTransformer.isNeeded(),
+            "ObjectHolder",
+            "ItemStackHolder",
+            enumTransformer.MARKER_IFACE.getInternalName(),
+            enumTransformer.MARKER_ANNOTATION.getDescriptor());
+    final ClassConstantPoolParser holderPoolParser = new ClassConstantPoolParser("ObjectHolder", "ItemStackHolder");
+    final ClassConstantPoolParser enumAnnotationPoolParser = new ClassConstantPoolParser(
+            enumTransformer.MARKER_ANNOTATION.getDescriptor());
+
+    static final LongAdder classesSkipped = new LongAdder();
+    static final LongAdder classesRewritten = new LongAdder();
+    static final LongAdder classesUnchanged = new LongAdder();
+
+    static final TransformerMetrics metrics = TransformerMetrics.get("UnfinalizeObjectHoldersTransformer");
+
     private static boolean isHolder(List<AnnotationNode> annotations) {
         if (annotations == null) {
             return false;
         }
         for (AnnotationNode annotationNode : annotations) {
-            // Java 17 uses $ instead of /
-            final String desc = annotationNode.desc.replace('$', '/');
-            if (desc.contains("cpw/mods/fml/common/registry/GameRegistry/ObjectHolder")) {
-                return true;
-            }
-            if (desc.contains("cpw/mods/fml/common/registry/GameRegistry/ItemStackHolder")) {
+            if (isHolder(annotationNode.desc)) {
                 return true;
             }
         }
         return false;
     }
 
+    private static boolean isHolder(String annotationDesc) {
+        // Java 17 uses $ instead of /
+        final String desc = annotationDesc.replace('$', '/');
+        if (desc.contains("cpw/mods/fml/common/registry/GameRegistry/ObjectHolder")) {
+            return true;
+        }
+        return desc.contains("cpw/mods/fml/common/registry/GameRegistry/ItemStackHolder");
+    }
+
+    private static boolean isHolderClass(String transformedName) {
+        return transformedName.equals("net.minecraft.init.Blocks") || transformedName.equals("net.minecraft.init.Items");
+    }
+
     @Override
     public byte[] transform(String name, String transformedName, byte[] basicClass) {
+        if (!TransformerMetrics.enabled && !StartupTracer.enabled) {
+            return transformCached(name, transformedName, basicClass);
+        }
+        final long start = System.nanoTime();
+        final byte[] result = transformCached(name, transformedName, basicClass);
+        if (TransformerMetrics.enabled) {
+            metrics.record(start, transformedName, basicClass, result);
+        }
+        StartupTracer.span("UnfinalizeObjectHoldersTransformer", transformedName, start);
+        return result;
+    }
+
+    private byte[] transformCached(String name, String transformedName, byte[] basicClass) {
         if (basicClass == null) {
             return null;
         }
-        if (transformedName.startsWith("me.eigenraven.lwjgl3ify")) {
+        if (transformedName.startsWith("me.eigenraven.lwjgl3ify") || PrebakedJars.isPrebaked(transformedName)) {
+            return basicClass;
+        }
+        if (!isHolderClass(transformedName) && !Config.getExtensibleEnums().contains(transformedName)
+                && !cstPoolParser.find(basicClass)) {
+            classesSkipped.increment();
             return basicClass;
         }
+        final TransformedClassCache cache = TransformedClassCache.INSTANCE;
+        TransformedClassCache.Key cacheKey = null;
+        if (cache != null) {
+            cacheKey = cache.key(
+                    CACHE_ID,
+                    CACHE_VERSION,
+                    Config.getExtensibleEnumsFingerprint(),
+                    name,
+                    transformedName,
+                    basicClass);
+            final byte[] cached = cache.get(cacheKey, basicClass);
+            if (cached != null) {
+                return cached;
+            }
+        }
         try {
             final ClassReader reader = new ClassReader(basicClass);
-            final ClassNode node = new ClassNode();
-            reader.accept(node, ClassReader.EXPAND_FRAMES);
-            final Type classType = Type.getType("L" + name.replace('.', '/') + ";");
-
-            boolean transformClass = false;
-            boolean workDone = false;
-            if (transformedName.equals("net.minecraft.init.Blocks")
-                    || transformedName.equals("net.minecraft.init.Items")) {
-                transformClass = true;
+            if (needsExtensibleEnumTransform(reader, transformedName, basicClass)) {
+                // Not cached, COMPUTE_FRAMES merges the frame types using the superclass hierarchy, which can change
+                // without this class changing and isn't part of the cache key
+                return transformClassTree(reader, name, transformedName, basicClass);
             }
-            transformClass |= isHolder(node.visibleAnnotations);
-            if (transformedName.equals("team.chisel.init.ChiselBlocks")) {
-                Lwjgl3ifyCoremod.LOGGER.info("chiselblocks");
-            }
-            int fieldsModified = 0;
-            for (FieldNode field : node.fields) {
-                boolean transform = transformClass;
-                if (!transform) {
-                    transform = isHolder(field.visibleAnnotations);
-                }
-                if (transform) {
-                    workDone = true;
-                    if ((field.access & Opcodes.ACC_FINAL) != 0) {
-                        if (field.visibleAnnotations == null) {
-                            field.visibleAnnotations = new ArrayList<>(1);
-                            field.visibleAnnotations
-                                    .add(new AnnotationNode(Type.getDescriptor(WasFinalObjectHolder.class)));
-                        }
-                        field.access = field.access & (~Opcodes.ACC_FINAL);
-                    }
-                    fieldsModified++;
-                }
-            }
-            if (workDone) {
-                Lwjgl3ifyCoremod.LOGGER.info("Unfinalized {} Holder fields in {}", fieldsModified, transformedName);
+            final byte[] result = transformClassStreaming(reader, name, transformedName, basicClass);
+            if (cacheKey != null) {
+                cache.put(cacheKey, basicClass, result);
             }
+            return result;
+        } catch (Exception e) {
+            Lwjgl3ifyCoremod.LOGGER.error("Error when unfinalizing ObjectHolder transformer", e);
+        }
+        classesUnchanged.increment();
+        return basicClass;
+    }
 
-            if (Config.getExtensibleEnums().contains(transformedName)) {
-                if (node.interfaces == null) {
-                    node.interfaces = new ArrayList<>(1);
-                }
-                node.interfaces.add(enumTransformer.MARKER_IFACE.getInternalName());
-            }
+    byte[] transformClass(String name, String transformedName, byte[] basicClass) {
+        final ClassReader reader = new ClassReader(basicClass);
+        if (needsExtensibleEnumTransform(reader, transformedName, basicClass)) {
+            return transformClassTree(reader, name, transformedName, basicClass);
+        }
+        return transformClassStreaming(reader, name, transformedName, basicClass);
+    }
 
-            final boolean enumsTransformed = enumTransformer.processClassWithFlags(node, classType);
+    private byte[] transformClassStreaming(ClassReader reader, String name, String transformedName,
+            byte[] basicClass) {
+        // Streaming path: unfinalizing fields and fixing method handles changes neither the code nor the stack map
+        // frames, so the constant pool can be copied and nothing needs to be recomputed.
+        final ClassWriter writer = new ClassWriter(reader, 0);
+        final FixConstantPoolInterfaceMethodRefHelper.HandleFixingClassVisitor handleFixer = cpiMethodRefTransformer
+                .isNeeded() ? cpiMethodRefTransformer.createClassVisitor(writer) : null;
+        final HolderUnfinalizingClassVisitor unfinalizer = new HolderUnfinalizingClassVisitor(
+                handleFixer != null ? handleFixer : writer,
+                isHolderClass(transformedName),
+                isHolderClass(transformedName) || holderPoolParser.find(basicClass));
+        reader.accept(unfinalizer, 0);
 
-            if (enumsTransformed) {
-                workDone = true;
-                Lwjgl3ifyCoremod.LOGGER.info("Dynamicized enum {}={}", name, transformedName);
+        boolean workDone = false;
+        if (unfinalizer.holderFields > 0) {
+            workDone = unfinalizer.changed;
+            Lwjgl3ifyCoremod.LOGGER
+                    .info("Unfinalized {} Holder fields in {}", unfinalizer.holderFields, transformedName);
+        }
+        if (handleFixer != null && handleFixer.isChanged()) {
+            workDone = true;
+            Lwjgl3ifyCoremod.LOGGER.warn(
+                    "Fixed missing CONSTANT_InterfaceMethodRef miscompilation in {}={}",
+                    name,
+                    transformedName);
+        }
+
+        if (workDone) {
+            classesRewritten.increment();
+            return writer.toByteArray();
+        }
+        classesUnchanged.increment();
+        return basicClass;
+    }
+
+    private boolean needsExtensibleEnumTransform(ClassReader reader, String transformedName, byte[] basicClass) {
+        if ((reader.getAccess() & Opcodes.ACC_ENUM) == 0) {
+            return false;
+        }
+        if (Config.getExtensibleEnums().contains(transformedName)) {
+            return true;
+        }
+        for (String iface : reader.getInterfaces()) {
+            if (iface.equals(enumTransformer.MARKER_IFACE.getInternalName())) {
+                return true;
             }
+        }
+        return enumAnnotationPoolParser.find(basicClass);
+    }
 
-            final boolean ifaceMethodRefsTransformed = cpiMethodRefTransformer.transform(node);
+    /**
+     * Full tree-based path, only used for enums that have to be made extensible as that requires generating new code.
+     * Handles every other class as well, the benchmarks compare the streaming path against it.
+     */
+    byte[] transformClassTree(ClassReader reader, String name, String transformedName, byte[] basicClass) {
+        final ClassNode node = new ClassNode();
+        reader.accept(node, ClassReader.EXPAND_FRAMES);
+        final Type classType = Type.getType("L" + name.replace('.', '/') + ";");
 
-            if (ifaceMethodRefsTransformed) {
+        boolean transformClass = isHolderClass(transformedName);
+        boolean workDone = false;
+        transformClass |= isHolder(node.visibleAnnotations);
+        int fieldsModified = 0;
+        for (FieldNode field : node.fields) {
+            boolean transform = transformClass;
+            if (!transform) {
+                transform = isHolder(field.visibleAnnotations);
+            }
+            if (transform) {
                 workDone = true;
-                Lwjgl3ifyCoremod.LOGGER.warn(
-                        "Fixed missing CONSTANT_InterfaceMethodRef miscompilation in {}={}",
-                        name,
-                        transformedName);
+                unfinalizeField(field);
+                fieldsModified++;
             }
+        }
+        if (workDone) {
+            Lwjgl3ifyCoremod.LOGGER.info("Unfinalized {} Holder fields in {}", fieldsModified, transformedName);
+        }
 
-            if (workDone) {
-                final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-                node.accept(writer);
-                return writer.toByteArray();
+        if (Config.getExtensibleEnums().contains(transformedName)) {
+            if (node.interfaces == null) {
+                node.interfaces = new ArrayList<>(1);
             }
-        } catch (Exception e) {
-            Lwjgl3ifyCoremod.LOGGER.error("Error when unfinalizing ObjectHolder transformer", e);
+            node.interfaces.add(enumTransformer.MARKER_IFACE.getInternalName());
+        }
+
+        final boolean enumsTransformed = enumTransformer.processClassWithFlags(node, classType);
+
+        if (enumsTransformed) {
+            workDone = true;
+            Lwjgl3ifyCoremod.LOGGER.info("Dynamicized enum {}={}", name, transformedName);
+        }
+
+        final boolean ifaceMethodRefsTransformed = cpiMethodRefTransformer.transform(node);
+
+        if (ifaceMethodRefsTransformed) {
+            workDone = true;
+            Lwjgl3ifyCoremod.LOGGER.warn(
+                    "Fixed missing CONSTANT_InterfaceMethodRef miscompilation in {}={}",
+                    name,
+                    transformedName);
         }
+
+        if (workDone) {
+            final ClassWriter writer = new ClassHierarchyIndex.HierarchyClassWriter(
+                    ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+            node.accept(writer);
+            classesRewritten.increment();
+            return writer.toByteArray();
+        }
+        classesUnchanged.increment();
         return basicClass;
     }
+
+    /**
+     * @return If the field was modified
+     */
+    private static boolean unfinalizeField(FieldNode field) {
+        if ((field.access & Opcodes.ACC_FINAL) == 0) {
+            return false;
+        }
+        if (field.visibleAnnotations == null) {
+            field.visibleAnnotations = new ArrayList<>(1);
+            field.visibleAnnotations.add(new AnnotationNode(Type.getDescriptor(WasFinalObjectHolder.class)));
+        }
+        field.access = field.access & (~Opcodes.ACC_FINAL);
+        return true;
+    }
+
+    /**
+     * Strips final from ObjectHolder/ItemStackHolder fields in a single pass. Only fields are buffered (as their
+     * annotations are only known after the access flags have been visited), everything else is streamed through.
+     */
+    private static final class HolderUnfinalizingClassVisitor extends ClassVisitor {
+
+        private boolean holderClass;
+        private final boolean mayHaveHolders;
+        int holderFields = 0;
+        boolean changed = false;
+
+        HolderUnfinalizingClassVisitor(ClassVisitor cv, boolean holderClass, boolean mayHaveHolders) {
+            super(Opcodes.ASM9, cv);
+            this.holderClass = holderClass;
+            this.mayHaveHolders = mayHaveHolders;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (visible && isHolder(descriptor)) {
+                holderClass = true;
+            }
+            return super.visitAnnotation(descriptor, visible);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            if (!mayHaveHolders) {
+                return super.visitField(access, name, descriptor, signature, value);
+            }
+            return new FieldNode(api, access, name, descriptor, signature, value) {
+
+                @Override
+                public void visitEnd() {
+                    if (holderClass || isHolder(visibleAnnotations)) {
+                        holderFields++;
+                        changed |= unfinalizeField(this);
+                    }
+                    accept(HolderUnfinalizingClassVisitor.this.cv);
+                }
+            };
+        }
+    }
+
+    public static void logStatistics() {
+        Lwjgl3ifyCoremod.LOGGER.info(
+                "UnfinalizeObjectHoldersTransformer: {} classes skipped by the constant pool prefilter, {} rewritten, {} parsed but left unchanged",
+                classesSkipped.sum(),
+                classesRewritten.sum(),
+                classesUnchanged.sum());
+    }
 }
@@ -1,14 +1,38 @@
 package me.eigenraven.lwjgl3ify.mixins.fml;
 
+import java.util.List;
 import java.util.zip.ZipEntry;
 
+import me.eigenraven.lwjgl3ify.core.Config;
+import me.eigenraven.lwjgl3ify.core.ModDiscoveryCache;
+
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import cpw.mods.fml.common.ModContainer;
+import cpw.mods.fml.common.discovery.ASMDataTable;
+import cpw.mods.fml.common.discovery.ModCandidate;
 
 @Mixin(value = { cpw.mods.fml.common.discovery.JarDiscoverer.class }, remap = false)
 public class JarDiscoverer {
 
+    @Inject(
+            method = {
+                    "Lcpw/mods/fml/common/discovery/JarDiscoverer;discover(Lcpw/mods/fml/common/discovery/ModCandidate;Lcpw/mods/fml/common/discovery/ASMDataTable;)Ljava/util/List;" },
+            at = @At("HEAD"),
+            cancellable = true,
+            remap = false,
+            require = 1)
+    public void discoverCached(ModCandidate candidate, ASMDataTable table,
+            CallbackInfoReturnable<List<ModContainer>> cir) {
+        if (Config.DISCOVERY_CACHE) {
+            cir.setReturnValue(ModDiscoveryCache.discover(candidate, table));
+        }
+    }
+
     @Redirect(
             method = {
                     "Lcpw/mods/fml/common/discovery/JarDiscoverer;discover(Lcpw/mods/fml/common/discovery/ModCandidate;Lcpw/mods/fml/common/discovery/ASMDataTable;)Ljava/util/List;" },
@@ -20,9 +44,7 @@ public class JarDiscoverer {
         if (name == null) {
             return null;
         }
-        if (name.contains("module-info.class") || name.startsWith("META-INF/versions/")
-                || name.contains("org/openjdk/nashorn")
-                || name.contains("jakarta/servlet/")) {
+        if (ModDiscoveryCache.isIgnoredEntry(name)) {
             // Triggers the continue in the loop
             return "__MACOSX_ignoreme";
         }
@@ -1,17 +1,78 @@
 package me.eigenraven.lwjgl3ify.mixins.game;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
+
+import me.eigenraven.lwjgl3ify.core.Config;
+import me.eigenraven.lwjgl3ify.textures.INativeSprite;
+import me.eigenraven.lwjgl3ify.textures.NativeBackedImage;
+import me.eigenraven.lwjgl3ify.textures.NativeSpriteFrames;
 
 import net.minecraft.client.renderer.texture.TextureAtlasSprite;
 import net.minecraft.client.resources.data.AnimationMetadataSection;
 
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(TextureAtlasSprite.class)
-public class MixinTextureAtlasSprite {
+@SuppressWarnings({ "rawtypes" })
+public class MixinTextureAtlasSprite implements INativeSprite {
+
+    @Shadow
+    protected List framesTextureData;
+
+    @Shadow
+    protected int originX;
+
+    @Shadow
+    protected int originY;
+
+    @Shadow
+    protected int width;
+
+    @Shadow
+    protected int height;
+
+    @Shadow
+    private void resetSprite() {}
+
+    /**
+     * Keeps the pixels of static sprites in native memory for {@link #lwjgl3ify$uploadNative()} and starts generating
+     * their mip levels. Sprites with mip level files or anisotropic filtering padding, animations and sprite
+     * subclasses, which may read the frame data themselves, take the vanilla path.
+     */
+    @Inject(method = "loadSprite", at = @At("HEAD"), cancellable = true)
+    void loadNativeSprite(BufferedImage[] frames, AnimationMetadataSection aniData, boolean anisotropicFiltering,
+            CallbackInfo info) {
+        if (!Config.NATIVE_SPRITE_UPLOAD || aniData != null
+                || anisotropicFiltering
+                || !(frames[0] instanceof NativeBackedImage)
+                || ((Object) this).getClass() != TextureAtlasSprite.class) {
+            return;
+        }
+        for (int level = 1; level < frames.length; level++) {
+            if (frames[level] != null) {
+                return;
+            }
+        }
+        final NativeBackedImage image = (NativeBackedImage) frames[0];
+        if (image.getWidth() != image.getHeight()) {
+            // Let vanilla report the broken aspect ratio
+            return;
+        }
+        this.resetSprite();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        image.fixTransparentPixels();
+        // Start with the levels that halve the sprite evenly, the atlas settles on the floor log2 of its smallest
+        // sprite later, which can be more for sprites whose size isn't a power of two
+        final int mipmapLevels = Math.min(frames.length - 1, Integer.numberOfTrailingZeros(image.getWidth()));
+        this.framesTextureData = new NativeSpriteFrames(image, mipmapLevels, frames.length);
+        info.cancel();
+    }
 
     @Inject(method = "loadSprite", at = @At("TAIL"))
     void cleanupAfterLoadSprite(BufferedImage[] frames, AnimationMetadataSection aniData, boolean anisotropicFiltering,
@@ -27,4 +88,25 @@ public class MixinTextureAtlasSprite {
             }
         }
     }
+
+    @Inject(method = "resetSprite", at = @At("HEAD"))
+    private void freeNativeFrames(CallbackInfo info) {
+        if (this.framesTextureData instanceof NativeSpriteFrames) {
+            this.framesTextureData.clear();
+        }
+    }
+
+    @Inject(method = "generateMipmaps", at = @At("HEAD"), cancellable = true)
+    private void generateNativeMipmaps(int mipmapLevels, CallbackInfo info) {
+        if (this.framesTextureData instanceof NativeSpriteFrames
+                && ((NativeSpriteFrames) this.framesTextureData).generateMipmaps(mipmapLevels)) {
+            info.cancel();
+        }
+    }
+
+    @Override
+    public boolean lwjgl3ify$uploadNative() {
+        return this.framesTextureData instanceof NativeSpriteFrames
+                && ((NativeSpriteFrames) this.framesTextureData).upload(this.originX, this.originY);
+    }
 }
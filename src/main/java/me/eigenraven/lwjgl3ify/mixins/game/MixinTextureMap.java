@@ -3,18 +3,80 @@ package me.eigenraven.lwjgl3ify.mixins.game;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+import me.eigenraven.lwjgl3ify.textures.INativeSprite;
 import me.eigenraven.lwjgl3ify.textures.NativeBackedImage;
+import me.eigenraven.lwjgl3ify.textures.ParallelSpriteDecoder;
 
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
 import net.minecraft.client.renderer.texture.TextureMap;
+import net.minecraft.client.renderer.texture.TextureUtil;
+import net.minecraft.client.resources.IResourceManager;
+import net.minecraft.util.ResourceLocation;
 
+import org.apache.commons.io.IOUtils;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.ModifyArg;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(TextureMap.class)
 public abstract class MixinTextureMap {
 
+    @Shadow
+    @Final
+    private Map<String, TextureAtlasSprite> mapRegisteredSprites;
+
+    @Shadow
+    private ResourceLocation completeResourceLocation(ResourceLocation location, int mipmapLevel) {
+        return null;
+    }
+
+    @Unique
+    private ParallelSpriteDecoder lwjgl3ify$decoder;
+
+    /** The resource the loading loop opened last, which the next image read is for */
+    @Unique
+    private ResourceLocation lwjgl3ify$currentResource;
+
+    @Inject(
+            method = "loadTextureAtlas",
+            at = @At(
+                    value = "INVOKE",
+                    target = "Lnet/minecraftforge/client/ForgeHooksClient;onTextureStitchedPre(Lnet/minecraft/client/renderer/texture/TextureMap;)V",
+                    shift = At.Shift.AFTER,
+                    remap = false))
+    private void startSpriteDecoding(IResourceManager resourceManager, CallbackInfo ci) {
+        lwjgl3ify$stopSpriteDecoding();
+        // All sprites are registered once the pre-stitch event is done. Subclasses of the sprite might have a custom
+        // loader, so their files may not even exist, leave those to the loading loop.
+        final List<ResourceLocation> locations = new ArrayList<>(mapRegisteredSprites.size());
+        for (Map.Entry<String, TextureAtlasSprite> entry : mapRegisteredSprites.entrySet()) {
+            if (entry.getValue().getClass() == TextureAtlasSprite.class) {
+                locations.add(completeResourceLocation(new ResourceLocation(entry.getKey()), 0));
+            }
+        }
+        lwjgl3ify$decoder = ParallelSpriteDecoder.start(resourceManager, locations);
+    }
+
+    @ModifyArg(
+            method = "loadTextureAtlas",
+            at = @At(
+                    value = "INVOKE",
+                    target = "Lnet/minecraft/client/resources/IResourceManager;getResource(Lnet/minecraft/util/ResourceLocation;)Lnet/minecraft/client/resources/IResource;"))
+    private ResourceLocation trackCurrentResource(ResourceLocation location) {
+        lwjgl3ify$currentResource = location;
+        return location;
+    }
+
     @Redirect(
             method = "loadTextureAtlas",
             at = @At(
@@ -23,9 +85,55 @@ public abstract class MixinTextureMap {
                     remap = false))
     private BufferedImage redirectImageRead(InputStream stream) {
         try {
-            return NativeBackedImage.make(stream);
+            final ResourceLocation location = lwjgl3ify$currentResource;
+            lwjgl3ify$currentResource = null;
+            if (lwjgl3ify$decoder != null && location != null) {
+                final NativeBackedImage decoded = lwjgl3ify$decoder.take(location);
+                if (decoded != null) {
+                    IOUtils.closeQuietly(stream);
+                    return decoded;
+                }
+            }
+            return NativeBackedImage.make(stream, location == null ? null : location.toString());
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
+
+    @Redirect(
+            method = "loadTextureAtlas",
+            at = @At(
+                    value = "INVOKE",
+                    target = "Lnet/minecraft/client/renderer/texture/TextureAtlasSprite;getFrameTextureData(I)[[I"))
+    private int[][] uploadNativeSprite(TextureAtlasSprite sprite, int frame) {
+        if (frame == 0 && sprite instanceof INativeSprite && ((INativeSprite) sprite).lwjgl3ify$uploadNative()) {
+            // Uploaded from native memory, skip the upload of the frame data
+            return null;
+        }
+        return sprite.getFrameTextureData(frame);
+    }
+
+    @Redirect(
+            method = "loadTextureAtlas",
+            at = @At(
+                    value = "INVOKE",
+                    target = "Lnet/minecraft/client/renderer/texture/TextureUtil;uploadTextureMipmap([[IIIIIZZ)V"))
+    private void skipUploadedSprite(int[][] data, int width, int height, int x, int y, boolean blur, boolean clamp) {
+        if (data != null) {
+            TextureUtil.uploadTextureMipmap(data, width, height, x, y, blur, clamp);
+        }
+    }
+
+    @Inject(method = "loadTextureAtlas", at = @At("RETURN"))
+    private void finishSpriteDecoding(IResourceManager resourceManager, CallbackInfo ci) {
+        lwjgl3ify$stopSpriteDecoding();
+    }
+
+    @Unique
+    private void lwjgl3ify$stopSpriteDecoding() {
+        if (lwjgl3ify$decoder != null) {
+            lwjgl3ify$decoder.close();
+            lwjgl3ify$decoder = null;
+        }
+    }
 }
@@ -0,0 +1,206 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import me.eigenraven.lwjgl3ify.api.Lwjgl3Aware;
+
+import org.lwjgl.stb.STBRPContext;
+import org.lwjgl.stb.STBRPNode;
+import org.lwjgl.stb.STBRPRect;
+import org.lwjgl.stb.STBRectPack;
+
+/**
+ * Packs rectangles into the smallest power-of-two atlas stb_rect_pack can fit them in, without any Minecraft types so
+ * it can be benchmarked on its own. The search starts at the smallest atlas that could hold the total area of the
+ * rectangles and the largest one on its own, then tries the squarest shapes of every power-of-two area above it, up to
+ * a bounded number of attempts.
+ */
+@Lwjgl3Aware
+public final class AtlasPacker {
+
+    /** Atlas shapes tried before giving up, each one at least as large as the one before */
+    public static final int MAX_ATTEMPTS = 16;
+    /** Largest atlas side considered, 2^15 */
+    private static final int MAX_SIDE_EXPONENT = 15;
+
+    public enum Heuristic {
+
+        SKYLINE_BOTTOM_LEFT("skylineBottomLeft", STBRectPack.STBRP_HEURISTIC_Skyline_BL_sortHeight),
+        SKYLINE_BEST_FIT("skylineBestFit", STBRectPack.STBRP_HEURISTIC_Skyline_BF_sortHeight);
+
+        public final String configName;
+        final int stbHeuristic;
+
+        Heuristic(String configName, int stbHeuristic) {
+            this.configName = configName;
+            this.stbHeuristic = stbHeuristic;
+        }
+
+        public static Heuristic byName(String configName) {
+            for (Heuristic heuristic : values()) {
+                if (heuristic.configName.equals(configName)) {
+                    return heuristic;
+                }
+            }
+            return SKYLINE_BOTTOM_LEFT;
+        }
+    }
+
+    /** The order the rectangles are placed in, largest first by the given measure */
+    public enum SortOrder {
+
+        /** stb_rect_pack's own order, by height then width, packed in a single call */
+        HEIGHT("height", null),
+        AREA("area", Comparator.comparingLong((long[] r) -> r[0] * r[1]).thenComparingLong(r -> r[1])),
+        MAX_SIDE("maxSide", Comparator.comparingLong((long[] r) -> Math.max(r[0], r[1]))
+                .thenComparingLong(r -> Math.min(r[0], r[1]))),
+        PERIMETER("perimeter", Comparator.comparingLong((long[] r) -> r[0] + r[1]).thenComparingLong(r -> r[1]));
+
+        public final String configName;
+        /** Compares {width, height} pairs, null to let stb_rect_pack sort */
+        final Comparator<long[]> comparator;
+
+        SortOrder(String configName, Comparator<long[]> comparator) {
+            this.configName = configName;
+            this.comparator = comparator;
+        }
+
+        public static SortOrder byName(String configName) {
+            for (SortOrder order : values()) {
+                if (order.configName.equals(configName)) {
+                    return order;
+                }
+            }
+            return HEIGHT;
+        }
+    }
+
+    public static final class Result {
+
+        public final int width;
+        public final int height;
+        /** Positions of the rectangles, in input order */
+        public final int[] x;
+        public final int[] y;
+        /** Sum of the rectangle areas */
+        public final long usedArea;
+        /** Number of atlas shapes tried, including the one that fit */
+        public final int attempts;
+
+        Result(int width, int height, int[] x, int[] y, long usedArea, int attempts) {
+            this.width = width;
+            this.height = height;
+            this.x = x;
+            this.y = y;
+            this.usedArea = usedArea;
+            this.attempts = attempts;
+        }
+
+        /**
+         * @return The fraction of the atlas covered by rectangles
+         */
+        public double fillRatio() {
+            return (double) usedArea / ((long) width * height);
+        }
+    }
+
+    private AtlasPacker() {}
+
+    /**
+     * @return The packed atlas, or null if the rectangles don't fit within {@link #MAX_ATTEMPTS} shapes
+     */
+    public static Result pack(int[] widths, int[] heights, Heuristic heuristic, SortOrder order) {
+        final int count = widths.length;
+        long area = 0;
+        int maxWidth = 1, maxHeight = 1;
+        for (int i = 0; i < count; i++) {
+            area += (long) widths[i] * heights[i];
+            maxWidth = Math.max(maxWidth, widths[i]);
+            maxHeight = Math.max(maxHeight, heights[i]);
+        }
+        final int minWidthExp = ceilLog2(maxWidth);
+        final int minHeightExp = ceilLog2(maxHeight);
+        final int[] packOrder = packOrder(widths, heights, order);
+
+        try (STBRPRect.Buffer rects = STBRPRect.malloc(count); STBRPContext ctx = STBRPContext.malloc()) {
+            for (int i = 0; i < count; i++) {
+                rects.get(i).set(i, widths[i], heights[i], 0, 0, false);
+            }
+            int attempts = 0;
+            for (int areaExp = Math.max(ceilLog2(area), minWidthExp + minHeightExp); areaExp <= 2 * MAX_SIDE_EXPONENT
+                    && attempts < MAX_ATTEMPTS; areaExp++) {
+                final int lowest = Math.max(minWidthExp, areaExp - MAX_SIDE_EXPONENT);
+                final int highest = Math.min(MAX_SIDE_EXPONENT, areaExp - minHeightExp);
+                if (lowest > highest) {
+                    continue;
+                }
+                // The squarest shapes of this area that can hold the largest rectangle, the wider one first
+                final int wider = clamp((areaExp + 1) / 2, lowest, highest);
+                final int taller = clamp(areaExp / 2, lowest, highest);
+                for (int widthExp = wider; widthExp >= taller && attempts < MAX_ATTEMPTS; widthExp--) {
+                    attempts++;
+                    final int width = 1 << widthExp;
+                    final int height = 1 << (areaExp - widthExp);
+                    if (tryPack(ctx, rects, packOrder, width, height, heuristic)) {
+                        final int[] x = new int[count];
+                        final int[] y = new int[count];
+                        for (STBRPRect rect : rects) {
+                            x[rect.id()] = rect.x();
+                            y[rect.id()] = rect.y();
+                        }
+                        return new Result(width, height, x, y, area, attempts);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private static boolean tryPack(STBRPContext ctx, STBRPRect.Buffer rects, int[] packOrder, int width, int height,
+            Heuristic heuristic) {
+        // With a node per column stb_rect_pack doesn't align positions any further, the sizes are already aligned
+        try (STBRPNode.Buffer nodes = STBRPNode.malloc(width)) {
+            STBRectPack.stbrp_init_target(ctx, width, height, nodes);
+            STBRectPack.stbrp_setup_heuristic(ctx, heuristic.stbHeuristic);
+            if (packOrder == null) {
+                return STBRectPack.stbrp_pack_rects(ctx, rects) != 0;
+            }
+            // Packed one by one, as stb_rect_pack sorts every batch by height
+            final long base = rects.address();
+            for (int index : packOrder) {
+                if (STBRectPack.nstbrp_pack_rects(ctx.address(), base + (long) index * STBRPRect.SIZEOF, 1) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return The indices in packing order, or null to let stb_rect_pack sort
+     */
+    private static int[] packOrder(int[] widths, int[] heights, SortOrder order) {
+        if (order.comparator == null) {
+            return null;
+        }
+        final long[][] sizes = new long[widths.length][];
+        for (int i = 0; i < widths.length; i++) {
+            sizes[i] = new long[] { widths[i], heights[i], i };
+        }
+        Arrays.sort(sizes, order.comparator.reversed());
+        final int[] packOrder = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            packOrder[i] = (int) sizes[i][2];
+        }
+        return packOrder;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int ceilLog2(long value) {
+        return value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1);
+    }
+}
@@ -0,0 +1,422 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import me.eigenraven.lwjgl3ify.Lwjgl3ify;
+import me.eigenraven.lwjgl3ify.Tags;
+import me.eigenraven.lwjgl3ify.core.Config;
+
+import net.minecraft.launchwrapper.Launch;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * On-disk cache of the RGBA pixels stb_image decoded textures into, so that warm starts and resource reloads skip the
+ * PNG decoding of textures that were decoded before.
+ * <p>
+ * Works like the transformer cache: a single append-only pack file, keyed by a 128-bit hash of the resource path and
+ * the encoded file contents, with the last launch each record was used in for LRU eviction when the pack is opened
+ * above the size cap. The pack is memory-mapped read-only and cached images wrap the mapped pixels directly, they are
+ * only copied if the image gets modified. Records stored during this launch are mapped as they are needed, so a
+ * resource reload hits them as well. Sprites are stored after their transparent pixels were fixed, with a flag so
+ * cached sprites skip the fix. Each record has a CRC32 of its pixels, checked the first time a record is used in a
+ * launch, a record that doesn't match it counts as a miss.
+ */
+public class DecodedTextureCache {
+
+    private static final int MAGIC = 0x4C33_5458; // "L3TX"
+    private static final int FORMAT_VERSION = 3;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 36;
+    private static final int SESSION_OFFSET = 8;
+    private static final int VERSION_HASH_OFFSET = 12;
+    private static final int LAST_USED_OFFSET = 16;
+    private static final int FLAGS_OFFSET = 28;
+    private static final int CRC_OFFSET = 32;
+    /** The pixels were stored after {@link NativeBackedImage#fixTransparentPixels()} */
+    private static final int FLAG_TRANSPARENT_FIXED = 1;
+    /** Evict down to this fraction of the size cap, so we don't have to compact on every launch */
+    private static final double EVICTION_TARGET = 0.75;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static DecodedTextureCache instance = null;
+    private static boolean initialized = false;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long maxSize;
+    private final int session;
+    private final Map<Key, Entry> index = new ConcurrentHashMap<>();
+    /** Read-only mappings of the pack by their start offset, each ends at a record boundary */
+    private final TreeMap<Long, MappedByteBuffer> mappings = new TreeMap<>();
+    private long mappedEnd;
+    private long fileEnd;
+    private boolean full = false;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder bytesStored = new LongAdder();
+    private int evictedOnOpen = 0;
+
+    /**
+     * Opens the cache on first use, textures are loaded before any mod lifecycle event lwjgl3ify could hook.
+     *
+     * @return The cache, or null if it is disabled or could not be opened
+     */
+    public static synchronized DecodedTextureCache get() {
+        if (initialized) {
+            return instance;
+        }
+        initialized = true;
+        if (!Config.DECODED_TEXTURE_CACHE) {
+            return null;
+        }
+        final File dir = new File(Launch.minecraftHome, "lwjgl3ify-cache");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Lwjgl3ify.LOG.warn("Could not create texture cache directory {}", dir);
+            return null;
+        }
+        final File file = new File(dir, "decoded-textures.pack");
+        if (Boolean.getBoolean("lwjgl3ify.clearTextureCache") && file.exists()) {
+            Lwjgl3ify.LOG.info("Clearing the texture cache at {}", file);
+            if (!file.delete()) {
+                Lwjgl3ify.LOG.warn("Could not delete the texture cache at {}", file);
+            }
+        }
+        try {
+            instance = new DecodedTextureCache(file, Config.DECODED_TEXTURE_CACHE_MAX_SIZE_MB * 1024L * 1024L);
+        } catch (IOException | RuntimeException e) {
+            Lwjgl3ify.LOG.warn("Could not open the texture cache at {}, it will be disabled", file, e);
+            instance = null;
+        }
+        return instance;
+    }
+
+    DecodedTextureCache(File file, long maxSize) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        if (file.exists() && !isValidPack(file)) {
+            Lwjgl3ify.LOG.info("Texture cache {} is from a different lwjgl3ify version, recreating", file);
+            if (!file.delete()) {
+                throw new IOException("Could not delete stale texture cache " + file);
+            }
+        }
+        if (file.exists() && file.length() > maxSize) {
+            compact(file, (long) (maxSize * EVICTION_TARGET));
+        }
+
+        @SuppressWarnings("resource")
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        if (channel.size() < FILE_HEADER_SIZE) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(0).putLong(versionHash());
+            header.rewind();
+            channel.truncate(0);
+            channel.write(header, 0);
+        }
+        final ByteBuffer sessionBuf = ByteBuffer.allocate(4);
+        channel.read(sessionBuf, SESSION_OFFSET);
+        this.session = sessionBuf.getInt(0) + 1;
+        sessionBuf.putInt(0, session);
+        sessionBuf.rewind();
+        channel.write(sessionBuf, SESSION_OFFSET);
+
+        final long size = channel.size();
+        this.fileEnd = scanRecords(size);
+        if (fileEnd < size) {
+            Lwjgl3ify.LOG.warn("Truncating corrupted tail of the texture cache {}", file);
+            channel.truncate(fileEnd);
+        }
+        this.mappedEnd = FILE_HEADER_SIZE;
+        mapUpTo(fileEnd);
+    }
+
+    private static long versionHash() {
+        return HASH.hashString(Tags.VERSION, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static boolean isValidPack(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < FILE_HEADER_SIZE) {
+                return false;
+            }
+            final int magic = in.readInt();
+            final int format = in.readInt();
+            in.seek(VERSION_HASH_OFFSET);
+            final long version = in.readLong();
+            return magic == MAGIC && format == FORMAT_VERSION && version == versionHash();
+        }
+    }
+
+    /** Builds the in-memory index from the record headers, returns the end of the last valid record. */
+    private long scanRecords(long size) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long pos = FILE_HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, pos);
+            final int width = header.getInt(20);
+            final int height = header.getInt(24);
+            final long length = (long) width * height * 4;
+            if (width <= 0 || height <= 0 || pos + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            index.put(
+                    new Key(header.getLong(0), header.getLong(8)),
+                    new Entry(pos, width, height, header.getInt(FLAGS_OFFSET), header.getInt(CRC_OFFSET)));
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        return pos;
+    }
+
+    /** Rewrites the pack keeping only the most recently used records that fit in targetSize bytes. */
+    private void compact(File file, long targetSize) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final List<long[]> records = new ArrayList<>(); // position, lastUsed, length
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+                RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            final long size = in.length();
+            long pos = FILE_HEADER_SIZE;
+            while (pos + RECORD_HEADER_SIZE <= size) {
+                in.seek(pos + LAST_USED_OFFSET);
+                final int lastUsed = in.readInt();
+                final long length = (long) in.readInt() * in.readInt() * 4;
+                if (length <= 0 || pos + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                records.add(new long[] { pos, lastUsed, length });
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            records.sort((a, b) -> Long.compare(b[1], a[1]));
+
+            final byte[] header = new byte[FILE_HEADER_SIZE];
+            in.seek(0);
+            in.readFully(header);
+            out.setLength(0);
+            out.write(header);
+            long written = FILE_HEADER_SIZE;
+            final FileChannel inChannel = in.getChannel();
+            final FileChannel outChannel = out.getChannel();
+            for (long[] record : records) {
+                final long total = RECORD_HEADER_SIZE + record[2];
+                if (written + total > targetSize) {
+                    evictedOnOpen++;
+                    continue;
+                }
+                long copied = 0;
+                while (copied < total) {
+                    copied += inChannel.transferTo(record[0] + copied, total - copied, outChannel);
+                }
+                written += total;
+            }
+        }
+        if (!file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with the compacted texture cache");
+        }
+        Lwjgl3ify.LOG.info("Evicted {} least recently used entries from the texture cache {}", evictedOnOpen, file);
+    }
+
+    /** Maps the records written since the last mapping, guarded by this */
+    private void mapUpTo(long end) throws IOException {
+        if (end <= mappedEnd) {
+            return;
+        }
+        final MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, mappedEnd, end - mappedEnd);
+        mappings.put(mappedEnd, mapping);
+        mappedEnd = end;
+    }
+
+    /**
+     * @param path    The resource path the image was read from
+     * @param encoded The encoded image file, between its position and limit
+     * @return The cache key for the given image
+     */
+    public Key key(String path, ByteBuffer encoded) {
+        final Hasher hasher = HASH.newHasher(encoded.remaining() + 64);
+        hasher.putString(path, StandardCharsets.UTF_8);
+        final byte[] chunk = new byte[8192];
+        final ByteBuffer view = encoded.duplicate();
+        while (view.hasRemaining()) {
+            final int length = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, length);
+            hasher.putBytes(chunk, 0, length);
+        }
+        final ByteBuffer hash = ByteBuffer.wrap(hasher.hash().asBytes());
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    /**
+     * @return An image wrapping the cached pixels, or null if the image is not in the cache
+     */
+    public NativeBackedImage get(Key key) {
+        final Entry entry = index.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        try {
+            final long address;
+            synchronized (this) {
+                mapUpTo(fileEnd);
+                final Map.Entry<Long, MappedByteBuffer> mapping = mappings.floorEntry(entry.position);
+                address = MemoryUtil.memAddress(mapping.getValue()) + entry.position
+                        - mapping.getKey()
+                        + RECORD_HEADER_SIZE;
+            }
+            if (!entry.verified) {
+                if (crc32(address, entry.width * entry.height * 4) != entry.crc) {
+                    Lwjgl3ify.LOG.warn("Corrupted texture cache entry at {}, ignoring it", entry.position);
+                    index.remove(key);
+                    misses.increment();
+                    return null;
+                }
+                entry.verified = true;
+            }
+            final ByteBuffer lastUsed = ByteBuffer.allocate(4);
+            lastUsed.putInt(0, session);
+            channel.write(lastUsed, entry.position + LAST_USED_OFFSET);
+            hits.increment();
+            return NativeBackedImage.wrapMapped(
+                    entry.width,
+                    entry.height,
+                    address,
+                    (entry.flags & FLAG_TRANSPARENT_FIXED) != 0);
+        } catch (IOException | RuntimeException e) {
+            Lwjgl3ify.LOG.warn("Could not read from the texture cache", e);
+            index.remove(key);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the pixels of a freshly decoded image, unless the cache is full.
+     */
+    public void put(Key key, NativeBackedImage image) {
+        final int length = image.getWidth() * image.getHeight() * 4;
+        final int flags = image.isTransparentFixed() ? FLAG_TRANSPARENT_FIXED : 0;
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putLong(key.hi).putLong(key.lo).putInt(session).putInt(image.getWidth()).putInt(image.getHeight());
+        final int crc = crc32(image.address(), length);
+        header.putInt(flags).putInt(crc);
+        header.rewind();
+        final ByteBuffer pixels = MemoryUtil.memByteBuffer(image.address(), length);
+        synchronized (this) {
+            if (full || index.containsKey(key)) {
+                return;
+            }
+            if (fileEnd + RECORD_HEADER_SIZE + length > maxSize) {
+                full = true;
+                Lwjgl3ify.LOG.info("Texture cache {} is full, not storing any more textures this launch", file);
+                return;
+            }
+            try {
+                final long position = fileEnd;
+                while (header.hasRemaining()) {
+                    channel.write(header, position + header.position());
+                }
+                while (pixels.hasRemaining()) {
+                    channel.write(pixels, position + RECORD_HEADER_SIZE + pixels.position());
+                }
+                fileEnd += RECORD_HEADER_SIZE + length;
+                final Entry entry = new Entry(position, image.getWidth(), image.getHeight(), flags, crc);
+                // Stored from the pixels just checksummed
+                entry.verified = true;
+                index.put(key, entry);
+                stores.increment();
+                bytesStored.add(RECORD_HEADER_SIZE + length);
+            } catch (IOException e) {
+                Lwjgl3ify.LOG.warn("Could not write to the texture cache", e);
+                full = true;
+            }
+        }
+    }
+
+    private static int crc32(long address, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(MemoryUtil.memByteBuffer(address, length));
+        return (int) crc.getValue();
+    }
+
+    public static void logStatistics() {
+        final DecodedTextureCache cache;
+        synchronized (DecodedTextureCache.class) {
+            cache = instance;
+        }
+        if (cache == null) {
+            return;
+        }
+        Lwjgl3ify.LOG.info(
+                "Texture cache {}: {} hits, {} misses, {} new entries ({} KiB), {} entries total, {} KiB on disk",
+                cache.file,
+                cache.hits.sum(),
+                cache.misses.sum(),
+                cache.stores.sum(),
+                cache.bytesStored.sum() / 1024,
+                cache.index.size(),
+                cache.fileEnd / 1024);
+    }
+
+    public static final class Key {
+
+        final long hi;
+        final long lo;
+
+        Key(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return hi == key.hi && lo == key.lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hi ^ (hi >>> 32));
+        }
+    }
+
+    private static final class Entry {
+
+        final long position;
+        final int width;
+        final int height;
+        final int flags;
+        final int crc;
+        /** Whether the pixels were checked against the CRC in this launch */
+        volatile boolean verified = false;
+
+        Entry(long position, int width, int height, int flags, int crc) {
+            this.position = position;
+            this.width = width;
+            this.height = height;
+            this.flags = flags;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+/**
+ * Implemented by texture atlas sprites through a mixin, to upload sprites whose pixels are still in native memory.
+ */
+public interface INativeSprite {
+
+    /**
+     * Uploads the sprite's first frame into the currently bound atlas texture at its stitched position, if its pixels
+     * are still only in native memory.
+     *
+     * @return Whether the sprite was uploaded, if not the caller uploads it through the vanilla path
+     */
+    boolean lwjgl3ify$uploadNative();
+}
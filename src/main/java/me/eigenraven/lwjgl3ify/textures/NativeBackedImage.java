@@ -1,6 +1,7 @@
 package me.eigenraven.lwjgl3ify.textures;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -9,28 +10,74 @@ import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
+import me.eigenraven.lwjgl3ify.core.StartupTracer;
+
 import org.apache.commons.io.IOUtils;
+import org.lwjgl.opengl.GL11;
 import org.lwjgl.stb.STBImage;
+import org.lwjgl.stb.STBImageResize;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
 public class NativeBackedImage extends BufferedImage implements AutoCloseable {
 
+    /** Where the pixels live, which decides how they are freed */
+    private enum Storage {
+        /** Allocated by stb_image */
+        STB,
+        /** Allocated with {@link MemoryUtil#nmemAlloc(long)} */
+        ALLOCATED,
+        /** Read-only memory of the decoded texture cache, never freed */
+        MAPPED
+    }
+
     private final int width;
     private final int height;
     private long pointer;
     private final int sizeBytes;
+    private Storage storage;
+    /** Whether {@link #fixTransparentPixels()} ran on the pixels, possibly before they were cached */
+    private boolean transparentFixed;
+    /** Where to store the pixels of a freshly decoded image once they are final, null if not cached */
+    private DecodedTextureCache pendingCache;
+    private DecodedTextureCache.Key pendingKey;
+
+    private NativeBackedImage(int width, int height, long pointer, Storage storage) {
+        this(width, height, pointer, storage, true);
+    }
 
-    private NativeBackedImage(int width, int height, long pointer) {
-        super(width, height, TYPE_INT_ARGB);
+    /**
+     * @param heapRaster Whether the BufferedImage gets its own raster of the image's size, like vanilla expects of
+     *                   images it reads. Mip levels are only read through {@link #getRGB(int, int, int, int, int[], int,
+     *                   int)} and uploaded, they get a single pixel raster instead of one as large as their pixels.
+     */
+    private NativeBackedImage(int width, int height, long pointer, Storage storage, boolean heapRaster) {
+        super(
+                ColorModel.getRGBdefault(),
+                ColorModel.getRGBdefault()
+                        .createCompatibleWritableRaster(heapRaster ? width : 1, heapRaster ? height : 1),
+                false,
+                null);
         this.width = width;
         this.height = height;
         this.pointer = pointer;
+        this.storage = storage;
 
         // 4 channels: RGBA
         this.sizeBytes = width * height * 4;
     }
 
+    /**
+     * @param address          Pixels in the memory-mapped texture cache, they are copied before the image modifies
+     *                         them
+     * @param transparentFixed Whether the pixels were stored after {@link #fixTransparentPixels()}
+     */
+    static NativeBackedImage wrapMapped(int width, int height, long address, boolean transparentFixed) {
+        final NativeBackedImage image = new NativeBackedImage(width, height, address, Storage.MAPPED);
+        image.transparentFixed = transparentFixed;
+        return image;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -39,28 +86,58 @@ public class NativeBackedImage extends BufferedImage implements AutoCloseable {
         return height;
     }
 
-    @Override
-    public int[] getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
-
-        // Inverse itr for cache coherency
-        for (int z = startY; z < h; z++) {
-            for (int x = startX; x < w; x++) {
-                int color = MemoryUtil.memGetInt(this.pointer + ((x + z * width) * 4));
-                // ABGR -> ARGB
-                int a = (color >> 24) & 0xFF;
-                int b = (color >> 16) & 0xFF;
-                int g = (color >> 8) & 0xFF;
-                int r = (color >> 0) & 0xFF;
+    /**
+     * @return Address of the RGBA pixels, valid until the image is closed
+     */
+    public long address() {
+        return pointer;
+    }
 
-                int finalColor = (a << 24) | (r << 16) | (g << 8) | b;
+    boolean isTransparentFixed() {
+        return transparentFixed;
+    }
 
-                rgbArray[x + (z * width)] = finalColor;
+    /**
+     * Copies the region row by row into the array, then converts the copied pixels in place.
+     */
+    @Override
+    public int[] getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+        if (rgbArray == null) {
+            rgbArray = new int[offset + Math.max(0, h) * scansize];
+        }
+        if (w <= 0 || h <= 0) {
+            return rgbArray;
+        }
+        checkBounds(startX, startY);
+        checkBounds(startX + w - 1, startY + h - 1);
+        if (this.pointer == 0) {
+            throw new IllegalStateException("Image was already freed");
+        }
+        final long regionStart = this.pointer + ((long) startY * width + startX) * 4;
+        if (w == width && scansize == w) {
+            // Contiguous in both, a single copy
+            MemoryUtil.memIntBuffer(regionStart, w * h).get(rgbArray, offset, w * h);
+            abgrToArgb(rgbArray, offset, w * h);
+        } else {
+            for (int row = 0; row < h; row++) {
+                final int rowOffset = offset + row * scansize;
+                MemoryUtil.memIntBuffer(regionStart + (long) row * width * 4, w).get(rgbArray, rowOffset, w);
+                abgrToArgb(rgbArray, rowOffset, w);
             }
         }
-
         return rgbArray;
     }
 
+    /**
+     * Swaps the red and blue channels, a plain loop over the array without branches that the JIT vectorizes.
+     */
+    static void abgrToArgb(int[] pixels, int offset, int count) {
+        for (int i = offset, end = offset + count; i < end; i++) {
+            final int color = pixels[i];
+            pixels[i] = (color & 0xFF00FF00) | ((color >> 16) & 0xFF) | ((color & 0xFF) << 16);
+        }
+    }
+
     @Override
     public int getRGB(int x, int z) {
         checkBounds(x, z);
@@ -71,10 +148,213 @@ public class NativeBackedImage extends BufferedImage implements AutoCloseable {
     @Override
     public void setRGB(int x, int z, int rgb) {
         checkBounds(x, z);
+        // The cache keeps the pixels as decoded
+        storeInCache();
+        ensureWritable();
 
         MemoryUtil.memPutInt(this.pointer + ((x + z * width) * 4), rgb);
     }
 
+    /**
+     * Native equivalent of the sprite's {@code fixTransparentPixels}: gives fully transparent pixels the average colour
+     * of the opaque ones, so they don't darken the edges when the texture is filtered. Freshly decoded images are stored
+     * in the decoded texture cache after the fix, so cached sprites skip it.
+     */
+    public void fixTransparentPixels() {
+        if (transparentFixed) {
+            return;
+        }
+        fixTransparentPixelsUncached();
+        transparentFixed = true;
+        storeInCache();
+    }
+
+    private void fixTransparentPixelsUncached() {
+        final int pixels = width * height;
+        long r = 0, g = 0, b = 0;
+        int opaque = 0;
+        for (int i = 0; i < pixels; i++) {
+            final int color = MemoryUtil.memGetInt(this.pointer + i * 4L);
+            if ((color >>> 24) != 0) {
+                r += color & 0xFF;
+                g += (color >> 8) & 0xFF;
+                b += (color >> 16) & 0xFF;
+                opaque++;
+            }
+        }
+        if (opaque == 0) {
+            return;
+        }
+        // ABGR with a zero alpha
+        final int average = (int) (b / opaque) << 16 | (int) (g / opaque) << 8 | (int) (r / opaque);
+        for (int i = 0; i < pixels; i++) {
+            final int color = MemoryUtil.memGetInt(this.pointer + i * 4L);
+            // Only copies mapped pixels if one of them actually changes
+            if ((color >>> 24) == 0 && color != average) {
+                ensureWritable();
+                MemoryUtil.memPutInt(this.pointer + i * 4L, average);
+            }
+        }
+    }
+
+    /**
+     * Vanilla's {@code generateMipmapData} loops over the length of the frame data array (the mip levels plus one)
+     * instead of the pixels, so only the first few pixels decide whether a sprite gets cutout mip levels.
+     *
+     * @param pixelCount How many leading pixels to check, vanilla checks the length of the frame data array
+     * @return Whether any of those pixels is fully transparent, which makes vanilla generate cutout mip levels
+     */
+    public boolean hasTransparentPixels(int pixelCount) {
+        final int pixels = Math.min(pixelCount, width * height);
+        for (int i = 0; i < pixels; i++) {
+            if ((MemoryUtil.memGetInt(this.pointer + i * 4L) >>> 24) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Downsamples the image to half its width and height for the next mip level. Opaque sprites use a box filter in
+     * sRGB space from stb_image_resize, wrapping around the edges as the sprite tiles, which stays within a few steps
+     * per channel of vanilla's gamma 2.2 average. Sprites with transparent pixels use vanilla's cutout blend instead,
+     * see {@link #blendCutout(int, int, int, int)}.
+     *
+     * @param cutout Whether the full size image {@link #hasTransparentPixels(int)}, vanilla decides this once per
+     *               sprite from its leading pixels
+     * @return The next mip level, owned by the caller
+     */
+    public NativeBackedImage halfSize(boolean cutout) {
+        final int halfWidth = Math.max(1, width >> 1);
+        final int halfHeight = Math.max(1, height >> 1);
+        final long half = MemoryUtil.nmemAllocChecked((long) halfWidth * halfHeight * 4);
+        if (cutout) {
+            for (int y = 0; y < halfHeight; y++) {
+                final long top = this.pointer + (long) Math.min(2 * y, height - 1) * width * 4;
+                final long bottom = this.pointer + (long) Math.min(2 * y + 1, height - 1) * width * 4;
+                for (int x = 0; x < halfWidth; x++) {
+                    final long left = Math.min(2 * x, width - 1) * 4L;
+                    final long right = Math.min(2 * x + 1, width - 1) * 4L;
+                    MemoryUtil.memPutInt(
+                            half + ((long) y * halfWidth + x) * 4,
+                            blendCutout(
+                                    MemoryUtil.memGetInt(top + left),
+                                    MemoryUtil.memGetInt(top + right),
+                                    MemoryUtil.memGetInt(bottom + left),
+                                    MemoryUtil.memGetInt(bottom + right)));
+                }
+            }
+            return new NativeBackedImage(halfWidth, halfHeight, half, Storage.ALLOCATED, false);
+        }
+        final int result = STBImageResize.nstbir_resize_uint8_generic(
+                this.pointer,
+                width,
+                height,
+                0,
+                half,
+                halfWidth,
+                halfHeight,
+                0,
+                4,
+                3,
+                0,
+                STBImageResize.STBIR_EDGE_WRAP,
+                STBImageResize.STBIR_FILTER_BOX,
+                STBImageResize.STBIR_COLORSPACE_SRGB,
+                MemoryUtil.NULL);
+        if (result == 0) {
+            MemoryUtil.nmemFree(half);
+            throw new IllegalStateException("Could not downsample a " + width + "x" + height + " image");
+        }
+        return new NativeBackedImage(halfWidth, halfHeight, half, Storage.ALLOCATED, false);
+    }
+
+    /** {@code (float) Math.pow(c / 255f, 2.2)} for every channel value, as vanilla's blend computes it */
+    private static final float[] GAMMA_TO_LINEAR = new float[256];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            GAMMA_TO_LINEAR[c] = (float) Math.pow((double) ((float) c / 255.0F), 2.2D);
+        }
+    }
+
+    /**
+     * Vanilla's {@code TextureUtil.func_147943_a} for sprites with transparent pixels: averages the channels of the
+     * visible pixels with gamma 2.2, counting the transparent ones as black, and makes the result fully transparent if
+     * its alpha is below 96. The float arithmetic follows vanilla's order, so the results are identical. Each channel
+     * is blended on its own, so the RGBA byte order doesn't matter.
+     */
+    static int blendCutout(int topLeft, int topRight, int bottomLeft, int bottomRight) {
+        float a = 0.0F, c2 = 0.0F, c1 = 0.0F, c0 = 0.0F;
+        for (int i = 0; i < 4; i++) {
+            final int color = i == 0 ? topLeft : i == 1 ? topRight : i == 2 ? bottomLeft : bottomRight;
+            if ((color >> 24) != 0) {
+                a += GAMMA_TO_LINEAR[(color >> 24) & 0xFF];
+                c2 += GAMMA_TO_LINEAR[(color >> 16) & 0xFF];
+                c1 += GAMMA_TO_LINEAR[(color >> 8) & 0xFF];
+                c0 += GAMMA_TO_LINEAR[color & 0xFF];
+            }
+        }
+        a /= 4.0F;
+        c2 /= 4.0F;
+        c1 /= 4.0F;
+        c0 /= 4.0F;
+        int alpha = (int) (Math.pow((double) a, 0.45454545454545453D) * 255.0D);
+        if (alpha < 96) {
+            alpha = 0;
+        }
+        return alpha << 24 | (int) (Math.pow((double) c2, 0.45454545454545453D) * 255.0D) << 16
+                | (int) (Math.pow((double) c1, 0.45454545454545453D) * 255.0D) << 8
+                | (int) (Math.pow((double) c0, 0.45454545454545453D) * 255.0D);
+    }
+
+    /**
+     * Stores a freshly decoded image in the decoded texture cache, at the latest before its pixels are modified other
+     * than by {@link #fixTransparentPixels()} or freed.
+     */
+    private void storeInCache() {
+        if (this.pendingCache == null) {
+            return;
+        }
+        final DecodedTextureCache cache = this.pendingCache;
+        this.pendingCache = null;
+        cache.put(this.pendingKey, this);
+        this.pendingKey = null;
+    }
+
+    /**
+     * Copies the pixels out of the read-only texture cache before they are modified.
+     */
+    private void ensureWritable() {
+        if (this.storage != Storage.MAPPED) {
+            return;
+        }
+        final long copy = MemoryUtil.nmemAllocChecked(sizeBytes);
+        MemoryUtil.memCopy(this.pointer, copy, sizeBytes);
+        this.pointer = copy;
+        this.storage = Storage.ALLOCATED;
+    }
+
+    /**
+     * Uploads the pixels straight from native memory into the currently bound texture, without copying them to the
+     * heap first.
+     */
+    public void uploadSubImage(int level, int x, int y) {
+        if (this.pointer == 0) {
+            throw new IllegalStateException("Image was already freed");
+        }
+        GL11.nglTexSubImage2D(
+                GL11.GL_TEXTURE_2D,
+                level,
+                x,
+                y,
+                width,
+                height,
+                GL11.GL_RGBA,
+                GL11.GL_UNSIGNED_BYTE,
+                this.pointer);
+    }
+
     @Override
     public BufferedImage getSubimage(int x, int y, int w, int h) {
         throw new UnsupportedOperationException("Not implemented");
@@ -83,7 +363,12 @@ public class NativeBackedImage extends BufferedImage implements AutoCloseable {
     @Override
     public void close() throws Exception {
         if (this.pointer != 0) {
-            STBImage.nstbi_image_free(this.pointer);
+            storeInCache();
+            switch (this.storage) {
+                case STB -> STBImage.nstbi_image_free(this.pointer);
+                case ALLOCATED -> MemoryUtil.nmemFree(this.pointer);
+                case MAPPED -> {}
+            }
 
             this.pointer = 0;
         }
@@ -99,26 +384,31 @@ public class NativeBackedImage extends BufferedImage implements AutoCloseable {
     // Parsing
 
     public static NativeBackedImage make(InputStream stream) throws IOException {
-        ByteBuffer imgBuf = null;
+        return make(stream, null);
+    }
 
+    /**
+     * @param cacheKey The resource path the stream was opened for, to look the image up in the decoded texture cache,
+     *                 or null to always decode it
+     */
+    public static NativeBackedImage make(InputStream stream, String cacheKey) throws IOException {
+        if (!StartupTracer.enabled) {
+            return load(stream, cacheKey);
+        }
+        final long start = System.nanoTime();
         try {
-            imgBuf = readResource(stream);
-            imgBuf.rewind();
-
-            try (MemoryStack memoryStack = MemoryStack.stackPush()) {
-                IntBuffer width = memoryStack.mallocInt(1);
-                IntBuffer height = memoryStack.mallocInt(1);
-                IntBuffer channels = memoryStack.mallocInt(1);
-
-                // 4 channels: RGBA
-                ByteBuffer buf = STBImage.stbi_load_from_memory(imgBuf, width, height, channels, 4);
-                if (buf == null) {
-                    throw new IOException("Could not load image: " + STBImage.stbi_failure_reason());
-                }
+            return load(stream, cacheKey);
+        } finally {
+            StartupTracer.span("NativeBackedImage", "make", start);
+        }
+    }
 
-                return new NativeBackedImage(width.get(0), height.get(0), MemoryUtil.memAddress(buf));
-            }
+    private static NativeBackedImage load(InputStream stream, String cacheKey) throws IOException {
+        ByteBuffer imgBuf = null;
 
+        try {
+            imgBuf = readResource(stream);
+            return decode(imgBuf, cacheKey);
         } finally {
             // free
             MemoryUtil.memFree(imgBuf);
@@ -126,7 +416,77 @@ public class NativeBackedImage extends BufferedImage implements AutoCloseable {
         }
     }
 
-    private static ByteBuffer readResource(InputStream inputStream) throws IOException {
+    /**
+     * Takes the pixels from the decoded texture cache if possible, decodes them otherwise. Decoded images are stored in
+     * the cache once their pixels are final, see {@link #storeInCache()}.
+     *
+     * @param imgBuf   Encoded image as read by {@link #readResource(InputStream)}, not freed by this method
+     * @param cacheKey The resource path the image was read from, or null to skip the cache
+     */
+    static NativeBackedImage decode(ByteBuffer imgBuf, String cacheKey) throws IOException {
+        final DecodedTextureCache cache = cacheKey == null ? null : DecodedTextureCache.get();
+        if (cache == null) {
+            return decode(imgBuf);
+        }
+        imgBuf.rewind();
+        final DecodedTextureCache.Key key = cache.key(cacheKey, imgBuf);
+        final NativeBackedImage cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final NativeBackedImage image = decode(imgBuf);
+        image.pendingCache = cache;
+        image.pendingKey = key;
+        return image;
+    }
+
+    /**
+     * @param imgBuf Encoded image as read by {@link #readResource(InputStream)}, not freed by this method
+     */
+    static NativeBackedImage decode(ByteBuffer imgBuf) throws IOException {
+        imgBuf.rewind();
+
+        try (MemoryStack memoryStack = MemoryStack.stackPush()) {
+            IntBuffer width = memoryStack.mallocInt(1);
+            IntBuffer height = memoryStack.mallocInt(1);
+            IntBuffer channels = memoryStack.mallocInt(1);
+
+            // 4 channels: RGBA
+            ByteBuffer buf = STBImage.stbi_load_from_memory(imgBuf, width, height, channels, 4);
+            if (buf == null) {
+                throw new IOException("Could not load image: " + STBImage.stbi_failure_reason());
+            }
+
+            return new NativeBackedImage(width.get(0), height.get(0), MemoryUtil.memAddress(buf), Storage.STB);
+        }
+    }
+
+    /**
+     * Reads only the image header.
+     *
+     * @param imgBuf Encoded image as read by {@link #readResource(InputStream)}
+     * @return The number of bytes {@link #decode(ByteBuffer)} will allocate, or 0 if the header can't be parsed
+     */
+    static long decodedSize(ByteBuffer imgBuf) {
+        imgBuf.rewind();
+
+        try (MemoryStack memoryStack = MemoryStack.stackPush()) {
+            IntBuffer width = memoryStack.mallocInt(1);
+            IntBuffer height = memoryStack.mallocInt(1);
+            IntBuffer channels = memoryStack.mallocInt(1);
+
+            if (!STBImage.stbi_info_from_memory(imgBuf, width, height, channels)) {
+                return 0;
+            }
+            return (long) width.get(0) * height.get(0) * 4;
+        }
+    }
+
+    /**
+     * @return A buffer allocated with {@link MemoryUtil#memAlloc(int)}, which the caller has to free, limited to the
+     *         file contents
+     */
+    static ByteBuffer readResource(InputStream inputStream) throws IOException {
         ByteBuffer byteBuffer;
         if (inputStream instanceof FileInputStream) {
             FileChannel fileChannel = ((FileInputStream) inputStream).getChannel();
@@ -150,6 +510,7 @@ public class NativeBackedImage extends BufferedImage implements AutoCloseable {
             }
         }
 
+        byteBuffer.flip();
         return byteBuffer;
     }
 }
@@ -0,0 +1,181 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import me.eigenraven.lwjgl3ify.Lwjgl3ify;
+
+import net.minecraft.client.Minecraft;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * The frame data of a static sprite loaded with stb_image, standing in for the sprite's list of {@code int[][]}
+ * frames. The pixels stay in native memory and are uploaded into the atlas from there, saving the copy into an
+ * {@code int[]} when loading the sprite and the one into the upload buffer when uploading it. The mip levels are
+ * generated in native memory by the {@link SpriteMipmapGenerator} as well. Anything reading the frame data before the
+ * upload gets it copied to the heap, after which the sprite takes the vanilla path.
+ */
+public class NativeSpriteFrames extends AbstractList<int[][]> {
+
+    /** Mip levels, starting with the full size image, null once copied to the heap or cleared */
+    private NativeBackedImage[] levels;
+    /** Length of the vanilla frame data array, the mip levels the sprite was loaded for plus one */
+    private final int frameLength;
+    /** Mip levels being generated in the background, null if none were requested or they were taken */
+    private Future<NativeBackedImage[]> pendingMipmaps;
+    /** Frame data copied to the heap, null until first read */
+    private int[][] frame;
+
+    /**
+     * @param mipmapLevels The mip levels to start generating right away, the atlas may use fewer of them in the end
+     * @param frameLength  The length of the frame data array vanilla would create for the sprite
+     */
+    public NativeSpriteFrames(NativeBackedImage image, int mipmapLevels, int frameLength) {
+        this.levels = new NativeBackedImage[] { image };
+        this.frameLength = frameLength;
+        if (mipmapLevels > 0) {
+            this.pendingMipmaps = SpriteMipmapGenerator.submit(image, mipmapLevels, frameLength);
+        }
+    }
+
+    /**
+     * The native equivalent of the sprite's {@code generateMipmaps}.
+     *
+     * @return Whether the mip levels were generated, if not the caller generates them from the heap data
+     */
+    public boolean generateMipmaps(int mipmapLevels) {
+        if (levels == null) {
+            return false;
+        }
+        if (levels.length > 1) {
+            // Generated before, generate them again from the full size image
+            closeAll(levels, 1);
+            levels = new NativeBackedImage[] { levels[0] };
+        }
+        NativeBackedImage[] mipmaps = awaitMipmaps();
+        if (mipmapLevels > 0 && (mipmaps == null || mipmaps.length < mipmapLevels)) {
+            // The atlas asks for more levels than were started at load time. That happens for sprites whose size
+            // isn't a power of two: they were started with the trailing zero bits of their width (3 for 24x24), while
+            // the atlas lowers its levels to the floor log2 of its smallest sprite (4 if that is 16x16)
+            closeAll(mipmaps, 0);
+            try {
+                mipmaps = SpriteMipmapGenerator
+                        .await(SpriteMipmapGenerator.submit(levels[0], mipmapLevels, frameLength));
+            } catch (Exception e) {
+                Lwjgl3ify.LOG.warn("Could not generate the mip levels of a sprite, falling back to vanilla", e);
+                return false;
+            }
+        }
+        final NativeBackedImage[] chain = Arrays.copyOf(levels, 1 + mipmapLevels);
+        for (int level = 1; level <= mipmapLevels; level++) {
+            chain[level] = mipmaps[level - 1];
+        }
+        // The atlas lowered its mip levels to fit its smallest sprite
+        closeAll(mipmaps, mipmapLevels);
+        levels = chain;
+        return true;
+    }
+
+    /**
+     * Uploads the frame into the currently bound atlas texture, the equivalent of
+     * {@code TextureUtil.uploadTextureMipmap(frame, width, height, x, y, false, false)}.
+     *
+     * @return Whether the frame was uploaded, if not the caller uploads the heap data
+     */
+    public boolean upload(int x, int y) {
+        if (levels == null || Minecraft.getMinecraft().gameSettings.anaglyph) {
+            // Anaglyph colours are applied while copying into the upload buffer
+            return false;
+        }
+        final boolean mipmapped = levels.length > 1;
+        GL11.glTexParameteri(
+                GL11.GL_TEXTURE_2D,
+                GL11.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GL11.GL_NEAREST_MIPMAP_LINEAR : GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+        for (int level = 0; level < levels.length; level++) {
+            levels[level].uploadSubImage(level, x >> level, y >> level);
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the pixels are still only in native memory
+     */
+    public boolean isNative() {
+        return levels != null;
+    }
+
+    @Override
+    public int[][] get(int index) {
+        if (index != 0 || (levels == null && frame == null)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (frame == null) {
+            // Levels that weren't generated yet are left to vanilla, like the ones without a file are
+            final int[][] data = new int[Math.max(frameLength, levels.length)][];
+            for (int level = 0; level < levels.length; level++) {
+                final NativeBackedImage image = levels[level];
+                final int width = image.getWidth();
+                final int height = image.getHeight();
+                data[level] = image.getRGB(0, 0, width, height, new int[width * height], 0, width);
+            }
+            frame = data;
+            freeLevels();
+        }
+        return frame;
+    }
+
+    @Override
+    public int size() {
+        return levels == null && frame == null ? 0 : 1;
+    }
+
+    @Override
+    public void clear() {
+        freeLevels();
+        frame = null;
+        modCount++;
+    }
+
+    /**
+     * @return The generated mip levels, or null if there are none or they failed
+     */
+    private NativeBackedImage[] awaitMipmaps() {
+        final Future<NativeBackedImage[]> pending = pendingMipmaps;
+        if (pending == null) {
+            return null;
+        }
+        pendingMipmaps = null;
+        try {
+            return SpriteMipmapGenerator.await(pending);
+        } catch (Exception e) {
+            Lwjgl3ify.LOG.warn("Could not generate the mip levels of a sprite", e);
+            return null;
+        }
+    }
+
+    private void freeLevels() {
+        // The generator reads the full size image, it can only be freed once that is done
+        closeAll(awaitMipmaps(), 0);
+        closeAll(levels, 0);
+        levels = null;
+    }
+
+    private static void closeAll(NativeBackedImage[] images, int from) {
+        if (images == null) {
+            return;
+        }
+        for (int i = from; i < images.length; i++) {
+            try {
+                images[i].close();
+            } catch (Exception e) {
+                Lwjgl3ify.LOG.warn("Could not free a sprite's native pixels", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.eigenraven.lwjgl3ify.Lwjgl3ify;
+import me.eigenraven.lwjgl3ify.core.Config;
+import me.eigenraven.lwjgl3ify.core.StartupTracer;
+
+import net.minecraft.client.resources.IResourceManager;
+import net.minecraft.util.ResourceLocation;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Decodes the sprites of a texture atlas on a pool of worker threads ahead of the texture map's loading loop, which
+ * then takes the finished images in its own order. Workers reserve the decoded size of their image from a fixed budget
+ * in sprite order before decoding, and the reservation is only returned once the loading loop took the image, so the
+ * native memory held by decoded but not yet loaded sprites stays bounded no matter how far the workers get ahead.
+ */
+public class ParallelSpriteDecoder implements AutoCloseable {
+
+    /** Decoded bytes the workers may get ahead of the loading loop, a larger image is still decoded on its own */
+    private static final long DECODE_AHEAD_BYTES = 64L * 1024 * 1024;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final class Task implements Runnable {
+
+        final int index;
+        final ResourceLocation location;
+        Future<?> future;
+        /** Owned by the decoder until taken */
+        NativeBackedImage image;
+        IOException error;
+        long reservedBytes;
+
+        Task(int index, ResourceLocation location) {
+            this.index = index;
+            this.location = location;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            final long cpuStart = cpuTime();
+            ByteBuffer encoded = null;
+            try {
+                try (InputStream stream = resourceManager.getResource(location).getInputStream()) {
+                    encoded = NativeBackedImage.readResource(stream);
+                } catch (IOException e) {
+                    error = e;
+                }
+                // Always reserve, even if nothing will be decoded, as the reservations have to happen in order
+                reserve(this, encoded == null ? 0 : NativeBackedImage.decodedSize(encoded));
+                if (encoded != null) {
+                    try {
+                        image = NativeBackedImage.decode(encoded, location.toString());
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+            } finally {
+                MemoryUtil.memFree(encoded);
+                cpuNanos.add(cpuTime() - cpuStart);
+                StartupTracer.span("ParallelSpriteDecoder", location.toString(), start);
+            }
+        }
+    }
+
+    private final IResourceManager resourceManager;
+    private final ExecutorService executor;
+    private final int threads;
+    private final List<Task> tasks = new ArrayList<>();
+    private final Map<String, Task> tasksByLocation = new HashMap<>();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    /** Index of the next task the loading loop can take, everything before it was taken or skipped */
+    private int consumed = 0;
+
+    // Guarded by this
+    private int nextReservation = 0;
+    private long reservedBytes = 0;
+    private boolean closed = false;
+
+    private ParallelSpriteDecoder(IResourceManager resourceManager, int threads) {
+        this.resourceManager = resourceManager;
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "Sprite decoder #" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param locations The sprite file locations, in the order the loading loop will take them
+     * @return The running decoder, or null if parallel decoding is disabled
+     */
+    public static ParallelSpriteDecoder start(IResourceManager resourceManager, List<ResourceLocation> locations) {
+        final int threads = getThreadCount();
+        if (threads <= 0 || locations.isEmpty()) {
+            return null;
+        }
+        final ParallelSpriteDecoder decoder = new ParallelSpriteDecoder(resourceManager, threads);
+        for (ResourceLocation location : locations) {
+            final Task task = decoder.new Task(decoder.tasks.size(), location);
+            if (decoder.tasksByLocation.putIfAbsent(location.toString(), task) == null) {
+                decoder.tasks.add(task);
+            }
+        }
+        for (Task task : decoder.tasks) {
+            task.future = decoder.executor.submit(task);
+        }
+        return decoder;
+    }
+
+    static int getThreadCount() {
+        if (Config.TEXTURE_DECODE_THREADS >= 0) {
+            return Config.TEXTURE_DECODE_THREADS;
+        }
+        return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Called on the loading thread. Sprites queued before the requested one are assumed to be skipped by the loading
+     * loop and are released.
+     *
+     * @return The decoded image, owned by the caller from now on, or null if the location wasn't queued or was already
+     *         passed, in which case the caller decodes it on its own
+     */
+    public NativeBackedImage take(ResourceLocation location) throws IOException {
+        final Task task = tasksByLocation.get(location.toString());
+        if (task == null || task.index < consumed) {
+            return null;
+        }
+        while (consumed < task.index) {
+            final Task skipped = tasks.get(consumed++);
+            try {
+                if (await(skipped)) {
+                    closeQuietly(skipped.image);
+                }
+            } catch (RuntimeException e) {
+                // Not loaded anyway
+            } finally {
+                skipped.image = null;
+                release(skipped);
+            }
+        }
+        consumed++;
+        final boolean completed;
+        try {
+            completed = await(task);
+        } finally {
+            // Also if decoding failed, the reservation would otherwise block the workers for good
+            release(task);
+        }
+        if (!completed) {
+            return null;
+        }
+        final NativeBackedImage image = task.image;
+        task.image = null;
+        if (task.error != null) {
+            throw task.error;
+        }
+        return image;
+    }
+
+    /**
+     * @return Whether the task ran to completion
+     */
+    private static boolean await(Task task) {
+        try {
+            task.future.get();
+            return true;
+        } catch (CancellationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private synchronized void reserve(Task task, long bytes) {
+        while (!closed && (nextReservation != task.index
+                || (reservedBytes > 0 && reservedBytes + bytes > DECODE_AHEAD_BYTES))) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting to decode " + task.location);
+            }
+        }
+        if (closed) {
+            throw new CancellationException("Sprite decoding was stopped");
+        }
+        task.reservedBytes = bytes;
+        reservedBytes += bytes;
+        nextReservation++;
+        notifyAll();
+    }
+
+    private synchronized void release(Task task) {
+        reservedBytes -= task.reservedBytes;
+        task.reservedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * Stops all workers and frees the images the loading loop didn't take.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int unused = 0;
+        for (int i = consumed; i < tasks.size(); i++) {
+            final Task task = tasks.get(i);
+            if (task.image != null) {
+                closeQuietly(task.image);
+                task.image = null;
+                unused++;
+            }
+        }
+        Lwjgl3ify.LOG.info(
+                "Decoded {} sprites on {} threads in {} ms wall time, {} ms CPU time summed over all decodes, {} unused",
+                tasks.size(),
+                threads,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                TimeUnit.NANOSECONDS.toMillis(cpuNanos.sum()),
+                unused);
+    }
+
+    private static long cpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime()
+                : System.nanoTime();
+    }
+
+    private static void closeQuietly(NativeBackedImage image) {
+        if (image != null) {
+            try {
+                image.close();
+            } catch (Exception e) {
+                Lwjgl3ify.LOG.warn("Could not free a decoded sprite", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.eigenraven.lwjgl3ify.core.StartupTracer;
+
+/**
+ * Generates the mip levels of sprites in native memory on a pool of worker threads, started as soon as a sprite is
+ * loaded so they are generated while the loading loop is still decoding the other sprites. The pool's threads time
+ * out once the atlas is done.
+ */
+public class SpriteMipmapGenerator {
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static ExecutorService executor = null;
+
+    /**
+     * @param base          The full size image, which has to stay alive until the result was awaited
+     * @param levels        The number of mip levels to generate below the full size image
+     * @param checkedPixels The length of the sprite's frame data array, vanilla only checks that many leading pixels
+     *                      of the full size image for transparency, see
+     *                      {@link NativeBackedImage#hasTransparentPixels(int)}
+     * @return The pending mip levels, smallest last
+     */
+    public static Future<NativeBackedImage[]> submit(NativeBackedImage base, int levels, int checkedPixels) {
+        final Callable<NativeBackedImage[]> task = () -> generate(base, levels, checkedPixels);
+        final ExecutorService pool = getExecutor();
+        if (pool == null) {
+            // Generated on the main thread once it is needed
+            return new FutureTask<>(task);
+        }
+        return pool.submit(task);
+    }
+
+    /**
+     * @return The result of {@link #submit(NativeBackedImage, int, int)}, generated on the calling thread if no worker
+     *         picked it up yet
+     */
+    public static NativeBackedImage[] await(Future<NativeBackedImage[]> future) throws Exception {
+        if (future instanceof FutureTask && !future.isDone()) {
+            // Either never submitted or still queued, then it runs here and the worker skips it, otherwise a no-op
+            ((FutureTask<?>) future).run();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static NativeBackedImage[] generate(NativeBackedImage base, int levels, int checkedPixels) {
+        final long start = System.nanoTime();
+        final NativeBackedImage[] mips = new NativeBackedImage[levels];
+        try {
+            final boolean cutout = base.hasTransparentPixels(checkedPixels);
+            NativeBackedImage previous = base;
+            for (int level = 0; level < levels; level++) {
+                mips[level] = previous.halfSize(cutout);
+                previous = mips[level];
+            }
+            return mips;
+        } catch (RuntimeException | Error e) {
+            for (NativeBackedImage mip : mips) {
+                if (mip != null) {
+                    try {
+                        mip.close();
+                    } catch (Exception ignored) {}
+                }
+            }
+            throw e;
+        } finally {
+            StartupTracer.span("SpriteMipmapGenerator", "generate", start);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final int threads = ParallelSpriteDecoder.getThreadCount();
+            if (threads <= 0) {
+                return null;
+            }
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    10,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        final Thread thread = new Thread(r, "Mipmap generator #" + threadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+}
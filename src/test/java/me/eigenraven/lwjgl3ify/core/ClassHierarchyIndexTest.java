@@ -0,0 +1,167 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.launchwrapper.Launch;
+import net.minecraft.launchwrapper.LaunchClassLoader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Resolves hierarchy queries for a generated class hierarchy served by a {@link LaunchClassLoader}, and checks that
+ * none of the queried classes were loaded by it.
+ */
+public class ClassHierarchyIndexTest {
+
+    private static final String BASE = "test/hierarchy/Base";
+    private static final String MIDDLE = "test/hierarchy/Middle";
+    private static final String LEAF_A = "test/hierarchy/LeafA";
+    private static final String LEAF_B = "test/hierarchy/LeafB";
+    private static final String IFACE = "test/hierarchy/Iface";
+    private static final String IMPL = "test/hierarchy/Impl";
+    private static final String[] FIXTURES = { BASE, MIDDLE, LEAF_A, LEAF_B, IFACE, IMPL };
+
+    @TempDir
+    File classDir;
+
+    private LaunchClassLoader previousLoader;
+    private RecordingClassLoader loader;
+    private ClassHierarchyIndex index;
+
+    /** Exposes {@link ClassLoader#findLoadedClass(String)} */
+    private static final class RecordingClassLoader extends LaunchClassLoader {
+
+        RecordingClassLoader(URL[] sources) {
+            super(sources);
+        }
+
+        Class<?> loaded(String internalName) {
+            return findLoadedClass(internalName.replace('/', '.'));
+        }
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        writeClass(BASE, Opcodes.ACC_PUBLIC, "java/lang/Object");
+        writeClass(MIDDLE, Opcodes.ACC_PUBLIC, BASE);
+        writeClass(LEAF_A, Opcodes.ACC_PUBLIC, MIDDLE);
+        writeClass(LEAF_B, Opcodes.ACC_PUBLIC, BASE);
+        writeClass(IFACE, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "java/lang/Object");
+        writeClass(IMPL, Opcodes.ACC_PUBLIC, BASE, IFACE);
+        previousLoader = Launch.classLoader;
+        loader = new RecordingClassLoader(new URL[] { classDir.toURI().toURL() });
+        Launch.classLoader = loader;
+        index = new ClassHierarchyIndex();
+    }
+
+    @AfterEach
+    void teardown() {
+        Launch.classLoader = previousLoader;
+    }
+
+    @Test
+    void resolvesCommonSuperclassesWithoutLoading() {
+        assertEquals(BASE, index.getCommonSuperClass(LEAF_A, LEAF_B));
+        assertEquals(MIDDLE, index.getCommonSuperClass(LEAF_A, MIDDLE));
+        assertEquals(MIDDLE, index.getCommonSuperClass(MIDDLE, LEAF_A));
+        assertEquals(BASE, index.getCommonSuperClass(IMPL, LEAF_A));
+        assertEquals(LEAF_B, index.getCommonSuperClass(LEAF_B, LEAF_B));
+        assertEquals("java/lang/Object", index.getCommonSuperClass(IFACE, IMPL));
+        assertEquals("java/lang/Object", index.getCommonSuperClass(LEAF_A, "java/lang/String"));
+        assertEquals("java/util/AbstractList", index.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        assertNull(index.getCommonSuperClass(LEAF_A, "test/hierarchy/Missing"));
+
+        assertTrue(index.isInterface(IFACE));
+        assertTrue(index.isSubclassOf(LEAF_A, BASE));
+        assertEquals(false, index.isSubclassOf(LEAF_B, MIDDLE));
+
+        assertNothingLoaded();
+    }
+
+    @Test
+    void readsClassesAgainAfterRelease() {
+        assertTrue(index.isSubclassOf(LEAF_A, BASE));
+        assertEquals(2, index.release());
+        assertEquals(0, index.release());
+        assertTrue(index.isSubclassOf(LEAF_A, BASE));
+
+        assertNothingLoaded();
+    }
+
+    @Test
+    void computesFramesWithoutLoading() {
+        final ClassWriter writer = new ClassHierarchyIndex.HierarchyClassWriter(
+                index,
+                ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/hierarchy/User", null, "java/lang/Object", null);
+        final MethodVisitor mv = writer
+                .visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        final Label other = new Label(), merge = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, other);
+        mv.visitTypeInsn(Opcodes.NEW, LEAF_A);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, LEAF_A, "<init>", "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, merge);
+        mv.visitLabel(other);
+        mv.visitTypeInsn(Opcodes.NEW, LEAF_B);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, LEAF_B, "<init>", "()V", false);
+        mv.visitLabel(merge);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+
+        final ClassNode node = new ClassNode();
+        new ClassReader(writer.toByteArray()).accept(node, ClassReader.EXPAND_FRAMES);
+        final List<Object> mergedStack = new ArrayList<>();
+        for (MethodNode method : node.methods) {
+            for (AbstractInsnNode insn : method.instructions) {
+                if (insn instanceof FrameNode frame && frame.stack != null) {
+                    mergedStack.addAll(frame.stack);
+                }
+            }
+        }
+        assertTrue(mergedStack.contains(BASE), mergedStack::toString);
+
+        assertNothingLoaded();
+    }
+
+    private void assertNothingLoaded() {
+        for (String name : FIXTURES) {
+            assertNull(loader.loaded(name), name + " was loaded");
+        }
+    }
+
+    private void writeClass(String name, int access, String superName, String... interfaces) throws IOException {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, access, name, null, superName, interfaces);
+        writer.visitEnd();
+        final File file = new File(classDir, name + ".class");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), writer.toByteArray());
+    }
+}
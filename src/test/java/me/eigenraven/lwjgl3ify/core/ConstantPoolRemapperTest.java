@@ -0,0 +1,270 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import me.eigenraven.lwjgl3ify.api.Lwjgl3Aware;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.spongepowered.asm.lib.ClassReader;
+import org.spongepowered.asm.lib.ClassVisitor;
+
+/**
+ * Differential test of {@link ConstantPoolRemapper} against the {@link LwjglRedirectTransformer.EscapingClassRemapper}
+ * path it replaces. The corpus is every class of the LWJGL jars on the test classpath, which reference the redirected
+ * packages everywhere, plus generated classes covering the constructs the constant pool remapper has to classify.
+ */
+public class ConstantPoolRemapperTest {
+
+    private static final String GL11 = "org/lwjgl/opengl/GL11";
+    private static final String DISPLAY = "org/lwjgl/opengl/Display";
+    private static final String VECTOR = "org/lwjgl/util/vector/Vector3f";
+
+    private static LwjglRedirectTransformer transformer;
+
+    @BeforeAll
+    static void setup() {
+        transformer = new LwjglRedirectTransformer(false);
+    }
+
+    @Test
+    void matchesAsmRemapperOnLwjglJars() throws IOException {
+        final Map<String, byte[]> corpus = lwjglJarClasses();
+        int compared = 0;
+        for (Map.Entry<String, byte[]> entry : corpus.entrySet()) {
+            if (assertSameAsAsm(entry.getKey(), entry.getValue())) {
+                compared++;
+            }
+        }
+        assertTrue(compared > 0, "No classes of the LWJGL jars on the classpath were handled by the fast path");
+    }
+
+    @Test
+    void matchesAsmRemapperOnGeneratedClasses() {
+        final byte[] user = lwjglUser("test/LwjglUser", false);
+        assertTrue(assertSameAsAsm("test/LwjglUser", user), "A plain LWJGL user must not need the ASM fallback");
+        // A string constant sharing its UTF8 entry with a class name may be rejected, but never remapped wrongly
+        assertSameAsAsm("test/LwjglUserWithNames", lwjglUser("test/LwjglUserWithNames", true));
+    }
+
+    @Test
+    void remapsTheGeneratedClass() {
+        final byte[] remapped = transformer.cstPoolRemapper.remap(lwjglUser("test/LwjglUser", false));
+        assertNotNull(remapped);
+        final List<String> names = new ArrayList<>();
+        new ClassReader(remapped).accept(new ClassVisitor(org.spongepowered.asm.lib.Opcodes.ASM5) {
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName,
+                    String[] interfaces) {
+                names.add(signature);
+                for (String iface : interfaces) {
+                    names.add(iface);
+                }
+            }
+        }, 0);
+        assertTrue(names.contains("org/lwjglx/input/IKeyListener"), names::toString);
+        assertTrue(
+                names.contains("Ljava/lang/Object;Ljava/lang/Comparable<Lorg/lwjglx/util/vector/Vector3f;>;"),
+                names::toString);
+    }
+
+    @Test
+    void leavesUnrelatedClassesAlone() {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "test/Plain", null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PUBLIC, "list", "Ljava/util/List;", "Ljava/util/List<Ljava/lang/String;>;", null)
+                .visitEnd();
+        cw.visitEnd();
+        final byte[] plain = cw.toByteArray();
+        assertTrue(plain == transformer.cstPoolRemapper.remap(plain), "Unchanged classes must be returned as they are");
+    }
+
+    @Test
+    void rejectsLwjgl3AwareClasses() {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "test/Aware", null, "java/lang/Object", null);
+        cw.visitAnnotation(Type.getDescriptor(Lwjgl3Aware.class), false).visitEnd();
+        cw.visitField(Opcodes.ACC_PUBLIC, "gl", "L" + GL11 + ";", null, null).visitEnd();
+        cw.visitEnd();
+        final byte[] aware = cw.toByteArray();
+        assertNull(transformer.cstPoolRemapper.remap(aware));
+        assertThrows(LwjglRedirectTransformer.Lwjgl3AwareException.class, () -> transformer.remapWithAsm(aware));
+    }
+
+    /**
+     * @return False if the constant pool remapper rejected the class, so there was nothing to compare
+     */
+    private static boolean assertSameAsAsm(String name, byte[] basicClass) {
+        final byte[] fast = transformer.cstPoolRemapper.remap(basicClass);
+        if (fast == null) {
+            return false;
+        }
+        final byte[] asm = transformer.remapWithAsm(basicClass);
+        assertArrayEquals(normalizeClass(asm), normalizeClass(fast), () -> name + " was remapped differently");
+        return true;
+    }
+
+    /** The same normalization the transformer's debug check uses, to make constant pool order and frames comparable */
+    private static byte[] normalizeClass(byte[] classBytes) {
+        final org.spongepowered.asm.lib.ClassWriter writer = new org.spongepowered.asm.lib.ClassWriter(0);
+        new ClassReader(classBytes).accept(writer, ClassReader.EXPAND_FRAMES);
+        return writer.toByteArray();
+    }
+
+    private static Map<String, byte[]> lwjglJarClasses() throws IOException {
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            final File file = new File(path);
+            if (!file.isFile() || !file.getName().startsWith("lwjgl") || !file.getName().endsWith(".jar")) {
+                continue;
+            }
+            try (JarFile jar = new JarFile(file)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    // Skip module-info and multi-release variants, both are handled by the ASM remapper only
+                    if (!entry.getName().endsWith(".class") || entry.getName().startsWith("META-INF/")
+                            || entry.getName().endsWith("module-info.class")) {
+                        continue;
+                    }
+                    try (InputStream is = jar.getInputStream(entry)) {
+                        classes.put(file.getName() + "!" + entry.getName(), IOUtils.toByteArray(is));
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * A class using the redirected packages in every place a type name can appear: super type, interfaces, field and
+     * method descriptors, generic signatures, instructions, array types, class constants, method handles, annotations,
+     * inner class entries, local variables and stack map frames.
+     */
+    private static byte[] lwjglUser(String name, boolean withNameStrings) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(
+                Opcodes.V1_8,
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+                name,
+                "Ljava/lang/Object;Ljava/lang/Comparable<L" + VECTOR + ";>;",
+                "java/lang/Object",
+                new String[] { "java/lang/Comparable", "org/lwjgl/input/IKeyListener" });
+        cw.visitInnerClass(DISPLAY + "$Mode", DISPLAY, "Mode", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+        cw.visitAnnotation("Lorg/lwjgl/util/Marker;", true).visit("value", Type.getType("L" + GL11 + ";"));
+
+        final FieldVisitor fv = cw.visitField(
+                Opcodes.ACC_PRIVATE,
+                "vectors",
+                "Ljava/util/List;",
+                "Ljava/util/List<L" + VECTOR + ";>;",
+                null);
+        fv.visitAnnotation("Lorg/lwjgl/util/Marker;", true).visitEnum("mode", "L" + DISPLAY + "$Mode;", "FULLSCREEN");
+        fv.visitEnd();
+        cw.visitField(Opcodes.ACC_PRIVATE, "modes", "[[L" + DISPLAY + "$Mode;", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(
+                Opcodes.ACC_PUBLIC,
+                "compareTo",
+                "(L" + VECTOR + ";)I",
+                null,
+                new String[] { "org/lwjgl/LWJGLException" });
+        mv.visitCode();
+        final Label start = new Label(), other = new Label(), end = new Label();
+        mv.visitLabel(start);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitJumpInsn(Opcodes.IFNONNULL, other);
+        mv.visitTypeInsn(Opcodes.NEW, "org/lwjgl/LWJGLException");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitLdcInsn(withNameStrings ? DISPLAY : "no vector");
+        mv.visitMethodInsn(
+                Opcodes.INVOKESPECIAL,
+                "org/lwjgl/LWJGLException",
+                "<init>",
+                "(Ljava/lang/String;)V",
+                false);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(other);
+        mv.visitLdcInsn(Type.getType("L" + GL11 + ";"));
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLdcInsn(Type.getType("[L" + VECTOR + ";"));
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitTypeInsn(Opcodes.ANEWARRAY, VECTOR);
+        mv.visitVarInsn(Opcodes.ASTORE, 2);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitFieldInsn(Opcodes.GETFIELD, VECTOR, "x", "F");
+        mv.visitInsn(Opcodes.F2I);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "org/lwjgl/input/Keyboard", "isKeyDown", "(I)Z", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInvokeDynamicInsn(
+                "run",
+                "()Ljava/lang/Runnable;",
+                new Handle(
+                        Opcodes.H_INVOKESTATIC,
+                        "java/lang/invoke/LambdaMetafactory",
+                        "metafactory",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+                        false),
+                Type.getType("()V"),
+                new Handle(Opcodes.H_INVOKESTATIC, DISPLAY, "update", "()V", false),
+                Type.getType("()V"));
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLocalVariable("this", "L" + name + ";", null, start, end, 0);
+        mv.visitLocalVariable("vector", "L" + VECTOR + ";", null, start, end, 1);
+        mv.visitLocalVariable("array", "[L" + VECTOR + ";", null, other, end, 2);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // Bridge method, so the class is a valid Comparable
+        mv = cw.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC,
+                "compareTo",
+                "(Ljava/lang/Object;)I",
+                null,
+                null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, VECTOR);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "compareTo", "(L" + VECTOR + ";)I", false);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,43 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class LwjglRedirectTransformerTest {
+
+    @Test
+    void skipsMalformedExtraRedirects() {
+        final String[] previous = Config.EXTRA_REDIRECTS;
+        Config.EXTRA_REDIRECTS = new String[] { " =x/", "y/= ", "=", "no/separator/", " com/foo/ = com/bar/ " };
+        try {
+            final LwjglRedirectTransformer transformer = new LwjglRedirectTransformer(false);
+            assertEquals("com/bar/Baz", transformer.map("com/foo/Baz"));
+            assertEquals("y/Baz", transformer.map("y/Baz"));
+            assertEquals("org/lwjglx/opengl/GL11", transformer.map("org/lwjgl/opengl/GL11"));
+        } finally {
+            Config.EXTRA_REDIRECTS = previous;
+        }
+    }
+
+    @Test
+    void prefilterSkipsRelocatedPaulscodeReferences() {
+        final LwjglRedirectTransformer transformer = new LwjglRedirectTransformer(false);
+        final String relocated = "me/eigenraven/lwjgl3ify/paulscode/sound/libraries/LibraryLWJGLOpenAL";
+        assertFalse(transformer.cstPoolParser.find(classReferencing(relocated)));
+        assertTrue(transformer.cstPoolParser.find(classReferencing("paulscode/sound/libraries/LibraryLWJGLOpenAL")));
+        assertTrue(transformer.cstPoolParser.find(classReferencing("org/lwjgl/opengl/GL11")));
+    }
+
+    private static byte[] classReferencing(String type) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/example/Referencing", null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "field", "L" + type + ";", null, null).visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,176 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import net.minecraft.launchwrapper.Launch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import cpw.mods.fml.common.ModContainer;
+import cpw.mods.fml.common.discovery.ASMDataTable;
+import cpw.mods.fml.common.discovery.ContainerType;
+import cpw.mods.fml.common.discovery.JarDiscoverer;
+import cpw.mods.fml.common.discovery.ModCandidate;
+
+/**
+ * Compares {@link ModDiscoveryCache#discover} with FML's own {@link JarDiscoverer} (the mixin redirecting it isn't
+ * applied in tests), with and without a cache file, for a coremod jar that also contains an {@code @Mod} class. Runs
+ * against the real FML classes on the test classpath of the Gradle build.
+ */
+public class ModDiscoveryCacheTest {
+
+    private static final String[] ANNOTATIONS = { "cpw.mods.fml.common.Mod",
+            "cpw.mods.fml.common.Mod$EventHandler" };
+
+    @TempDir
+    File tempDir;
+
+    private File previousHome;
+    private File jar;
+
+    @BeforeEach
+    void setup() throws IOException {
+        previousHome = Launch.minecraftHome;
+        Launch.minecraftHome = tempDir;
+        jar = new File(tempDir, "coremod-with-mod.jar");
+        writeCoremodJar(jar);
+    }
+
+    @AfterEach
+    void teardown() {
+        Launch.minecraftHome = previousHome;
+    }
+
+    @Test
+    void discoversModsInCoremodJars() throws Exception {
+        final Discovery fml = discoverWithFml();
+        assertEquals(Arrays.asList("coremodmod"), fml.modIds);
+
+        final Discovery cold = discoverWithCache();
+        final File[] cacheFiles = new File(new File(tempDir, "lwjgl3ify-cache"), "discovery").listFiles();
+        assertEquals(1, cacheFiles == null ? 0 : cacheFiles.length, "The cache file was not written");
+        final Discovery warm = discoverWithCache();
+
+        for (Discovery cached : new Discovery[] { cold, warm }) {
+            assertEquals(fml.modIds, cached.modIds);
+            assertEquals(fml.classes, cached.classes);
+            assertEquals(fml.asmData, cached.asmData);
+        }
+    }
+
+    private static final class Discovery {
+
+        final List<String> modIds = new ArrayList<>();
+        final TreeSet<String> classes = new TreeSet<>();
+        final TreeSet<String> asmData = new TreeSet<>();
+
+        Discovery(List<ModContainer> mods, ModCandidate candidate, ASMDataTable table) {
+            for (ModContainer mod : mods) {
+                modIds.add(mod.getModId());
+            }
+            classes.addAll(candidate.getClassList());
+            for (String annotation : ANNOTATIONS) {
+                for (ASMDataTable.ASMData data : table.getAll(annotation)) {
+                    asmData.add(
+                            data.getAnnotationName() + " "
+                                    + data.getClassName()
+                                    + " "
+                                    + data.getObjectName()
+                                    + " "
+                                    + new TreeMap<>(data.getAnnotationInfo()));
+                }
+            }
+        }
+    }
+
+    private Discovery discoverWithFml() throws Exception {
+        final ModCandidate candidate = new ModCandidate(jar, jar, ContainerType.JAR);
+        final ASMDataTable table = new ASMDataTable();
+        bindTable(candidate, table);
+        return new Discovery(new JarDiscoverer().discover(candidate, table), candidate, table);
+    }
+
+    private Discovery discoverWithCache() throws Exception {
+        final ModCandidate candidate = new ModCandidate(jar, jar, ContainerType.JAR);
+        final ASMDataTable table = new ASMDataTable();
+        bindTable(candidate, table);
+        return new Discovery(ModDiscoveryCache.discover(candidate, table), candidate, table);
+    }
+
+    /** ModCandidate.explore sets the table before calling the discoverer, and addClassEntry registers packages in it */
+    private static void bindTable(ModCandidate candidate, ASMDataTable table) throws ReflectiveOperationException {
+        final Field field = ModCandidate.class.getDeclaredField("table");
+        field.setAccessible(true);
+        field.set(candidate, table);
+    }
+
+    private static void writeCoremodJar(File file) throws IOException {
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("FMLCorePlugin", "test.discovery.Plugin");
+        attributes.putValue("FMLCorePluginContainsFMLMod", "true");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            out.putNextEntry(new JarEntry("mcmod.info"));
+            out.write(
+                    ("[{\"modid\": \"coremodmod\", \"name\": \"Coremod Mod\", \"version\": \"1.0\", "
+                            + "\"useDependencyInformation\": true}]").getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            writeClass(out, "test/discovery/Plugin", false);
+            writeClass(out, "test/discovery/Helper", false);
+            writeClass(out, "test/discovery/CoremodMod", true);
+        }
+    }
+
+    private static void writeClass(JarOutputStream out, String name, boolean mod) throws IOException {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        if (mod) {
+            // useMetadata and acceptedMinecraftVersions keep FMLModContainer.bindMetadata away from the Loader
+            final AnnotationVisitor av = cw.visitAnnotation("Lcpw/mods/fml/common/Mod;", true);
+            av.visit("modid", "coremodmod");
+            av.visit("name", "Coremod Mod");
+            av.visit("version", "1.0");
+            av.visit("useMetadata", true);
+            av.visit("acceptedMinecraftVersions", "[1.7.10]");
+            av.visitEnd();
+            final MethodVisitor mv = cw.visitMethod(
+                    Opcodes.ACC_PUBLIC,
+                    "init",
+                    "(Lcpw/mods/fml/common/event/FMLInitializationEvent;)V",
+                    null,
+                    null);
+            mv.visitAnnotation("Lcpw/mods/fml/common/Mod$EventHandler;", true).visitEnd();
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        out.putNextEntry(new JarEntry(name + ".class"));
+        out.write(cw.toByteArray());
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,102 @@
+package me.eigenraven.lwjgl3ify.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PrebakedJarsTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void reusesIndexedJarsUntilTheyChange() throws IOException {
+        final File index = new File(tempDir, "prebaked-jars.bin");
+        final File jar = new File(tempDir, "baked.jar");
+        writeJar(jar, "fingerprint", "com/example/Baked");
+        final long lastModified = jar.lastModified();
+
+        PrebakedJars.Entry entry = PrebakedJars.scan(index, new File[] { jar })[0];
+        assertEquals("fingerprint", entry.bakedWith);
+        assertArrayEquals(new String[] { "com.example.Baked" }, entry.classes);
+
+        // Unchanged size and modification time, the index is trusted without opening the jar
+        try (RandomAccessFile file = new RandomAccessFile(jar, "rw")) {
+            file.seek(0);
+            file.write(0);
+        }
+        jar.setLastModified(lastModified);
+        entry = PrebakedJars.scan(index, new File[] { jar })[0];
+        assertEquals("fingerprint", entry.bakedWith);
+
+        // Replaced by a jar that wasn't prebaked
+        writeJar(jar, null, "com/example/Baked", "com/example/Other");
+        jar.setLastModified(lastModified + 2000);
+        entry = PrebakedJars.scan(index, new File[] { jar })[0];
+        assertNull(entry.bakedWith);
+        assertEquals(0, entry.classes.length);
+    }
+
+    @Test
+    void rescansRenamedJars() throws IOException {
+        final File index = new File(tempDir, "prebaked-jars.bin");
+        final File jar = new File(tempDir, "a.jar");
+        writeJar(jar, "fingerprint", "com/example/Baked");
+        PrebakedJars.scan(index, new File[] { jar });
+
+        final File renamed = new File(tempDir, "b.jar");
+        writeJar(renamed, null, "com/example/Baked");
+        renamed.setLastModified(jar.lastModified());
+        jar.delete();
+        assertNull(PrebakedJars.scan(index, new File[] { renamed })[0].bakedWith);
+    }
+
+    @Test
+    void resolvesTheJarAClassIsLoadedFrom() throws IOException {
+        final File shaded = new File(tempDir, "shaded.jar");
+        final File baked = new File(tempDir, "baked.jar");
+        writeJar(shaded, null, "com/example/api/Shared");
+        writeJar(baked, "fingerprint", "com/example/api/Shared", "com/example/Baked");
+        try (URLClassLoader loader = new URLClassLoader(
+                new URL[] { shaded.toURI().toURL(), baked.toURI().toURL() },
+                null)) {
+            // The first jar on the class path wins, so the shaded copy doesn't count as prebaked
+            assertEquals(
+                    shaded.getCanonicalPath(),
+                    PrebakedJars.getJarPath(loader.findResource("com/example/api/Shared.class")));
+            assertEquals(
+                    baked.getCanonicalPath(),
+                    PrebakedJars.getJarPath(loader.findResource("com/example/Baked.class")));
+        }
+        assertNull(PrebakedJars.getJarPath(tempDir.toURI().toURL()));
+    }
+
+    private static void writeJar(File file, String bakedWith, String... classes) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (bakedWith != null) {
+            manifest.getMainAttributes().put(new Attributes.Name(PrebakedJars.MANIFEST_ATTRIBUTE), bakedWith);
+        }
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            for (String className : classes) {
+                out.putNextEntry(new JarEntry(className + ".class"));
+                out.write(new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE });
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.system.MemoryUtil;
+
+public class DecodedTextureCacheTest {
+
+    private static final int SIZE = 16;
+    private static final int FILE_HEADER_SIZE = 32;
+    /** Record header and pixels of a 16x16 image */
+    private static final int RECORD_SIZE = 36 + SIZE * SIZE * 4;
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void storesPixelsAndFlagsAcrossLaunches() throws Exception {
+        final File pack = new File(tempDir, "decoded-textures.pack");
+        final byte[] png = encode(new Random(1));
+        final int[] expected;
+        DecodedTextureCache cache = new DecodedTextureCache(pack, 1 << 20);
+        try (NativeBackedImage image = decode(png)) {
+            image.fixTransparentPixels();
+            expected = image.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+            cache.put(key(cache, "a.png", png), image);
+        }
+        assertEquals(FILE_HEADER_SIZE + RECORD_SIZE, pack.length());
+        try (NativeBackedImage cached = cache.get(key(cache, "a.png", png))) {
+            assertNotNull(cached, "hit during the launch it was stored in");
+            assertArrayEquals(expected, cached.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE));
+        }
+
+        cache = new DecodedTextureCache(pack, 1 << 20);
+        assertNull(cache.get(key(cache, "b.png", png)), "the resource path is part of the key");
+        try (NativeBackedImage cached = cache.get(key(cache, "a.png", png))) {
+            assertNotNull(cached, "hit after reopening");
+            assertTrue(cached.isTransparentFixed());
+            assertArrayEquals(expected, cached.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE));
+        }
+    }
+
+    @Test
+    void ignoresCorruptedRecords() throws Exception {
+        final File pack = new File(tempDir, "decoded-textures.pack");
+        final byte[] png = encode(new Random(2));
+        DecodedTextureCache cache = new DecodedTextureCache(pack, 1 << 20);
+        try (NativeBackedImage image = decode(png)) {
+            assertFalse(image.isTransparentFixed());
+            cache.put(key(cache, "a.png", png), image);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(pack, "rw")) {
+            final long pixel = FILE_HEADER_SIZE + RECORD_SIZE - 4;
+            file.seek(pixel);
+            final int value = file.readInt();
+            file.seek(pixel);
+            file.writeInt(~value);
+        }
+        cache = new DecodedTextureCache(pack, 1 << 20);
+        assertNull(cache.get(key(cache, "a.png", png)));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedRecords() throws Exception {
+        final File pack = new File(tempDir, "decoded-textures.pack");
+        final byte[][] pngs = new byte[3][];
+        DecodedTextureCache cache = new DecodedTextureCache(pack, 1 << 20);
+        for (int i = 0; i < pngs.length; i++) {
+            pngs[i] = encode(new Random(10 + i));
+            try (NativeBackedImage image = decode(pngs[i])) {
+                cache.put(key(cache, i + ".png", pngs[i]), image);
+            }
+        }
+
+        // Use the last and first record in the next launch, the middle one becomes the least recently used
+        cache = new DecodedTextureCache(pack, 1 << 20);
+        cache.get(key(cache, "2.png", pngs[2])).close();
+        cache.get(key(cache, "0.png", pngs[0])).close();
+
+        // Compacted to 3/4 of the cap when opened above it, which leaves room for two records
+        final long maxSize = (FILE_HEADER_SIZE + 2 * RECORD_SIZE) * 4 / 3 + 1;
+        assertTrue(pack.length() > maxSize);
+        cache = new DecodedTextureCache(pack, maxSize);
+        assertEquals(FILE_HEADER_SIZE + 2 * RECORD_SIZE, pack.length());
+        assertNull(cache.get(key(cache, "1.png", pngs[1])));
+        for (int i : new int[] { 0, 2 }) {
+            try (NativeBackedImage cached = cache.get(key(cache, i + ".png", pngs[i]));
+                    NativeBackedImage image = decode(pngs[i])) {
+                assertNotNull(cached, i + ".png");
+                assertArrayEquals(
+                        image.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE),
+                        cached.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE));
+            }
+        }
+    }
+
+    private static DecodedTextureCache.Key key(DecodedTextureCache cache, String path, byte[] png) {
+        return cache.key(path, ByteBuffer.wrap(png));
+    }
+
+    /** Random pixels with some fully transparent ones */
+    private static byte[] encode(Random random) throws IOException {
+        final BufferedImage source = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                final int alpha = random.nextInt(4) == 0 ? 0 : 255;
+                source.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", out);
+        return out.toByteArray();
+    }
+
+    private static NativeBackedImage decode(byte[] bytes) throws IOException {
+        final ByteBuffer png = MemoryUtil.memAlloc(bytes.length);
+        try {
+            png.put(bytes).flip();
+            return NativeBackedImage.decode(png);
+        } finally {
+            MemoryUtil.memFree(png);
+        }
+    }
+}
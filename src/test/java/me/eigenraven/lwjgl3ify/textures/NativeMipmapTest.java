@@ -0,0 +1,157 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Compares the mip levels {@link SpriteMipmapGenerator} generates for sprites with transparent pixels with the ones
+ * vanilla's {@code TextureUtil.generateMipmapData} generates, using a copy of vanilla's blend on ARGB arrays.
+ */
+public class NativeMipmapTest {
+
+    @Test
+    void generatesCutoutLevelsLikeVanilla() throws Exception {
+        final Random random = new Random(1234);
+        for (int size : new int[] { 2, 16, 64 }) {
+            final int levels = Integer.numberOfTrailingZeros(size);
+            try (NativeBackedImage image = decode(size, random, true)) {
+                assertTrue(image.hasTransparentPixels(levels + 1));
+                int[] expected = image.getRGB(0, 0, size, size, null, 0, size);
+                final NativeBackedImage[] mips = SpriteMipmapGenerator
+                        .await(SpriteMipmapGenerator.submit(image, levels, levels + 1));
+                try {
+                    for (int level = 1; level <= levels; level++) {
+                        expected = vanillaHalfSize(expected, size >> (level - 1));
+                        final NativeBackedImage mip = mips[level - 1];
+                        final int mipSize = size >> level;
+                        assertArrayEquals(
+                                expected,
+                                mip.getRGB(0, 0, mipSize, mipSize, null, 0, mipSize),
+                                size + "x" + size + ", level " + level);
+                    }
+                } finally {
+                    for (NativeBackedImage mip : mips) {
+                        mip.close();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void detectsTransparentPixels() throws Exception {
+        try (NativeBackedImage image = decode(16, new Random(1234), false)) {
+            assertFalse(image.hasTransparentPixels(5));
+        }
+    }
+
+    /** Vanilla only checks as many leading pixels as the frame data array is long */
+    @Test
+    void onlyChecksLeadingPixelsLikeVanilla() throws Exception {
+        final int size = 16;
+        final int levels = Integer.numberOfTrailingZeros(size);
+        final BufferedImage source = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        final Random random = new Random(1234);
+        for (int i = 0; i < size * size; i++) {
+            final int alpha = i <= levels || i % 2 == 0 ? 255 : 0;
+            source.setRGB(i % size, i / size, alpha << 24 | random.nextInt(1 << 24));
+        }
+        try (NativeBackedImage image = decode(source)) {
+            assertFalse(image.hasTransparentPixels(levels + 1));
+            assertTrue(image.hasTransparentPixels(levels + 2));
+            final NativeBackedImage[] mips = SpriteMipmapGenerator
+                    .await(SpriteMipmapGenerator.submit(image, levels, levels + 1));
+            try (NativeBackedImage expected = image.halfSize(false)) {
+                final int half = size >> 1;
+                assertArrayEquals(
+                        expected.getRGB(0, 0, half, half, null, 0, half),
+                        mips[0].getRGB(0, 0, half, half, null, 0, half));
+            } finally {
+                for (NativeBackedImage mip : mips) {
+                    mip.close();
+                }
+            }
+        }
+    }
+
+    /** Vanilla's mip level generation for sprites with transparent pixels, on ARGB pixels */
+    private static int[] vanillaHalfSize(int[] pixels, int width) {
+        final int halfWidth = width >> 1;
+        final int[] half = new int[pixels.length >> 2];
+        final int rows = half.length / halfWidth;
+        final int stride = halfWidth << 1;
+        for (int x = 0; x < halfWidth; x++) {
+            for (int y = 0; y < rows; y++) {
+                final int i = 2 * (x + y * stride);
+                half[x + y * halfWidth] = vanillaBlend(
+                        new int[] { pixels[i], pixels[i + 1], pixels[i + stride], pixels[i + 1 + stride] });
+            }
+        }
+        return half;
+    }
+
+    private static int vanillaBlend(int[] colors) {
+        float a = 0.0F, r = 0.0F, g = 0.0F, b = 0.0F;
+        for (int color : colors) {
+            if (color >> 24 != 0) {
+                a += (float) Math.pow((double) ((float) (color >> 24 & 255) / 255.0F), 2.2D);
+                r += (float) Math.pow((double) ((float) (color >> 16 & 255) / 255.0F), 2.2D);
+                g += (float) Math.pow((double) ((float) (color >> 8 & 255) / 255.0F), 2.2D);
+                b += (float) Math.pow((double) ((float) (color & 255) / 255.0F), 2.2D);
+            }
+        }
+        a /= 4.0F;
+        r /= 4.0F;
+        g /= 4.0F;
+        b /= 4.0F;
+        int alpha = (int) (Math.pow((double) a, 0.45454545454545453D) * 255.0D);
+        final int red = (int) (Math.pow((double) r, 0.45454545454545453D) * 255.0D);
+        final int green = (int) (Math.pow((double) g, 0.45454545454545453D) * 255.0D);
+        final int blue = (int) (Math.pow((double) b, 0.45454545454545453D) * 255.0D);
+        if (alpha < 96) {
+            alpha = 0;
+        }
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * @param transparent Whether the first and about a quarter of the other pixels are fully transparent, otherwise
+     *                    all are opaque
+     */
+    private static NativeBackedImage decode(int size, Random random, boolean transparent) throws IOException {
+        final BufferedImage source = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final int alpha = !transparent ? 255
+                        : x + y == 0 || random.nextInt(4) == 0 ? 0 : random.nextInt(256);
+                source.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+        return decode(source);
+    }
+
+    private static NativeBackedImage decode(BufferedImage source) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", out);
+        final byte[] bytes = out.toByteArray();
+        final ByteBuffer png = MemoryUtil.memAlloc(bytes.length);
+        try {
+            png.put(bytes).flip();
+            return NativeBackedImage.decode(png);
+        } finally {
+            MemoryUtil.memFree(png);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package me.eigenraven.lwjgl3ify.textures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+/**
+ * Uploads sprites through {@link NativeSpriteFrames#upload(int, int)} and through vanilla's
+ * {@code TextureUtil.uploadTextureMipmap}, with the OpenGL calls of both recorded instead of run, and compares the
+ * texture parameters they leave set and the pixels they write into each mip level of the atlas.
+ * <p>
+ * Both run in a class loader that sends their GL11 and GL12 calls to {@link RecordingGL} and their
+ * {@code Minecraft.getMinecraft().gameSettings} lookups to {@link StubMinecraft}.
+ */
+public class NativeSpriteUploadTest {
+
+    private static final int GL_TEXTURE_2D = 0x0DE1;
+    private static final int GL_RGBA = 0x1908;
+    private static final int GL_UNSIGNED_BYTE = 0x1401;
+    private static final int GL_BGRA = 0x80E1;
+    private static final int GL_UNSIGNED_INT_8_8_8_8_REV = 0x8367;
+
+    /** Sprites as {width, height, mip levels, x, y}, the last one is tall enough for vanilla to split its upload */
+    private static final int[][] SPRITES = { { 16, 16, 0, 32, 48 }, { 16, 16, 4, 32, 48 }, { 64, 32, 2, 128, 64 },
+            { 4096, 1025, 0, 0, 0 } };
+
+    /** A single upload into the atlas, with the pixels converted to ARGB */
+    public static final class Upload {
+
+        final int level, x, y, width, height, format, type;
+        final int[] argb;
+
+        Upload(int level, int x, int y, int width, int height, int format, int type, int[] argb) {
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.type = type;
+            this.argb = argb;
+        }
+    }
+
+    /** Stands in for the GL11 and GL12 classes of both LWJGL versions, recording the texture calls */
+    public static final class RecordingGL {
+
+        static final List<Upload> uploads = new ArrayList<>();
+        static final Map<Integer, Number> parameters = new HashMap<>();
+        private static int nextTexture = 1;
+
+        static void reset() {
+            uploads.clear();
+            parameters.clear();
+        }
+
+        public static int glGenTextures() {
+            return nextTexture++;
+        }
+
+        public static void glDeleteTextures(int texture) {}
+
+        public static void glBindTexture(int target, int texture) {}
+
+        public static void glTexParameteri(int target, int pname, int param) {
+            assertEquals(GL_TEXTURE_2D, target);
+            parameters.put(pname, param);
+        }
+
+        public static void glTexParameterf(int target, int pname, float param) {
+            assertEquals(GL_TEXTURE_2D, target);
+            parameters.put(pname, param);
+        }
+
+        public static void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                int format, int type, IntBuffer pixels) {}
+
+        public static void glTexSubImage2D(int target, int level, int x, int y, int width, int height, int format,
+                int type, IntBuffer pixels) {
+            assertEquals(GL_TEXTURE_2D, target);
+            final int[] argb = new int[width * height];
+            if (format == GL_BGRA && type == GL_UNSIGNED_INT_8_8_8_8_REV) {
+                // Each int holds the ARGB colour
+                pixels.duplicate().get(argb);
+            }
+            uploads.add(new Upload(level, x, y, width, height, format, type, argb));
+        }
+
+        public static void nglTexSubImage2D(int target, int level, int x, int y, int width, int height, int format,
+                int type, long pixels) {
+            assertEquals(GL_TEXTURE_2D, target);
+            final int[] argb = new int[width * height];
+            if (format == GL_RGBA && type == GL_UNSIGNED_BYTE) {
+                final ByteBuffer bytes = MemoryUtil.memByteBuffer(pixels, argb.length * 4);
+                for (int i = 0; i < argb.length; i++) {
+                    final int r = bytes.get(i * 4) & 0xFF, g = bytes.get(i * 4 + 1) & 0xFF;
+                    final int b = bytes.get(i * 4 + 2) & 0xFF, a = bytes.get(i * 4 + 3) & 0xFF;
+                    argb[i] = a << 24 | r << 16 | g << 8 | b;
+                }
+            }
+            uploads.add(new Upload(level, x, y, width, height, format, type, argb));
+        }
+    }
+
+    public static final class StubGameSettings {
+
+        public boolean anaglyph = false;
+    }
+
+    public static final class StubMinecraft {
+
+        private static final StubMinecraft INSTANCE = new StubMinecraft();
+
+        public final StubGameSettings gameSettings = new StubGameSettings();
+
+        public static StubMinecraft getMinecraft() {
+            return INSTANCE;
+        }
+    }
+
+    /** Loads the texture code and vanilla's client classes itself, with the OpenGL and Minecraft classes swapped */
+    private static final class RemappingClassLoader extends ClassLoader {
+
+        private static final String TEST_CLASS = NativeSpriteUploadTest.class.getName();
+        private final SimpleRemapper remapper;
+
+        RemappingClassLoader() {
+            super(NativeSpriteUploadTest.class.getClassLoader());
+            final Map<String, String> mapping = new HashMap<>();
+            final String gl = RecordingGL.class.getName().replace('.', '/');
+            mapping.put("org/lwjgl/opengl/GL11", gl);
+            mapping.put("org/lwjgl/opengl/GL12", gl);
+            mapping.put("net/minecraft/client/Minecraft", StubMinecraft.class.getName().replace('.', '/'));
+            mapping.put(
+                    "net/minecraft/client/settings/GameSettings",
+                    StubGameSettings.class.getName().replace('.', '/'));
+            remapper = new SimpleRemapper(mapping);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            final boolean remapped = (name.startsWith("net.minecraft.client.")
+                    || name.startsWith("me.eigenraven.lwjgl3ify.textures.")) && !name.startsWith(TEST_CLASS);
+            if (!remapped) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    final byte[] bytes = remap(name);
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+
+        private byte[] remap(String name) throws ClassNotFoundException {
+            try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                final ClassWriter writer = new ClassWriter(0);
+                new ClassReader(in).accept(new ClassRemapper(writer, remapper), 0);
+                return writer.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    private ClassLoader loader;
+    private Method uploadTextureMipmap;
+    private Method decode;
+    private Constructor<?> framesConstructor;
+    private Method generateMipmaps;
+    private Method upload;
+    private Method getFrame;
+    private Method clear;
+
+    @BeforeEach
+    void setup() throws Exception {
+        loader = new RemappingClassLoader();
+        // Uploads the missing texture while initializing
+        final Class<?> textureUtil = Class.forName("net.minecraft.client.renderer.texture.TextureUtil", true, loader);
+        uploadTextureMipmap = textureUtil.getMethod(
+                "uploadTextureMipmap",
+                int[][].class,
+                int.class,
+                int.class,
+                int.class,
+                int.class,
+                boolean.class,
+                boolean.class);
+        final Class<?> image = Class.forName(NativeBackedImage.class.getName(), true, loader);
+        decode = image.getDeclaredMethod("decode", ByteBuffer.class);
+        decode.setAccessible(true);
+        final Class<?> frames = Class.forName(NativeSpriteFrames.class.getName(), true, loader);
+        framesConstructor = frames.getConstructor(image, int.class, int.class);
+        generateMipmaps = frames.getMethod("generateMipmaps", int.class);
+        upload = frames.getMethod("upload", int.class, int.class);
+        getFrame = frames.getMethod("get", int.class);
+        clear = frames.getMethod("clear");
+        RecordingGL.reset();
+        StubMinecraft.getMinecraft().gameSettings.anaglyph = false;
+    }
+
+    @Test
+    void uploadsLikeVanilla() throws Exception {
+        final Random random = new Random(1234);
+        for (int[] sprite : SPRITES) {
+            final int width = sprite[0], height = sprite[1], mipmapLevels = sprite[2], x = sprite[3], y = sprite[4];
+            final String description = width + "x" + height + " with " + mipmapLevels + " mip levels";
+            final ByteBuffer png = encodePng(width, height, random);
+            try {
+                // The native upload, and the frame data vanilla would upload for the same image and mip levels
+                final Object nativeFrames = makeFrames(png, mipmapLevels);
+                final Object heapFrames = makeFrames(png, mipmapLevels);
+                final int[][] frame = (int[][]) getFrame.invoke(heapFrames, 0);
+
+                RecordingGL.reset();
+                assertTrue((Boolean) upload.invoke(nativeFrames, x, y), description);
+                final List<Upload> nativeUploads = new ArrayList<>(RecordingGL.uploads);
+                final Map<Integer, Number> nativeParameters = new HashMap<>(RecordingGL.parameters);
+
+                RecordingGL.reset();
+                uploadTextureMipmap.invoke(null, frame, width, height, x, y, false, false);
+                final List<Upload> vanillaUploads = new ArrayList<>(RecordingGL.uploads);
+
+                assertEquals(RecordingGL.parameters, nativeParameters, description);
+                for (Upload recorded : nativeUploads) {
+                    assertEquals(GL_RGBA, recorded.format, description);
+                    assertEquals(GL_UNSIGNED_BYTE, recorded.type, description);
+                }
+                for (int level = 0; level <= mipmapLevels; level++) {
+                    final String levelDescription = description + ", level " + level;
+                    final int[] expected = paint(vanillaUploads, level, x, y, width, height);
+                    final int[] actual = paint(nativeUploads, level, x, y, width, height);
+                    assertArrayEquals(expected, actual, levelDescription);
+                }
+                clear.invoke(nativeFrames);
+                clear.invoke(heapFrames);
+            } finally {
+                MemoryUtil.memFree(png);
+            }
+        }
+    }
+
+    @Test
+    void leavesAnaglyphToVanilla() throws Exception {
+        final ByteBuffer png = encodePng(16, 16, new Random(1234));
+        try {
+            final Object frames = makeFrames(png, 0);
+            StubMinecraft.getMinecraft().gameSettings.anaglyph = true;
+            assertFalse((Boolean) upload.invoke(frames, 0, 0));
+            assertTrue(RecordingGL.uploads.isEmpty());
+            clear.invoke(frames);
+        } finally {
+            MemoryUtil.memFree(png);
+        }
+    }
+
+    private Object makeFrames(ByteBuffer png, int mipmapLevels) throws Exception {
+        final Object frames = framesConstructor.newInstance(decode.invoke(null, png), mipmapLevels, mipmapLevels + 1);
+        assertTrue((Boolean) generateMipmaps.invoke(frames, mipmapLevels));
+        return frames;
+    }
+
+    /**
+     * Paints the uploads of one mip level into the sprite's area of the atlas, checking that nothing is written outside
+     * of it or twice, and that all of it is written.
+     *
+     * @return The ARGB pixels of the sprite's area
+     */
+    private static int[] paint(List<Upload> uploads, int level, int x, int y, int width, int height) {
+        final int levelX = x >> level, levelY = y >> level, levelWidth = width >> level, levelHeight = height >> level;
+        final int[] pixels = new int[levelWidth * levelHeight];
+        final boolean[] written = new boolean[pixels.length];
+        for (Upload upload : uploads) {
+            if (upload.level != level) {
+                continue;
+            }
+            assertTrue(upload.x >= levelX && upload.x + upload.width <= levelX + levelWidth, "Upload outside of x");
+            assertTrue(upload.y >= levelY && upload.y + upload.height <= levelY + levelHeight, "Upload outside of y");
+            for (int row = 0; row < upload.height; row++) {
+                for (int column = 0; column < upload.width; column++) {
+                    final int index = (upload.y - levelY + row) * levelWidth + upload.x - levelX + column;
+                    assertFalse(written[index], "Pixel uploaded twice");
+                    written[index] = true;
+                    pixels[index] = upload.argb[row * upload.width + column];
+                }
+            }
+        }
+        for (boolean pixel : written) {
+            assertTrue(pixel, "Pixel not uploaded");
+        }
+        return pixels;
+    }
+
+    /**
+     * @return A PNG with random colours and alpha, some pixels fully transparent, allocated with
+     *         {@link MemoryUtil#memAlloc(int)}
+     */
+    private static ByteBuffer encodePng(int width, int height, Random random) throws IOException {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int alpha = random.nextInt(4) == 0 ? 0 : random.nextInt(256);
+                image.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        final byte[] bytes = out.toByteArray();
+        final ByteBuffer buffer = MemoryUtil.memAlloc(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,191 @@
+package me.eigenraven.lwjgl3ify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import me.eigenraven.lwjgl3ify.core.PrebakedJars;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * Runs lwjgl3ify's class transformers over a mods folder ahead of time, for packs where the mod set only changes on
+ * deploy. Rewritten jars are marked with the {@link PrebakedJars#MANIFEST_ATTRIBUTE} manifest attribute, so the game
+ * can skip transforming their classes again.
+ * <p>
+ * Arguments: {@code --instance:<game dir>} (reads config/lwjgl3ify.cfg and mods/ from there), {@code --out:<dir>},
+ * optionally {@code --threads:<n>}. Every transformed class is checked against the output of the slower reference
+ * transformer path, and the tool exits with an error if any of them differ.
+ */
+public class PrebakeTool {
+
+    private PrebakedJars.Baker baker;
+    private String fingerprint;
+    private final AtomicInteger classesChanged = new AtomicInteger();
+    private final AtomicInteger mismatches = new AtomicInteger();
+
+    public static void main(String[] args) {
+        System.exit(new PrebakeTool().run(args));
+    }
+
+    public int run(String[] args) {
+        File instanceDir = null;
+        File outputDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--instance:")) {
+                instanceDir = new File(StringUtils.removeStart(arg, "--instance:"));
+            } else if (arg.startsWith("--out:")) {
+                outputDir = new File(StringUtils.removeStart(arg, "--out:"));
+            } else if (arg.startsWith("--threads:")) {
+                threads = Integer.parseInt(StringUtils.removeStart(arg, "--threads:"));
+            }
+        }
+        if (instanceDir == null || outputDir == null) {
+            System.err.println("Usage: PrebakeTool --instance:<game dir> --out:<output dir> [--threads:<n>]");
+            return 2;
+        }
+        baker = new PrebakedJars.Baker(instanceDir);
+        fingerprint = PrebakedJars.getFingerprint();
+
+        final File modsDir = new File(instanceDir, "mods");
+        final List<File> jars = new ArrayList<>();
+        for (File dir : new File[] { modsDir, new File(modsDir, "1.7.10") }) {
+            final File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(".jar") && !file.getName().contains("lwjgl3ify")) {
+                    jars.add(file);
+                }
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> tasks = new ArrayList<>();
+        for (File jar : jars) {
+            final File target = new File(outputDir, modsDir.toPath().relativize(jar.toPath()).toString());
+            tasks.add(executor.submit(() -> {
+                bakeJar(jar, target);
+                return null;
+            }));
+        }
+        executor.shutdown();
+        int failures = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).get();
+            } catch (Exception e) {
+                System.err.println("Failed to prebake " + jars.get(i));
+                e.printStackTrace();
+                failures++;
+            }
+        }
+        System.out.printf(
+                "Prebaked %d jars (%d failed), %d classes changed, %d verification mismatches%n",
+                jars.size() - failures,
+                failures,
+                classesChanged.get(),
+                mismatches.get());
+        return (failures > 0 || mismatches.get() > 0) ? 1 : 0;
+    }
+
+    private void bakeJar(File jarFile, File target) throws IOException {
+        FileUtils.forceMkdirParent(target);
+        try (JarFile jar = new JarFile(jarFile, false)) {
+            if (isSigned(jar)) {
+                // Rewriting classes would break the signature, leave these to the runtime transformers
+                System.out.println("Copying signed jar " + jarFile.getName() + " unchanged");
+                FileUtils.copyFile(jarFile, target);
+                return;
+            }
+            final Manifest manifest = jar.getManifest() != null ? new Manifest(jar.getManifest()) : new Manifest();
+            manifest.getMainAttributes().putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(new Attributes.Name(PrebakedJars.MANIFEST_ATTRIBUTE), fingerprint);
+
+            try (FileOutputStream fos = FileUtils.openOutputStream(target);
+                    JarOutputStream jos = new JarOutputStream(fos, manifest)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    final String path = entry.getName();
+                    if (path.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                        continue;
+                    }
+                    final JarEntry outEntry = new JarEntry(path);
+                    outEntry.setTime(entry.getTime());
+                    jos.putNextEntry(outEntry);
+                    if (!entry.isDirectory()) {
+                        byte[] bytes;
+                        try (InputStream is = jar.getInputStream(entry)) {
+                            bytes = IOUtils.toByteArray(is);
+                        }
+                        if (path.endsWith(".class") && !path.startsWith("META-INF/")) {
+                            bytes = bakeClass(jarFile, path, bytes);
+                        }
+                        jos.write(bytes);
+                    }
+                    jos.closeEntry();
+                }
+            }
+        }
+    }
+
+    private byte[] bakeClass(File jarFile, String path, byte[] bytes) {
+        final String className = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+        final byte[] baked = baker.transform(className, bytes);
+        if (baked == bytes) {
+            return bytes;
+        }
+        classesChanged.incrementAndGet();
+        final byte[] reference = baker.transformReference(className, bytes);
+        if (!Arrays.equals(normalizeClass(baked), normalizeClass(reference))) {
+            System.err.println(
+                    "Prebaked " + className
+                            + " in "
+                            + jarFile.getName()
+                            + " differs from the reference transformer output, using the reference output");
+            mismatches.incrementAndGet();
+            return reference;
+        }
+        return baked;
+    }
+
+    private static boolean isSigned(JarFile jar) {
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            final String path = entries.nextElement().getName().toUpperCase();
+            if (path.startsWith("META-INF/")
+                    && (path.endsWith(".SF") || path.endsWith(".RSA") || path.endsWith(".DSA") || path.endsWith(".EC"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] normalizeClass(byte[] classBytes) {
+        final ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classBytes).accept(writer, ClassReader.EXPAND_FRAMES);
+        return writer.toByteArray();
+    }
+}